@@ -0,0 +1,42 @@
+# Runs JMH benchmarks for the terminal API's hot paths on a plain JVM.
+#
+# Expects these jars in ../external, alongside android.jar:
+#
+#   jmh-core-1.37.jar
+#   jmh-generator-annprocess-1.37.jar
+#   jopt-simple-5.0.4.jar
+#   commons-math3-3.6.1.jar
+#
+# Arguments are passed to JMH, e.g. "./build.sh MoneyBenchmark". With no arguments, runs every
+# benchmark and writes the report to results/baseline.txt. Compare against the committed
+# baseline before and after changing a hot path. Allocation rates come from the GC profiler;
+# see the gc.alloc.rate.norm rows.
+
+cd `dirname $0`
+
+EXTERNAL=../external
+JMH=$EXTERNAL/jmh-core-1.37.jar:$EXTERNAL/jopt-simple-5.0.4.jar:$EXTERNAL/commons-math3-3.6.1.jar
+ANNPROCESS=$EXTERNAL/jmh-generator-annprocess-1.37.jar
+
+# Clear and recreate build directory.
+rm -rf build
+mkdir -p build/classes build/stubs build/benchmarks
+
+# Compile the API and the example app's email validator.
+javac -g -nowarn -classpath $EXTERNAL/android.jar -d build/classes \
+    `find ../core/src ../src -name *.java` ../examples/jackson/src/com/squareup/jackson/Email.java
+
+# Compile stubs for the Android classes that benchmarks use at runtime.
+javac -g -d build/stubs `find stubs -name *.java`
+
+# Compile benchmarks and generate JMH harness.
+javac -g -classpath $JMH:$ANNPROCESS:$EXTERNAL/android.jar:build/classes \
+    -processorpath $JMH:$ANNPROCESS -d build/benchmarks `find src -name *.java`
+
+# Run benchmarks. Stubs go ahead of android.jar.
+CLASSPATH=build/benchmarks:build/stubs:build/classes:$EXTERNAL/android.jar:$JMH
+if [ $# -eq 0 ]; then
+  java -classpath $CLASSPATH org.openjdk.jmh.Main -prof gc -rf text -rff results/baseline.txt
+else
+  java -classpath $CLASSPATH org.openjdk.jmh.Main -prof gc "$@"
+fi
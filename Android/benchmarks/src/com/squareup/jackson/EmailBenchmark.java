@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.jackson;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EmailBenchmark {
+  String valid = "jane.doe+gala@mail.example.com";
+  String invalid = "jane.doe@mail.example..com";
+
+  @Benchmark public boolean valid() {
+    return Email.isValidEmail(valid);
+  }
+
+  @Benchmark public boolean invalid() {
+    return Email.isValidEmail(invalid);
+  }
+
+  @Benchmark public boolean manyDots(Adversarial adversarial) {
+    return Email.isValidEmail(adversarial.manyDots);
+  }
+
+  @Benchmark public boolean manyDotsInvalid(Adversarial adversarial) {
+    return Email.isValidEmail(adversarial.manyDotsInvalid);
+  }
+
+  @State(Scope.Thread)
+  public static class Adversarial {
+    /**
+     * Length of the addresses. Throughput should fall in proportion to the length. The regex
+     * that Email used to use overflows the stack on 4096 chars of these.
+     */
+    @Param({ "16", "256", "4096" }) int length;
+
+    /** A valid address made of many short domain labels: "a@a.a.a...a". */
+    String manyDots;
+
+    /** Many short domain labels and a trailing hyphen, which makes the address invalid. */
+    String manyDotsInvalid;
+
+    @Setup public void setUp() {
+      StringBuilder builder = new StringBuilder("a@");
+      while (builder.length() < length - 1) builder.append("a.");
+      manyDots = builder.append('a').toString();
+      builder.setLength(builder.length() - 1);
+      manyDotsInvalid = builder.append('-').toString();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link BinaryCodec} with the query string form. The query benchmarks include
+ * copying to and from {@link TerminalParameters}, since that's what archiving a payment as a
+ * query costs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinaryCodecBenchmark {
+  /** Same payment as {@link TerminalParametersBenchmark}. */
+  Payment payment = new Payment()
+      .amount(2000, Currency.USD)
+      .description("\"Jane Doe\",\"jane@example.com\",\"1 Main St\",\"Springfield\",\"IL\","
+          + "\"62701\",\"Acme\",\"Engineer\",\"20\"\n")
+      .defaultEmail("jane@example.com")
+      .metadata("{\"event\":\"spring-gala\",\"table\":12,\"seat\":\"B\"}")
+      .referenceId("donation-000042")
+      .recipient("my-to-id");
+
+  Response response = new Response("donation-000042",
+      Arrays.asList("amount_too_small", "to_invalid_recipient"));
+
+  ByteBuffer buffer = ByteBuffer.allocate(1024);
+  ByteBuffer encodedPayment = ByteBuffer.allocate(BinaryCodec.encodedLength(payment));
+  ByteBuffer encodedResponse = ByteBuffer.allocate(BinaryCodec.encodedLength(response));
+  String query = new TerminalParameters().copyFrom(payment).appendTo(new StringBuilder())
+      .toString();
+  QueryDecoder decoder = new QueryDecoder();
+
+  {
+    BinaryCodec.write(payment, encodedPayment);
+    BinaryCodec.write(response, encodedResponse);
+  }
+
+  @Benchmark public ByteBuffer writePayment() {
+    buffer.clear();
+    BinaryCodec.write(payment, buffer);
+    return buffer;
+  }
+
+  @Benchmark public Payment readPayment() throws ParseException {
+    encodedPayment.clear();
+    return BinaryCodec.readPayment(encodedPayment);
+  }
+
+  @Benchmark public String writePaymentQuery() {
+    TerminalParameters parameters = new TerminalParameters().copyFrom(payment);
+    return parameters.appendTo(new StringBuilder(parameters.queryLength())).toString();
+  }
+
+  @Benchmark public Payment readPaymentQuery() throws ParseException {
+    TerminalParameters parameters = new TerminalParameters();
+    decoder.decode(query, parameters);
+    Payment payment = new Payment();
+    parameters.copyTo(payment);
+    return payment;
+  }
+
+  @Benchmark public ByteBuffer writeResponse() {
+    buffer.clear();
+    BinaryCodec.write(response, buffer);
+    return buffer;
+  }
+
+  @Benchmark public Response readResponse() throws ParseException {
+    encodedResponse.clear();
+    return BinaryCodec.readResponse(encodedResponse);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Encodes a standard donation's request URL with and without {@link Payment#freeze()}. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrozenPaymentBenchmark {
+  Payment donation() {
+    return new Payment()
+        .amount(2000, Currency.USD)
+        .description("Donation")
+        .offerReceipt(false)
+        .recipient("my-to-id");
+  }
+
+  Payment payment = donation();
+  FrozenPayment frozen = (FrozenPayment) donation().freeze();
+
+  /** Encodes every time, like requesting a mutable payment. */
+  @Benchmark public String url() {
+    return TerminalUrl.encode(payment, "my-app-id", null, false);
+  }
+
+  /** Requests an existing snapshot. */
+  @Benchmark public String frozenUrl() {
+    return frozen.url("my-app-id", false);
+  }
+
+  /** Builds and freezes an equal payment, which hits the cache. */
+  @Benchmark public String freezeAndUrl() {
+    return ((FrozenPayment) donation().freeze()).url("my-app-id", false);
+  }
+}
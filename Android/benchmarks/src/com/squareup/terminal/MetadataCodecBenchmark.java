@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares compressing metadata with {@link MetadataCodec} to percent-encoding it as is, for
+ * an itemized JSON order and a CSV of line items. Prints the size of each form in the URL.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetadataCodecBenchmark {
+  static final String[] NAMES = {
+      "Latte", "Cappuccino", "Americano", "Blueberry muffin", "Croissant", "Bagel, plain",
+      "Cold brew", "Chai latte", "Almond croissant", "Orange juice"
+  };
+
+  @Param({"json", "csv"}) String format;
+
+  String metadata;
+  String compressed;
+
+  @Setup public void setUp() {
+    metadata = format.equals("json") ? json() : csv();
+    compressed = MetadataCodec.compress(metadata);
+    System.out.println("\n" + format + ": " + metadata.length() + " chars, "
+        + QueryEncoder.encodedLength(metadata) + " percent-encoded, "
+        + compressed.length() + " compressed");
+  }
+
+  /** An order with a customer and ten line items. */
+  static String json() {
+    StringBuilder s = new StringBuilder("{\"order_id\":\"A-104288\",\"location\":\"Mission St\","
+        + "\"customer\":{\"id\":\"C-55102\",\"name\":\"Ada Lovelace\","
+        + "\"email\":\"ada@example.com\",\"phone\":\"+1 415 555 0100\"},\"items\":[");
+    int subtotal = 0;
+    for (int i = 0; i < NAMES.length; i++) {
+      int price = 250 + 75 * i;
+      int quantity = 1 + i % 3;
+      subtotal += price * quantity;
+      if (i > 0) s.append(',');
+      s.append("{\"sku\":\"SKU-").append(1000 + i * 37).append("\",\"name\":\"").append(NAMES[i])
+          .append("\",\"quantity\":").append(quantity).append(",\"price\":").append(price)
+          .append(",\"category\":\"").append(i < 3 || i == 6 || i == 7 ? "drinks" : "bakery")
+          .append("\"}");
+    }
+    int tax = subtotal * 875 / 10000;
+    return s.append("],\"subtotal\":").append(subtotal).append(",\"tax\":").append(tax)
+        .append(",\"tip\":300,\"total\":").append(subtotal + tax + 300)
+        .append(",\"currency\":\"USD\",\"created_at\":\"2012-03-14T09:26:53Z\","
+            + "\"note\":\"Extra hot, no foam\"}").toString();
+  }
+
+  /** Line items as CSV with a header row. */
+  static String csv() {
+    StringBuilder s = new StringBuilder("sku,name,quantity,price,total,tax\r\n");
+    for (int i = 0; i < 20; i++) {
+      int price = 250 + 75 * (i % 10);
+      int quantity = 1 + i % 3;
+      s.append("SKU-").append(1000 + i * 37).append(",\"").append(NAMES[i % 10]).append("\",")
+          .append(quantity).append(',').append(price).append(',').append(price * quantity)
+          .append(',').append(price * quantity * 875 / 10000).append("\r\n");
+    }
+    return s.toString();
+  }
+
+  @Benchmark public String percentEncode() {
+    return QueryEncoder.encode(metadata,
+        new StringBuilder(QueryEncoder.encodedLength(metadata))).toString();
+  }
+
+  @Benchmark public String compress() {
+    return MetadataCodec.compress(metadata);
+  }
+
+  @Benchmark public String decompress() {
+    return MetadataCodec.decode(compressed);
+  }
+}
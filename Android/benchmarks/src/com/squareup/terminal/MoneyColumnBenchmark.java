@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Reduces a million USD amounts, as a column and as Money objects. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoneyColumnBenchmark {
+  List<Money> money = new ArrayList<Money>();
+  MoneyColumn column = new MoneyColumn();
+  ExecutorService executor;
+
+  @Setup public void setUp() {
+    Random random = new Random(42);
+    for (int i = 0; i < 1000000; i++) {
+      Money m = new Money(random.nextInt(1000000), Currency.USD);
+      money.add(m);
+      column.add(m);
+    }
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown public void tearDown() {
+    executor.shutdown();
+  }
+
+  /** Baseline: the scalar loop a caller would write over Money objects. */
+  @Benchmark public MoneyAccumulator sumMoney() {
+    MoneyAccumulator accumulator = new MoneyAccumulator();
+    for (Money m : money) accumulator.add(m);
+    return accumulator;
+  }
+
+  @Benchmark public MoneyColumn.Summary summarize() {
+    return column.summarize(Currency.USD);
+  }
+
+  @Benchmark public MoneyColumn.Summary summarizeParallel() throws InterruptedException {
+    return column.summarize(Currency.USD, executor);
+  }
+
+  @Benchmark public long[] quantiles() {
+    return column.quantiles(Currency.USD, new double[] { 0.5, 0.9, 0.99 });
+  }
+
+  @Benchmark public long[] quantilesParallel() throws InterruptedException {
+    return column.quantiles(Currency.USD, new double[] { 0.5, 0.9, 0.99 }, executor);
+  }
+}
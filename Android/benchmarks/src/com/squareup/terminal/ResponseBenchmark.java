@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBenchmark {
+  String callbackUrl = "https://example.com/checkout/complete?order=1234";
+  Response successful = new Response("8CsZ2gTHfEG1dXyQ", "donation-000042");
+  Response error = new Response("donation-000042",
+      Arrays.asList("amount_too_small", "to_invalid_recipient"));
+
+  @Benchmark public String successfulCallbackUrl() {
+    return successful.toCallbackUrl(callbackUrl, false);
+  }
+
+  @Benchmark public String errorCallbackUrl() {
+    return error.toCallbackUrl(callbackUrl, false);
+  }
+
+  String successfulUrl = successful.toCallbackUrl(callbackUrl, false);
+  String errorUrl = error.toCallbackUrl(callbackUrl, false);
+
+  @Benchmark public Response parseSuccessfulCallbackUrl() throws ParseException {
+    return Response.fromCallbackUrl(successfulUrl);
+  }
+
+  @Benchmark public Response parseErrorCallbackUrl() throws ParseException {
+    return Response.fromCallbackUrl(errorUrl);
+  }
+
+  /** Splits and decodes with the JDK, for comparison. */
+  @Benchmark public Response naiveParseErrorCallbackUrl() throws Exception {
+    String query = errorUrl.substring(errorUrl.indexOf('?') + 1);
+    String referenceId = null;
+    String[] errors = null;
+    for (String parameter : query.split("&")) {
+      int equals = parameter.indexOf('=');
+      String name = parameter.substring(0, equals);
+      String value = URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+      if (name.equals("square_reference_id")) referenceId = value;
+      if (name.equals("square_errors")) errors = value.split(", ");
+    }
+    return new Response(referenceId, Arrays.asList(errors));
+  }
+}
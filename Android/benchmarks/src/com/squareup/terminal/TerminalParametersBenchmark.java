@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import android.net.Uri;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TerminalParametersBenchmark {
+  /** A payment like the ones the Jackson example app makes. */
+  Payment payment = new Payment()
+      .amount(2000, Currency.USD)
+      .description("\"Jane Doe\",\"jane@example.com\",\"1 Main St\",\"Springfield\",\"IL\","
+          + "\"62701\",\"Acme\",\"Engineer\",\"20\"\n")
+      .defaultEmail("jane@example.com")
+      .metadata("{\"event\":\"spring-gala\",\"table\":12,\"seat\":\"B\"}")
+      .referenceId("donation-000042")
+      .recipient("my-to-id");
+
+  TerminalParameters parameters = new TerminalParameters().copyFrom(payment);
+  Uri uri;
+
+  {
+    parameters.app_id = "my-app-id";
+    uri = Uri.parse("square://terminal/1.0/pay?" + parameters.appendTo(new StringBuilder()));
+  }
+
+  @Benchmark public TerminalParameters copyFromPayment() {
+    return new TerminalParameters().copyFrom(payment);
+  }
+
+  @Benchmark public String appendTo() {
+    return parameters.appendTo(new StringBuilder(parameters.queryLength())).toString();
+  }
+
+  @Benchmark public TerminalParameters copyFromUri() throws ParseException {
+    return new TerminalParameters().copyFrom(uri.getEncodedQuery());
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.net;
+
+/**
+ * Stands in for Android's Uri, whose methods throw on a plain JVM. Supports only what the
+ * benchmarks use. Goes ahead of android.jar on the runtime classpath.
+ */
+public class Uri {
+
+  private final String uriString;
+
+  private Uri(String uriString) {
+    this.uriString = uriString;
+  }
+
+  public static Uri parse(String uriString) {
+    return new Uri(uriString);
+  }
+
+  public String getEncodedQuery() {
+    int query = uriString.indexOf('?');
+    if (query == -1) return null;
+    int fragment = uriString.indexOf('#', query);
+    return uriString.substring(query + 1, fragment == -1 ? uriString.length() : fragment);
+  }
+
+  @Override public String toString() {
+    return uriString;
+  }
+}
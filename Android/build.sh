@@ -5,22 +5,26 @@ NAME=$BASE_NAME-$VERSION
 
 # Clear and recreate build directory.
 rm -rf build
+mkdir -p build/core-classes
 mkdir -p build/classes
 mkdir -p build/test-classes
 mkdir -p build/dist
 
+# Compile the core classes, which don't depend on Android.
+javac -g -d build/core-classes -target 5 `find core/src -name *.java`
+
 # Compile classes.
-javac -g -classpath external/android.jar -d build/classes \
+javac -g -classpath external/android.jar:build/core-classes -d build/classes \
     -target 5 `find src -name *.java`
 
 # Compile tests.
-javac -g -classpath external/junit-4.10.jar:external/android.jar:build/classes -d build/test-classes \
-    -target 5 `find tests -name *.java`
+javac -g -classpath external/junit-4.10.jar:external/android.jar:build/core-classes:build/classes \
+    -d build/test-classes -target 5 `find tests core/tests -name *.java`
 
 # Run tests.
-java -classpath external/junit-4.10.jar:external/android.jar:build/classes:build/test-classes \
+java -classpath external/junit-4.10.jar:external/android.jar:build/core-classes:build/classes:build/test-classes \
   org.junit.runner.JUnitCore \
-  $(find tests -name \*Test.java | sed 's/tests\///' | sed 's/\.java//' | sed 's/\//./g')
+  $(find tests core/tests -name \*Test.java | sed 's/^\(core\/\)\?tests\///' | sed 's/\.java//' | sed 's/\//./g')
 
 # Generate Javadocs.
 TITLE="Square's Terminal API for Android v${VERSION}"
@@ -34,14 +38,17 @@ javadoc -protected -bottom "$FOOTER" \
 	-header "$TITLE" \
     	-doctitle "$TITLE" \
 	-classpath external/android.jar \
-        -sourcepath src -d build/javadoc com.squareup.terminal
+        -sourcepath src:core/src -d build/javadoc com.squareup.terminal
 
 # Generate jars.
 
-jar cfM build/dist/$NAME-src.zip -C src .
+jar cfM build/dist/$NAME-src.zip -C src . -C core/src .
 
 jar cfM build/dist/$NAME-javadoc.zip -C build/javadoc .
-jar cfM build/dist/$NAME.jar -C build/classes .
+jar cfM build/dist/$NAME.jar -C build/core-classes . -C build/classes .
+
+# The core jar works on any JVM, for example to build payment URLs on a server.
+jar cfM build/dist/$BASE_NAME-core-$VERSION.jar -C build/core-classes .
 
 jar cfM build/$NAME.zip -C build/dist .
 
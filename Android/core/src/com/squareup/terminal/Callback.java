@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a web payment, parsed from the URL that Square opens when it finishes. See
+ * {@link TerminalUrl#of(Payment, String, String)}. Doesn't depend on Android.
+ */
+public final class Callback {
+
+  /** Names of the parameters that Square appends to the callback URL. */
+  /*package*/ static final String PARAM_STATUS = "square_status=";
+  /*package*/ static final String PARAM_REFERENCE_ID = "square_reference_id=";
+  /*package*/ static final String PARAM_ERRORS = "square_errors=";
+  /*package*/ static final String PARAM_PAYMENT_ID = "square_payment_id=";
+
+  public static final String STATUS_ERROR = "error";
+  public static final String STATUS_SUCCESSFUL = "successful";
+  public static final String STATUS_CANCELLED = "cancelled";
+
+  private final String status;
+  private final String paymentId;
+  private final String referenceId;
+  private final List<String> errors;
+
+  private Callback(String status, String paymentId, String referenceId, List<String> errors) {
+    this.status = status;
+    this.paymentId = paymentId;
+    this.referenceId = referenceId;
+    this.errors = errors;
+  }
+
+  /** Returns {@link #STATUS_SUCCESSFUL}, {@link #STATUS_ERROR} or {@link #STATUS_CANCELLED}. */
+  public String status() {
+    return status;
+  }
+
+  /** Returns the payment ID generated by Square or null if the payment was unsuccessful. */
+  public String paymentId() {
+    return paymentId;
+  }
+
+  /** Returns the ID that was passed to {@link Payment#referenceId(String)} or null. */
+  public String referenceId() {
+    return referenceId;
+  }
+
+  /** Returns the error codes or an empty list. */
+  public List<String> errors() {
+    return errors;
+  }
+
+  /**
+   * Parses the URL that Square opened, or just its query. Ignores parameters that Square
+   * didn't add, such as the application's own.
+   *
+   * @throws ParseException if the URL has no status or an unknown status
+   * @throws NullPointerException if url is null
+   */
+  public static Callback parse(CharSequence url) throws ParseException {
+    CallbackParser parser = new CallbackParser();
+    parser.parse(url);
+    return new Callback(parser.status(), parser.paymentId(), parser.referenceId(),
+        errors(parser));
+  }
+
+  private static List<String> errors(CallbackParser parser) {
+    if (!parser.nextError()) return Collections.emptyList();
+    List<String> errors = new ArrayList<String>(4);
+    do {
+      errors.add(parser.error());
+    } while (parser.nextError());
+    return Collections.unmodifiableList(errors);
+  }
+}
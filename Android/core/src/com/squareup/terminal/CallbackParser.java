@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.text.ParseException;
+
+/**
+ * Finds the parameters that Square appends to a callback URL in a single pass, without
+ * allocating. Keys and the status are matched in place, and values are left in place as
+ * ranges of the URL until they're asked for. Values without escapes are copied rather than
+ * decoded. Parameters that Square didn't add are skipped, and the last occurrence of a
+ * parameter wins, since Square appends its parameters after the application's own.
+ *
+ * <p>Instances aren't thread safe, but they can be reused.
+ */
+/*package*/ final class CallbackParser {
+
+  private CharSequence url;
+  private String status;
+  private int paymentIdStart, paymentIdEnd;
+  private int referenceIdStart, referenceIdEnd;
+  private int errorsStart, errorsEnd;
+
+  /** Bounds of the current error, or -1 before the first. See {@link #nextError()}. */
+  private int errorStart, errorEnd;
+
+  /** Created the first time a value needs decoding. */
+  private QueryDecoder decoder;
+
+  /**
+   * Parses a callback URL or just its query. The query ends at the fragment, if any.
+   *
+   * @throws ParseException if the status is missing or unknown
+   */
+  void parse(CharSequence url) throws ParseException {
+    this.url = url;
+    status = null;
+    paymentIdStart = referenceIdStart = errorsStart = -1;
+    errorStart = errorEnd = -1;
+
+    int end = indexOf('#', 0, url.length());
+    int question = indexOf('?', 0, end);
+    int start = question == end ? 0 : question + 1;
+    int statusStart = -1;
+    int statusEnd = -1;
+    for (int keyStart = start; keyStart < end; ) {
+      int valueEnd = indexOf('&', keyStart, end);
+      // Narrow the candidates down with the char after "square_".
+      if (valueEnd - keyStart > 7 && startsWith(keyStart, valueEnd, "square_")) {
+        switch (url.charAt(keyStart + 7)) {
+          case 's':
+            if (startsWith(keyStart, valueEnd, Callback.PARAM_STATUS)) {
+              statusStart = keyStart + Callback.PARAM_STATUS.length();
+              statusEnd = valueEnd;
+            }
+            break;
+          case 'p':
+            if (startsWith(keyStart, valueEnd, Callback.PARAM_PAYMENT_ID)) {
+              paymentIdStart = keyStart + Callback.PARAM_PAYMENT_ID.length();
+              paymentIdEnd = valueEnd;
+            }
+            break;
+          case 'r':
+            if (startsWith(keyStart, valueEnd, Callback.PARAM_REFERENCE_ID)) {
+              referenceIdStart = keyStart + Callback.PARAM_REFERENCE_ID.length();
+              referenceIdEnd = valueEnd;
+            }
+            break;
+          case 'e':
+            if (startsWith(keyStart, valueEnd, Callback.PARAM_ERRORS)) {
+              errorsStart = keyStart + Callback.PARAM_ERRORS.length();
+              errorsEnd = valueEnd;
+            }
+            break;
+          default:
+        }
+      }
+      keyStart = valueEnd + 1;
+    }
+
+    if (statusStart == -1) throw new ParseException("Missing status", start);
+    status = status(statusStart, statusEnd);
+    if (status == null) {
+      throw new ParseException("Unknown status: " + value(statusStart, statusEnd), statusStart);
+    }
+  }
+
+  /** Returns the status constant that {@code url[start..end)} matches, or null. */
+  private String status(int start, int end) {
+    if (equals(start, end, Callback.STATUS_SUCCESSFUL)) return Callback.STATUS_SUCCESSFUL;
+    if (equals(start, end, Callback.STATUS_ERROR)) return Callback.STATUS_ERROR;
+    if (equals(start, end, Callback.STATUS_CANCELLED)) return Callback.STATUS_CANCELLED;
+    if (indexOf('%', start, end) == end) return null;
+
+    // Escaped, which Square doesn't do, but it's still valid.
+    String decoded = value(start, end);
+    if (decoded.equals(Callback.STATUS_SUCCESSFUL)) return Callback.STATUS_SUCCESSFUL;
+    if (decoded.equals(Callback.STATUS_ERROR)) return Callback.STATUS_ERROR;
+    if (decoded.equals(Callback.STATUS_CANCELLED)) return Callback.STATUS_CANCELLED;
+    return null;
+  }
+
+  /** Returns one of the {@code Callback.STATUS_*} constants. */
+  String status() {
+    return status;
+  }
+
+  /** Returns the decoded payment ID or null. */
+  String paymentId() {
+    return paymentIdStart == -1 ? null : value(paymentIdStart, paymentIdEnd);
+  }
+
+  /** Returns the decoded reference ID or null. */
+  String referenceId() {
+    return referenceIdStart == -1 ? null : value(referenceIdStart, referenceIdEnd);
+  }
+
+  /** Counts the error codes. Doesn't move the {@linkplain #nextError() error cursor}. */
+  int errorCount() {
+    if (errorsStart == -1 || errorsStart == errorsEnd) return 0;
+    int count = 1;
+    for (int i = nextErrorSeparator(errorsStart); i < errorsEnd;
+        i = nextErrorSeparator(i + separatorLength(i))) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Moves to the next error code, or the first after {@link #parse}. Read it with {@link
+   * #error()}, or match it in place in {@code url()[errorStart()..errorEnd())}.
+   *
+   * @return false if there are no more errors
+   */
+  boolean nextError() {
+    int start;
+    if (errorStart == -1) {
+      if (errorsStart == -1 || errorsStart == errorsEnd) return false;
+      start = errorsStart;
+    } else {
+      if (errorEnd == errorsEnd) return false;
+      start = errorEnd + separatorLength(errorEnd);
+    }
+    errorStart = start;
+    errorEnd = nextErrorSeparator(start);
+    return true;
+  }
+
+  /** Returns the index where the current error starts. */
+  int errorStart() {
+    return errorStart;
+  }
+
+  /** Returns the index where the current error ends. */
+  int errorEnd() {
+    return errorEnd;
+  }
+
+  /** Returns the decoded current error. */
+  String error() {
+    return value(errorStart, errorEnd);
+  }
+
+  /**
+   * Returns the index of the next ", " separator between errors, encoded or not, at or after
+   * {@code start}, or {@link #errorsEnd} if there are no more separators.
+   */
+  private int nextErrorSeparator(int start) {
+    for (int i = start; i < errorsEnd; i++) {
+      if (separatorLength(i) > 0) return i;
+    }
+    return errorsEnd;
+  }
+
+  /**
+   * Returns the length of the ", " separator at the given index, encoded as "%2C%20" by
+   * {@code Response.toCallbackUrl()} or written any other way, or 0 if there isn't one.
+   */
+  private int separatorLength(int index) {
+    int comma = escaped(index, ',');
+    if (comma == 0) return 0;
+    int space = escaped(index + comma, ' ');
+    return space == 0 ? 0 : comma + space;
+  }
+
+  /** Returns the length of c at the index, escaped or not, or 0 if it isn't there. */
+  private int escaped(int index, char c) {
+    if (index >= errorsEnd) return 0;
+    char first = url.charAt(index);
+    if (first == c) return 1;
+    if (first != '%' || index + 2 >= errorsEnd) return 0;
+    int high = Character.digit(url.charAt(index + 1), 16);
+    int low = Character.digit(url.charAt(index + 2), 16);
+    return high != -1 && low != -1 && ((high << 4) | low) == c ? 3 : 0;
+  }
+
+  /** Returns the URL being parsed. */
+  CharSequence url() {
+    return url;
+  }
+
+  /** Decodes {@code url[start..end)}. Copies it if it has no escapes. */
+  private String value(int start, int end) {
+    if (indexOf('%', start, end) == end) return url.subSequence(start, end).toString();
+    if (decoder == null) decoder = new QueryDecoder();
+    return decoder.decodeValue(url, start, end);
+  }
+
+  /** Returns the index of c in {@code url[start..end)} or end if it's not there. */
+  private int indexOf(char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (url.charAt(i) == c) return i;
+    }
+    return end;
+  }
+
+  /** Returns true if {@code url[start..end)} starts with the given prefix. */
+  private boolean startsWith(int start, int end, String prefix) {
+    if (end - start < prefix.length()) return false;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (url.charAt(start + i) != prefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private boolean equals(int start, int end, String s) {
+    return end - start == s.length() && startsWith(start, end, s);
+  }
+}
@@ -22,8 +22,25 @@ package com.squareup.terminal;
  */
 public enum Currency {
 
+  // Append only. Binary records store currencies by ordinal.
+
   /** United States dollar. The atomic unit is the cent. */
-  USD(2);
+  USD(2, 999999999), // 9 digits or $9,999,999.99
+
+  /** Canadian dollar. The atomic unit is the cent. */
+  CAD(2, 999999999),
+
+  /** Euro. The atomic unit is the cent. */
+  EUR(2, 999999999),
+
+  /** Pound sterling. The atomic unit is the penny. */
+  GBP(2, 999999999),
+
+  /** Australian dollar. The atomic unit is the cent. */
+  AUD(2, 999999999),
+
+  /** Japanese yen, which has no fractional unit. */
+  JPY(0, 999999999);
 
   /** Number of digits in the fractional part. */
   final int scale;
@@ -31,11 +48,29 @@ public enum Currency {
   /** Divisor for this currency. The divisor for USD is 100. */
   final int divisor;
 
-  Currency(int scale) {
+  /**
+   * The maximum amount supported by Square in atomic units. This is the absolute maximum
+   * supported by the Square application; it's likely much greater than the merchant-specific
+   * card payment limit.
+   */
+  final long maxAmount;
+
+  Currency(int scale, long maxAmount) {
     this.scale = scale;
+    this.maxAmount = maxAmount;
 
     int divisor = 1;
     for (int i = 0; i < scale; i++) divisor *= 10;
     this.divisor = divisor;
   }
+
+  /** Returns the number of digits after the decimal point, e.g. 2 for USD. */
+  public int scale() {
+    return scale;
+  }
+
+  /** Returns the maximum amount of a payment in atomic units of this currency. */
+  public long maxAmount() {
+    return maxAmount;
+  }
 }
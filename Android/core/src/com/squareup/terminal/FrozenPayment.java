@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of a payment. Memoizes its hash code and request URL. See {@link
+ * Payment#freeze()}.
+ */
+/*package*/ final class FrozenPayment extends Payment {
+
+  /** Number of recently frozen payments to cache. */
+  private static final int CACHE_SIZE = 64;
+
+  /** Maps recently frozen payments to themselves. Guarded by itself. */
+  private static final Map<FrozenPayment, FrozenPayment> cache
+      = new LinkedHashMap<FrozenPayment, FrozenPayment>(CACHE_SIZE * 2, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(
+            Map.Entry<FrozenPayment, FrozenPayment> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      };
+
+  private final int hashCode;
+
+  /** Request URL for the last application ID and compression setting. */
+  private volatile Url url;
+
+  private FrozenPayment(Payment payment) {
+    super(payment);
+    this.hashCode = computeHashCode();
+  }
+
+  /** Freezes the given payment, returning a cached snapshot if an equal one exists. */
+  static Payment of(Payment payment) {
+    if (payment instanceof FrozenPayment) return payment;
+    FrozenPayment frozen = new FrozenPayment(payment);
+    synchronized (cache) {
+      FrozenPayment cached = cache.get(frozen);
+      if (cached != null) return cached;
+      cache.put(frozen, frozen);
+    }
+    return frozen;
+  }
+
+  /** Returns the URL that requests this payment for the given application. */
+  String url(String applicationId, boolean compressMetadata) {
+    // Benign race: threads may encode the URL more than once.
+    Url url = this.url;
+    if (url == null || !url.applicationId.equals(applicationId)
+        || url.compressMetadata != compressMetadata) {
+      this.url = url = new Url(applicationId, compressMetadata,
+          TerminalUrl.encode(this, applicationId, null, compressMetadata));
+    }
+    return url.value;
+  }
+
+  private static final class Url {
+    final String applicationId;
+    final boolean compressMetadata;
+    final String value;
+
+    Url(String applicationId, boolean compressMetadata, String value) {
+      this.applicationId = applicationId;
+      this.compressMetadata = compressMetadata;
+      this.value = value;
+    }
+  }
+
+  @Override public Payment freeze() {
+    return this;
+  }
+
+  @Override public Payment amount(Money amount) {
+    throw frozen();
+  }
+
+  @Override public Payment defaultEmail(String defaultEmail) {
+    throw frozen();
+  }
+
+  @Override public Payment defaultPhone(String defaultPhone) {
+    throw frozen();
+  }
+
+  @Override public Payment description(String description) {
+    throw frozen();
+  }
+
+  @Override public Payment metadata(String metadata) {
+    throw frozen();
+  }
+
+  @Override public Payment offerReceipt(boolean offerReceipt) {
+    throw frozen();
+  }
+
+  @Override public Payment referenceId(String referenceId) {
+    throw frozen();
+  }
+
+  @Override public Payment recipient(String accountId) {
+    throw frozen();
+  }
+
+  private static UnsupportedOperationException frozen() {
+    return new UnsupportedOperationException("Payment is frozen.");
+  }
+
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof FrozenPayment)) return false;
+    FrozenPayment other = (FrozenPayment) o;
+    if (hashCode != other.hashCode) return false;
+    Money amount = amount();
+    Money otherAmount = other.amount();
+    if (amount == null ? otherAmount != null : otherAmount == null
+        || amount.amount() != otherAmount.amount()
+        || amount.currency() != otherAmount.currency()) {
+      return false;
+    }
+    return offerReceipt() == other.offerReceipt()
+        && equal(defaultEmail(), other.defaultEmail())
+        && equal(defaultPhone(), other.defaultPhone())
+        && equal(description(), other.description())
+        && equal(metadata(), other.metadata())
+        && equal(referenceId(), other.referenceId())
+        && equal(recipient(), other.recipient());
+  }
+
+  private static boolean equal(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override public int hashCode() {
+    return hashCode;
+  }
+
+  private int computeHashCode() {
+    Money amount = amount();
+    int h = amount == null ? 0 : (int) (amount.amount() ^ amount.amount() >>> 32) * 31
+        + amount.currency().ordinal();
+    h = h * 31 + (offerReceipt() ? 1 : 0);
+    h = h * 31 + hashCode(defaultEmail());
+    h = h * 31 + hashCode(defaultPhone());
+    h = h * 31 + hashCode(description());
+    h = h * 31 + hashCode(metadata());
+    h = h * 31 + hashCode(referenceId());
+    h = h * 31 + hashCode(recipient());
+    return h;
+  }
+
+  private static int hashCode(String s) {
+    return s == null ? 0 : s.hashCode();
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses payment metadata for the launch URL. Metadata is deflated with a preset
+ * dictionary of JSON and CSV fragments, base64url-encoded without padding, and prefixed with
+ * {@link #MARKER}. Base64url characters pass through percent-encoding unchanged, so a
+ * compressed value's length in the URL is its length here, while raw JSON roughly triples.
+ *
+ * <p>Deflaters and inflaters hold native memory until they're ended. A few are kept in shared
+ * pools for reuse, and the rest are ended as soon as they're done.
+ */
+/*package*/ final class MetadataCodec {
+
+  private MetadataCodec() {}
+
+  /** Starts every compressed value. The digit is the format version; bump it to change it. */
+  static final String MARKER = "~z1~";
+
+  /**
+   * Largest decompressed size accepted: 4096 characters of UTF-8. Guards against payloads
+   * that inflate far beyond any valid metadata.
+   */
+  static final int MAX_DECOMPRESSED_SIZE = 4096 * 3;
+
+  /**
+   * Preset dictionary. Deflate refers back into it like earlier input, so strings that are
+   * likely to show up in metadata compress even in short values. The most common strings go
+   * at the end, where references are shortest. Never change it; add a new format version
+   * instead.
+   */
+  private static final byte[] DICTIONARY = ascii(
+      "sku,name,quantity,price,total,tax,tip,discount,date,time,email,phone,note\r\n"
+      + "\"address\":\"city\":\"state\":\"zip\":\"country\":\"first_name\":\"last_name\":"
+      + "\"customer\":\"customer_id\":\"order_id\":\"user_id\":\"created_at\":\"updated_at\":"
+      + "\"timestamp\":\"date\":\"time\":\"note\":\"notes\":\"tags\":\"source\":\"version\":"
+      + "\"location\":\"table\":\"server\":\"register\":\"device\":\"tip\":\"tax\":"
+      + "\"discount\":\"subtotal\":\"total\":\"amount\":\"currency\":\"USD\",\"price\":"
+      + "\"unit_price\":\"quantity\":\"sku\":\"category\":\"description\":\"name\":"
+      + "\"email\":\"phone\":\"type\":\"value\":\"status\":\"order\":\"items\":[{\"id\":"
+      + "null,true,false,\"},{\"\":\"\",\"\":0,\"\":1,\"\":[],\"\":{}}]");
+
+  private static final char[] BASE64URL =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+  /** Indexed by ASCII character. The 6-bit value of a base64url character, or -1. */
+  private static final byte[] BASE64URL_VALUES = new byte[128];
+
+  static {
+    for (int i = 0; i < BASE64URL_VALUES.length; i++) BASE64URL_VALUES[i] = -1;
+    for (int i = 0; i < BASE64URL.length; i++) BASE64URL_VALUES[BASE64URL[i]] = (byte) i;
+  }
+
+  private static final Pool<Deflater> deflaters = new Pool<Deflater>(Pool.DEFAULT_CAPACITY);
+  private static final Pool<Inflater> inflaters = new Pool<Inflater>(Pool.DEFAULT_CAPACITY);
+
+  /**
+   * Returns the compressed form of the given metadata if it's shorter in a URL than the
+   * metadata itself, or the metadata otherwise. Metadata that starts with {@link #MARKER} is
+   * always compressed, so {@link #decode} can't mistake it for a compressed value.
+   */
+  static String encode(String metadata) {
+    String compressed = compress(metadata);
+    return compressed.length() < QueryEncoder.encodedLength(metadata)
+        || metadata.startsWith(MARKER) ? compressed : metadata;
+  }
+
+  /** Compresses the given metadata. */
+  static String compress(String metadata) {
+    byte[] input = utf8(metadata);
+    Deflater deflater = deflaters.take();
+    if (deflater == null) deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+    // Incompressible input grows by a few bytes per 16KB block, plus the zlib wrapper.
+    byte[] output = new byte[input.length + input.length / 1000 + 64];
+    int length = 0;
+    try {
+      deflater.setDictionary(DICTIONARY);
+      deflater.setInput(input);
+      deflater.finish();
+      while (!deflater.finished()) {
+        if (length == output.length) output = copyOf(output, length * 2);
+        length += deflater.deflate(output, length, output.length - length);
+      }
+    } finally {
+      deflater.reset();
+      if (!deflaters.offer(deflater)) deflater.end();
+    }
+
+    char[] chars = new char[MARKER.length() + (length * 4 + 2) / 3];
+    MARKER.getChars(0, MARKER.length(), chars, 0);
+    base64url(output, length, chars, MARKER.length());
+    return new String(chars);
+  }
+
+  /**
+   * Returns the decompressed metadata if the given value is compressed, or the value
+   * otherwise. Values that start with {@link #MARKER} but aren't valid compressed data are
+   * returned as is.
+   */
+  static String decode(String value) {
+    if (value == null || !value.startsWith(MARKER)) return value;
+    byte[] input = base64url(value, MARKER.length());
+    if (input == null) return value;
+
+    Inflater inflater = inflaters.take();
+    if (inflater == null) inflater = new Inflater();
+    byte[] output = new byte[Math.min(input.length * 4 + 64, MAX_DECOMPRESSED_SIZE)];
+    int length = 0;
+    try {
+      inflater.setInput(input);
+      while (!inflater.finished()) {
+        if (inflater.needsDictionary()) {
+          inflater.setDictionary(DICTIONARY);
+        } else if (inflater.needsInput()) {
+          return value; // Truncated.
+        } else if (length == output.length) {
+          if (length == MAX_DECOMPRESSED_SIZE) return value;
+          output = copyOf(output, Math.min(length * 2, MAX_DECOMPRESSED_SIZE));
+        } else {
+          length += inflater.inflate(output, length, output.length - length);
+        }
+      }
+      if (inflater.getRemaining() > 0) return value;
+    } catch (DataFormatException e) {
+      return value;
+    } catch (IllegalArgumentException e) {
+      return value; // Wrong dictionary.
+    } finally {
+      inflater.reset();
+      if (!inflaters.offer(inflater)) inflater.end();
+    }
+    try {
+      return new String(output, 0, length, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static byte[] copyOf(byte[] bytes, int length) {
+    byte[] copy = new byte[length];
+    System.arraycopy(bytes, 0, copy, 0, bytes.length);
+    return copy;
+  }
+
+  /** Writes {@code bytes[0..length)} as base64url without padding. */
+  private static void base64url(byte[] bytes, int length, char[] out, int offset) {
+    int i = 0;
+    int o = offset;
+    for (; i + 3 <= length; i += 3) {
+      int b = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+      out[o++] = BASE64URL[b >>> 18];
+      out[o++] = BASE64URL[(b >>> 12) & 0x3f];
+      out[o++] = BASE64URL[(b >>> 6) & 0x3f];
+      out[o++] = BASE64URL[b & 0x3f];
+    }
+    int remaining = length - i;
+    if (remaining == 1) {
+      int b = bytes[i] & 0xff;
+      out[o++] = BASE64URL[b >>> 2];
+      out[o] = BASE64URL[(b << 4) & 0x3f];
+    } else if (remaining == 2) {
+      int b = (bytes[i] & 0xff) << 8 | (bytes[i + 1] & 0xff);
+      out[o++] = BASE64URL[b >>> 10];
+      out[o++] = BASE64URL[(b >>> 4) & 0x3f];
+      out[o] = BASE64URL[(b << 2) & 0x3f];
+    }
+  }
+
+  /** Decodes base64url without padding, starting at offset, or returns null if invalid. */
+  private static byte[] base64url(String s, int offset) {
+    int chars = s.length() - offset;
+    if (chars % 4 == 1) return null;
+    byte[] bytes = new byte[chars * 3 / 4];
+    int bits = 0;
+    int bitCount = 0;
+    int b = 0;
+    for (int i = offset; i < s.length(); i++) {
+      char c = s.charAt(i);
+      int value = c < 128 ? BASE64URL_VALUES[c] : -1;
+      if (value == -1) return null;
+      bits = (bits << 6) | value;
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        bytes[b++] = (byte) (bits >>> bitCount);
+      }
+    }
+    // Leftover bits must be zero, so each value has exactly one encoding.
+    if ((bits & ((1 << bitCount) - 1)) != 0) return null;
+    return bytes;
+  }
+
+  private static byte[] utf8(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static byte[] ascii(String s) {
+    try {
+      return s.getBytes("US-ASCII");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
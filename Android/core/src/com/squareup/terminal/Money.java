@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.text.ParseException;
+
+// TODO: Move Money and Currency to com.squareup (in a separate module?)
+
+/**
+ * A quantity of a specific {@linkplain Currency currency}.
+ *
+ * @author Bob Lee (bob@squareup.com)
+ */
+public final class Money {
+
+  private final long amount;
+  private final Currency currency;
+
+  /**
+   * Constructs a new Money. The amount is specified in
+   * atomic units of the specified currency. For example, if the currency is the
+   * {@linkplain Currency#USD U.S. dollar}, the amount is specified in
+   * cents.
+   *
+   * @param amount atomic units of the specified currency, >= 0 && <=
+   *  {@link Currency#maxAmount()}
+   * @param currency type
+   * @throws IllegalArgumentException if amount is < 0 || >
+   *  {@link Currency#maxAmount()}
+   * @throws NullPointerException if currency is null
+   */
+  public Money(long amount, Currency currency) {
+    if (currency == null) throw new NullPointerException("currency");
+    checkAmount(amount, currency);
+
+    this.amount = amount;
+    this.currency = currency;
+  }
+
+  /**
+   * @throws IllegalArgumentException if amount is < 0 || > {@link Currency#maxAmount()}
+   */
+  private static void checkAmount(long amount, Currency currency) {
+    if (amount < 0) throw new IllegalArgumentException("amount < 0");
+    if (amount > currency.maxAmount) {
+      throw new IllegalArgumentException("amount > " + currency + " maxAmount");
+    }
+  }
+
+  /**
+   * Returns the amount in atomic units of {@link #currency}.
+   */
+  public long amount() {
+    return amount;
+  }
+
+  /**
+   * Returns the currency type for this value.
+   */
+  public Currency currency() {
+    return currency;
+  }
+
+  /**
+   * Returns the amount as a fixed point string. The number of decimal places depends on the
+   * currency.
+   */
+  /*package*/ String fixedPoint() {
+    char[] chars = new char[fixedPointLength()];
+    fixedPoint(chars, 0);
+    return new String(chars);
+  }
+
+  /** Returns the number of characters in {@link #fixedPoint()}. */
+  /*package*/ int fixedPointLength() {
+    int digits = 1;
+    for (long whole = amount / currency.divisor; whole >= 10; whole /= 10) digits++;
+    return currency.scale == 0 ? digits : digits + 1 + currency.scale;
+  }
+
+  /**
+   * Writes {@link #fixedPoint()} into the given buffer starting at offset. Doesn't allocate.
+   *
+   * @return the offset after the last character written
+   * @throws ArrayIndexOutOfBoundsException if the buffer is too small
+   */
+  /*package*/ int fixedPoint(char[] buffer, int offset) {
+    int end = offset + fixedPointLength();
+    if (offset < 0 || end > buffer.length) throw new ArrayIndexOutOfBoundsException(end);
+    writeFixedPoint(buffer, null, end);
+    return end;
+  }
+
+  /**
+   * Appends {@link #fixedPoint()} to the given builder. Doesn't allocate unless the builder has
+   * to grow.
+   *
+   * @return the builder
+   */
+  /*package*/ StringBuilder appendFixedPoint(StringBuilder out) {
+    int end = out.length() + fixedPointLength();
+    out.setLength(end);
+    writeFixedPoint(null, out, end);
+    return out;
+  }
+
+  /**
+   * Writes {@link #fixedPoint()} so it ends just before {@code end}, into the buffer if it's
+   * not null or the builder otherwise. The target must already have room.
+   */
+  private void writeFixedPoint(char[] buffer, StringBuilder out, int end) {
+    // Write digits from right to left. The fractional digits are the low order digits.
+    long remaining = amount;
+    int i = end;
+    for (int s = 0; s < currency.scale; s++, remaining /= 10) {
+      put(buffer, out, --i, (char) ('0' + remaining % 10));
+    }
+    if (currency.scale > 0) put(buffer, out, --i, '.');
+    do {
+      put(buffer, out, --i, (char) ('0' + remaining % 10));
+      remaining /= 10;
+    } while (remaining > 0);
+  }
+
+  private static void put(char[] buffer, StringBuilder out, int index, char c) {
+    if (buffer != null) {
+      buffer[index] = c;
+    } else {
+      out.setCharAt(index, c);
+    }
+  }
+
+  /** Parses a fixed point currency string. */
+  /*package*/ static Money parse(String fixedPoint, Currency currency) throws ParseException {
+    return parse(fixedPoint, 0, fixedPoint.length(), currency);
+  }
+
+  /**
+   * Parses a fixed point currency string from {@code chars[start..end)} in a single pass, so
+   * callers can parse an amount out of a larger buffer without copying it first. The string
+   * must have exactly {@link Currency#scale} decimal places, or no decimal point if the scale
+   * is 0.
+   *
+   * @throws ParseException if the string is malformed or the amount is greater than
+   *  {@link Currency#maxAmount()}
+   */
+  /*package*/ static Money parse(CharSequence chars, int start, int end, Currency currency)
+      throws ParseException {
+    long maxWhole = currency.maxAmount / currency.divisor;
+
+    // Whole part.
+    int i = start;
+    long whole = 0;
+    while (i < end && isDigit(chars.charAt(i))) {
+      whole = whole * 10 + (chars.charAt(i) - '0');
+      if (whole > maxWhole) throw tooLarge(chars, start, end, i);
+      i++;
+    }
+    if (i == start) throw malformed(chars, start, end, currency, i);
+
+    // Fractional part.
+    long fractional = 0;
+    if (currency.scale > 0) {
+      if (i == end || chars.charAt(i) != '.') throw malformed(chars, start, end, currency, i);
+      i++;
+      int fractionalEnd = i + currency.scale;
+      if (fractionalEnd > end) throw malformed(chars, start, end, currency, end);
+      for (; i < fractionalEnd; i++) {
+        char c = chars.charAt(i);
+        if (!isDigit(c)) throw malformed(chars, start, end, currency, i);
+        fractional = fractional * 10 + (c - '0');
+      }
+    }
+    if (i != end) throw malformed(chars, start, end, currency, i);
+
+    long amount = whole * currency.divisor + fractional;
+    if (amount > currency.maxAmount) throw tooLarge(chars, start, end, i);
+    return new Money(amount, currency);
+  }
+
+  /** Matches ASCII digits only, like {@code \d} in a regular expression. */
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static ParseException malformed(CharSequence chars, int start, int end,
+      Currency currency, int errorOffset) {
+    return new ParseException("\"" + chars.subSequence(start, end) + "\" isn't a fixed point "
+        + currency + " amount with " + currency.scale + " decimal places.", errorOffset - start);
+  }
+
+  private static ParseException tooLarge(CharSequence chars, int start, int end,
+      int errorOffset) {
+    return new ParseException("\"" + chars.subSequence(start, end) + "\" > maxAmount.",
+        errorOffset - start);
+  }
+
+  /**
+   * Adds two amounts in atomic units of the given currency. Doesn't allocate. Use a {@link
+   * MoneyAccumulator} to total more than a payment's worth.
+   *
+   * @throws IllegalArgumentException if an amount is < 0 || > {@link Currency#maxAmount()}
+   * @throws ArithmeticException if the sum is > {@link Currency#maxAmount()}
+   * @throws NullPointerException if currency is null
+   */
+  public static long add(long a, long b, Currency currency) {
+    checkAmount(a, currency);
+    checkAmount(b, currency);
+    long sum = a + b; // Can't overflow.
+    if (sum > currency.maxAmount) throw new ArithmeticException("sum > " + currency + " maxAmount");
+    return sum;
+  }
+
+  /**
+   * Multiplies an amount in atomic units of the given currency by a quantity, e.g. the price of
+   * an item by the number sold. Doesn't allocate.
+   *
+   * @throws IllegalArgumentException if quantity < 0 or amount is < 0 || >
+   *  {@link Currency#maxAmount()}
+   * @throws ArithmeticException if the product is > {@link Currency#maxAmount()}
+   * @throws NullPointerException if currency is null
+   */
+  public static long multiply(long amount, int quantity, Currency currency) {
+    checkAmount(amount, currency);
+    if (quantity < 0) throw new IllegalArgumentException("quantity < 0");
+    long product = amount * quantity; // Can't overflow; both factors are < 2^31.
+    if (product > currency.maxAmount) {
+      throw new ArithmeticException("product > " + currency + " maxAmount");
+    }
+    return product;
+  }
+
+  /**
+   * Splits an amount into shares proportional to the given ratios, such as percentages. Each
+   * share is rounded down, then the leftover atomic units go one at a time to the shares with
+   * non-zero ratios, in order, so the shares always add up to the amount. Doesn't allocate.
+   *
+   * @param amount in atomic units, >= 0
+   * @param ratios >= 0, with a sum > 0 and <= {@link Integer#MAX_VALUE}
+   * @param shares receives the shares, at least as long as ratios
+   * @throws IllegalArgumentException if an argument is out of range
+   * @throws NullPointerException if ratios or shares is null
+   */
+  public static void allocate(long amount, int[] ratios, long[] shares) {
+    if (amount < 0) throw new IllegalArgumentException("amount < 0");
+    if (shares.length < ratios.length) throw new IllegalArgumentException("shares too short");
+    long total = 0;
+    for (int ratio : ratios) {
+      if (ratio < 0) throw new IllegalArgumentException("ratio < 0");
+      total += ratio;
+    }
+    if (total == 0) throw new IllegalArgumentException("sum of ratios is 0");
+    if (total > Integer.MAX_VALUE) throw new IllegalArgumentException("sum of ratios too large");
+
+    // amount * ratio / total without overflowing. The second product is < 2^62.
+    long quotient = amount / total;
+    long remainder = amount % total;
+    long allocated = 0;
+    for (int i = 0; i < ratios.length; i++) {
+      shares[i] = quotient * ratios[i] + remainder * ratios[i] / total;
+      allocated += shares[i];
+    }
+
+    // Fewer leftover units than non-zero ratios.
+    long leftover = amount - allocated;
+    for (int i = 0; leftover > 0; i++) {
+      if (ratios[i] > 0) {
+        shares[i]++;
+        leftover--;
+      }
+    }
+  }
+
+  /**
+   * Splits an amount into equal shares. The first {@code amount % shares.length} shares get one
+   * more atomic unit than the rest. Doesn't allocate.
+   *
+   * @param amount in atomic units, >= 0
+   * @param shares receives the shares, length > 0
+   * @throws IllegalArgumentException if amount < 0 or shares is empty
+   * @throws NullPointerException if shares is null
+   */
+  public static void split(long amount, long[] shares) {
+    if (amount < 0) throw new IllegalArgumentException("amount < 0");
+    if (shares.length == 0) throw new IllegalArgumentException("no shares");
+    long share = amount / shares.length;
+    long leftover = amount % shares.length;
+    for (int i = 0; i < shares.length; i++) shares[i] = i < leftover ? share + 1 : share;
+  }
+
+  @Override public String toString() {
+    return "Money{" +
+        "amount=" + amount +
+        ", currency=" + currency +
+        '}';
+  }
+}
\ No newline at end of file
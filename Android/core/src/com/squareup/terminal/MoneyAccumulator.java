@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+/**
+ * Totals amounts per currency without allocating, e.g. to summarize an event's payments.
+ * Totals may exceed {@link Currency#maxAmount()}; they're limited only by {@code long}.
+ *
+ * <p>Not thread safe. To total in parallel, give each thread its own accumulator and
+ * {@linkplain #add(MoneyAccumulator) combine} them.
+ */
+public final class MoneyAccumulator {
+
+  private static final Currency[] CURRENCIES = Currency.values();
+
+  /** Totals indexed by currency ordinal. */
+  private final long[] totals = new long[CURRENCIES.length];
+
+  /** Number of amounts added, indexed by currency ordinal. */
+  private final long[] counts = new long[CURRENCIES.length];
+
+  /**
+   * Adds the given amount.
+   *
+   * @return this accumulator
+   * @throws ArithmeticException if the total would exceed {@link Long#MAX_VALUE}, in which
+   *  case the total is unchanged
+   * @throws NullPointerException if money is null
+   */
+  public MoneyAccumulator add(Money money) {
+    return add(money.amount(), money.currency());
+  }
+
+  /**
+   * Adds an amount in atomic units of the given currency.
+   *
+   * @return this accumulator
+   * @throws IllegalArgumentException if amount < 0
+   * @throws ArithmeticException if the total would exceed {@link Long#MAX_VALUE}, in which
+   *  case the total is unchanged
+   * @throws NullPointerException if currency is null
+   */
+  public MoneyAccumulator add(long amount, Currency currency) {
+    if (amount < 0) throw new IllegalArgumentException("amount < 0");
+    int i = currency.ordinal();
+    totals[i] = checkedAdd(totals[i], amount, currency);
+    counts[i]++;
+    return this;
+  }
+
+  /**
+   * Adds another accumulator's totals and counts to this one.
+   *
+   * @return this accumulator
+   * @throws ArithmeticException if a total would exceed {@link Long#MAX_VALUE}, in which case
+   *  this accumulator is unchanged
+   * @throws NullPointerException if other is null
+   */
+  public MoneyAccumulator add(MoneyAccumulator other) {
+    // Check every currency first so a failure leaves this unchanged.
+    for (int i = 0; i < totals.length; i++) {
+      checkedAdd(totals[i], other.totals[i], CURRENCIES[i]);
+    }
+    for (int i = 0; i < totals.length; i++) {
+      totals[i] += other.totals[i];
+      counts[i] += other.counts[i];
+    }
+    return this;
+  }
+
+  /** Adds a precomputed total of count amounts. The caller ensures it won't overflow. */
+  /*package*/ void add(long total, long count, Currency currency) {
+    int i = currency.ordinal();
+    totals[i] = checkedAdd(totals[i], total, currency);
+    counts[i] += count;
+  }
+
+  private static long checkedAdd(long total, long amount, Currency currency) {
+    long sum = total + amount;
+    if (sum < 0) throw new ArithmeticException(currency + " total overflowed");
+    return sum;
+  }
+
+  /** Returns the total in atomic units of the given currency. */
+  public long total(Currency currency) {
+    return totals[currency.ordinal()];
+  }
+
+  /** Returns the number of amounts of the given currency that were added. */
+  public long count(Currency currency) {
+    return counts[currency.ordinal()];
+  }
+
+  /**
+   * Returns the total of the given currency as Money.
+   *
+   * @throws IllegalArgumentException if the total is > {@link Currency#maxAmount()}
+   */
+  public Money toMoney(Currency currency) {
+    return new Money(total(currency), currency);
+  }
+
+  /** Clears all totals and counts so this accumulator can be reused. */
+  public void reset() {
+    for (int i = 0; i < totals.length; i++) {
+      totals[i] = 0;
+      counts[i] = 0;
+    }
+  }
+}
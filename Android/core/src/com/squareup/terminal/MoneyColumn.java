@@ -0,0 +1,558 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A column of amounts for bulk reporting, such as totals and percentiles after an event.
+ * Stores atomic units in a {@code long[]} and currency ordinals in a {@code byte[]}, so it
+ * holds millions of amounts without a {@link Money} object apiece.
+ *
+ * <p>Reductions scan the arrays in tight loops that the JIT can vectorize, and skip the
+ * currency check entirely when the column holds a single currency. Each reduction has an
+ * overload that splits the column into chunks and reduces them in parallel on an executor.
+ * Sums can't overflow: every amount is at most {@link Currency#maxAmount()}, which is less
+ * than 2^30, and a column holds fewer than 2^31 amounts.
+ *
+ * <p>Not thread safe. Don't add amounts during a reduction.
+ */
+public final class MoneyColumn {
+
+  private static final Currency[] CURRENCIES = Currency.values();
+
+  /** Number of amounts per parallel task. */
+  /*package*/ static final int CHUNK_SIZE = 1 << 16;
+
+  private long[] amounts;
+  private byte[] currencies;
+  private int size;
+
+  /** Bit i is set if the column contains currency i. */
+  private int currencyMask;
+
+  /** Constructs an empty column. */
+  public MoneyColumn() {
+    this(16);
+  }
+
+  /**
+   * Constructs an empty column with room for the given number of amounts.
+   *
+   * @throws IllegalArgumentException if initialCapacity < 0
+   */
+  public MoneyColumn(int initialCapacity) {
+    if (initialCapacity < 0) throw new IllegalArgumentException("initialCapacity < 0");
+    amounts = new long[initialCapacity];
+    currencies = new byte[initialCapacity];
+  }
+
+  /**
+   * Appends an amount.
+   *
+   * @return this column
+   * @throws NullPointerException if money is null
+   */
+  public MoneyColumn add(Money money) {
+    return append(money.amount(), money.currency());
+  }
+
+  /**
+   * Appends a payment's amount.
+   *
+   * @return this column
+   * @throws IllegalArgumentException if the payment has no amount
+   * @throws NullPointerException if payment is null
+   */
+  public MoneyColumn add(Payment payment) {
+    Money amount = payment.amount();
+    if (amount == null) throw new IllegalArgumentException("amount is required");
+    return add(amount);
+  }
+
+  /**
+   * Appends an amount in atomic units of the given currency.
+   *
+   * @return this column
+   * @throws IllegalArgumentException if amount is < 0 || > {@link Currency#maxAmount()}
+   * @throws NullPointerException if currency is null
+   */
+  public MoneyColumn add(long amount, Currency currency) {
+    if (amount < 0) throw new IllegalArgumentException("amount < 0");
+    if (amount > currency.maxAmount) {
+      throw new IllegalArgumentException("amount > " + currency + " maxAmount");
+    }
+    return append(amount, currency);
+  }
+
+  private MoneyColumn append(long amount, Currency currency) {
+    if (size == amounts.length) {
+      if (size == Integer.MAX_VALUE) throw new IllegalStateException("Column is full.");
+      int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(16, size * 2L));
+      long[] newAmounts = new long[capacity];
+      System.arraycopy(amounts, 0, newAmounts, 0, size);
+      amounts = newAmounts;
+      byte[] newCurrencies = new byte[capacity];
+      System.arraycopy(currencies, 0, newCurrencies, 0, size);
+      currencies = newCurrencies;
+    }
+    amounts[size] = amount;
+    currencies[size] = (byte) currency.ordinal();
+    currencyMask |= 1 << currency.ordinal();
+    size++;
+    return this;
+  }
+
+  /** Returns the number of amounts in this column. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the amount at the given index in atomic units.
+   *
+   * @throws IndexOutOfBoundsException if index is out of range
+   */
+  public long amount(int index) {
+    checkIndex(index);
+    return amounts[index];
+  }
+
+  /**
+   * Returns the currency of the amount at the given index.
+   *
+   * @throws IndexOutOfBoundsException if index is out of range
+   */
+  public Currency currency(int index) {
+    checkIndex(index);
+    return CURRENCIES[currencies[index]];
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+    }
+  }
+
+  /** Returns true if every amount in the column is in the given currency. */
+  private boolean only(Currency currency) {
+    return currencyMask == 1 << currency.ordinal();
+  }
+
+  /** Totals the amounts for each currency. */
+  public MoneyAccumulator sum() {
+    return new Sum().reduce(0, size);
+  }
+
+  /**
+   * Totals the amounts for each currency in parallel.
+   *
+   * @throws NullPointerException if executor is null
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public MoneyAccumulator sum(ExecutorService executor) throws InterruptedException {
+    return reduce(new Sum(), executor);
+  }
+
+  /** Computes the count, sum, minimum and maximum of the amounts in the given currency. */
+  public Summary summarize(Currency currency) {
+    return new Summarize(currency).reduce(0, size);
+  }
+
+  /**
+   * Computes the count, sum, minimum and maximum of the amounts in the given currency, in
+   * parallel.
+   *
+   * @throws NullPointerException if currency or executor is null
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public Summary summarize(Currency currency, ExecutorService executor)
+      throws InterruptedException {
+    return reduce(new Summarize(currency), executor);
+  }
+
+  /**
+   * Counts the amounts in the given currency that fall into each bucket. Element 0 of the
+   * result counts amounts below {@code bounds[0]}, element {@code i} counts amounts in
+   * {@code [bounds[i - 1], bounds[i])}, and the last element counts amounts at or above the
+   * last bound.
+   *
+   * @param bounds in ascending order
+   * @return bounds.length + 1 counts
+   * @throws IllegalArgumentException if bounds aren't in ascending order
+   * @throws NullPointerException if currency or bounds is null
+   */
+  public long[] histogram(Currency currency, long[] bounds) {
+    return new Histogram(currency, bounds).reduce(0, size);
+  }
+
+  /**
+   * Counts the amounts in the given currency that fall into each bucket, in parallel. See
+   * {@link #histogram(Currency, long[])}.
+   *
+   * @throws NullPointerException if an argument is null
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public long[] histogram(Currency currency, long[] bounds, ExecutorService executor)
+      throws InterruptedException {
+    return reduce(new Histogram(currency, bounds), executor);
+  }
+
+  /**
+   * Estimates quantiles of the amounts in the given currency. Uses the nearest rank: quantile
+   * q is the amount at rank {@code ceil(q * count)}, or the minimum if q is 0. Estimates are
+   * within 1% of the exact amount. Amounts under 64 atomic units, the minimum (q = 0) and the
+   * maximum (q = 1) are exact.
+   *
+   * @param quantiles each between 0 and 1, e.g. 0.5 for the median
+   * @return an estimate for each quantile
+   * @throws IllegalArgumentException if a quantile is out of range
+   * @throws IllegalStateException if the column has no amounts in the given currency
+   * @throws NullPointerException if currency or quantiles is null
+   */
+  public long[] quantiles(Currency currency, double[] quantiles) {
+    checkQuantiles(quantiles);
+    return new LogHistogramReduction(currency).reduce(0, size).quantiles(quantiles);
+  }
+
+  /**
+   * Estimates quantiles of the amounts in the given currency, in parallel. See {@link
+   * #quantiles(Currency, double[])}.
+   *
+   * @throws InterruptedException if interrupted while waiting for the executor
+   */
+  public long[] quantiles(Currency currency, double[] quantiles, ExecutorService executor)
+      throws InterruptedException {
+    checkQuantiles(quantiles);
+    return reduce(new LogHistogramReduction(currency), executor).quantiles(quantiles);
+  }
+
+  private static void checkQuantiles(double[] quantiles) {
+    for (double q : quantiles) {
+      if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("quantile: " + q);
+    }
+  }
+
+  /** Splits the column into chunks, reduces them on the executor and combines the results. */
+  private <T> T reduce(final Reduction<T> reduction, ExecutorService executor)
+      throws InterruptedException {
+    if (executor == null) throw new NullPointerException("executor");
+    if (size <= CHUNK_SIZE) return reduction.reduce(0, size);
+
+    List<Future<T>> futures = new ArrayList<Future<T>>(size / CHUNK_SIZE + 1);
+    try {
+      for (int start = 0; start < size; start += CHUNK_SIZE) {
+        final int chunkStart = start;
+        final int chunkEnd = (int) Math.min(size, (long) start + CHUNK_SIZE);
+        futures.add(executor.submit(new Callable<T>() {
+          public T call() {
+            return reduction.reduce(chunkStart, chunkEnd);
+          }
+        }));
+      }
+
+      T result = get(futures.get(0));
+      for (int i = 1; i < futures.size(); i++) {
+        result = reduction.combine(result, get(futures.get(i)));
+      }
+      return result;
+    } finally {
+      for (Future<T> future : futures) future.cancel(true);
+    }
+  }
+
+  private static <T> T get(Future<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new AssertionError(cause);
+    }
+  }
+
+  /**
+   * Reduces a range of the column to a result. Captures the arrays when it's created, so
+   * tasks on other threads see a consistent column.
+   */
+  private abstract class Reduction<T> {
+    final long[] amounts = MoneyColumn.this.amounts;
+    final byte[] currencies = MoneyColumn.this.currencies;
+
+    /** Reduces amounts[start..end). */
+    abstract T reduce(int start, int end);
+
+    /** Combines the results for two adjacent ranges. */
+    abstract T combine(T a, T b);
+  }
+
+  private class Sum extends Reduction<MoneyAccumulator> {
+    @Override MoneyAccumulator reduce(int start, int end) {
+      // One pass for every currency. Fewer than 2^31 amounts of at most 10^9 can't overflow.
+      long[] sums = new long[CURRENCIES.length];
+      long[] counts = new long[CURRENCIES.length];
+      for (int i = start; i < end; i++) {
+        int currency = currencies[i];
+        sums[currency] += amounts[i];
+        counts[currency]++;
+      }
+      MoneyAccumulator accumulator = new MoneyAccumulator();
+      for (int c = 0; c < CURRENCIES.length; c++) {
+        if (counts[c] != 0) accumulator.add(sums[c], counts[c], CURRENCIES[c]);
+      }
+      return accumulator;
+    }
+
+    @Override MoneyAccumulator combine(MoneyAccumulator a, MoneyAccumulator b) {
+      return a.add(b);
+    }
+  }
+
+  private class Summarize extends Reduction<Summary> {
+    final Currency currency;
+    final boolean only;
+
+    Summarize(Currency currency) {
+      this.currency = currency;
+      this.only = only(currency);
+    }
+
+    @Override Summary reduce(int start, int end) {
+      long sum = 0;
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      long count;
+      if (only) {
+        // No currency check.
+        for (int i = start; i < end; i++) {
+          long amount = amounts[i];
+          sum += amount;
+          min = Math.min(min, amount);
+          max = Math.max(max, amount);
+        }
+        count = end - start;
+      } else {
+        byte code = (byte) currency.ordinal();
+        count = 0;
+        for (int i = start; i < end; i++) {
+          if (currencies[i] == code) {
+            long amount = amounts[i];
+            sum += amount;
+            min = Math.min(min, amount);
+            max = Math.max(max, amount);
+            count++;
+          }
+        }
+      }
+      return count == 0 ? new Summary(0, 0, 0, 0) : new Summary(count, sum, min, max);
+    }
+
+    @Override Summary combine(Summary a, Summary b) {
+      if (a.count == 0) return b;
+      if (b.count == 0) return a;
+      return new Summary(a.count + b.count, a.sum + b.sum, Math.min(a.min, b.min),
+          Math.max(a.max, b.max));
+    }
+  }
+
+  private class Histogram extends Reduction<long[]> {
+    final Currency currency;
+    final long[] bounds;
+
+    Histogram(Currency currency, long[] bounds) {
+      for (int i = 1; i < bounds.length; i++) {
+        if (bounds[i] <= bounds[i - 1]) throw new IllegalArgumentException("bounds not ascending");
+      }
+      this.currency = currency;
+      this.bounds = bounds.clone();
+    }
+
+    @Override long[] reduce(int start, int end) {
+      long[] counts = new long[bounds.length + 1];
+      boolean only = only(currency);
+      byte code = (byte) currency.ordinal();
+      for (int i = start; i < end; i++) {
+        if (only || currencies[i] == code) counts[bucket(amounts[i])]++;
+      }
+      return counts;
+    }
+
+    /** Returns the number of bounds <= amount. */
+    private int bucket(long amount) {
+      int low = 0;
+      int high = bounds.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (bounds[mid] <= amount) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    @Override long[] combine(long[] a, long[] b) {
+      for (int i = 0; i < a.length; i++) a[i] += b[i];
+      return a;
+    }
+  }
+
+  private class LogHistogramReduction extends Reduction<LogHistogram> {
+    final Currency currency;
+
+    LogHistogramReduction(Currency currency) {
+      this.currency = currency;
+    }
+
+    @Override LogHistogram reduce(int start, int end) {
+      LogHistogram histogram = new LogHistogram();
+      boolean only = only(currency);
+      byte code = (byte) currency.ordinal();
+      for (int i = start; i < end; i++) {
+        if (only || currencies[i] == code) histogram.add(amounts[i]);
+      }
+      return histogram;
+    }
+
+    @Override LogHistogram combine(LogHistogram a, LogHistogram b) {
+      return a.add(b);
+    }
+  }
+
+  /**
+   * Histogram with 64 linear sub-buckets per power of two, so a bucket's width is at most
+   * 1/64 of its lower bound. Amounts under 64 get their own buckets.
+   */
+  private static final class LogHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS;
+
+    static {
+      long max = 0;
+      for (Currency currency : CURRENCIES) max = Math.max(max, currency.maxAmount);
+      BUCKETS = bucket(max) + 1;
+    }
+
+    final long[] counts = new long[BUCKETS];
+    long count;
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+
+    void add(long amount) {
+      counts[bucket(amount)]++;
+      count++;
+      if (amount < min) min = amount;
+      if (amount > max) max = amount;
+    }
+
+    LogHistogram add(LogHistogram other) {
+      for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+      count += other.count;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+      return this;
+    }
+
+    static int bucket(long amount) {
+      if (amount < SUB_BUCKETS) return (int) amount;
+      int exponent = 63 - Long.numberOfLeadingZeros(amount);
+      int shift = exponent - SUB_BUCKET_BITS;
+      return (shift + 1) * SUB_BUCKETS + (int) ((amount >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowerBound(int bucket) {
+      if (bucket < SUB_BUCKETS) return bucket;
+      int shift = bucket / SUB_BUCKETS - 1;
+      return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    static long upperBound(int bucket) {
+      if (bucket < SUB_BUCKETS) return bucket;
+      return lowerBound(bucket) + (1L << (bucket / SUB_BUCKETS - 1)) - 1;
+    }
+
+    long[] quantiles(double[] quantiles) {
+      if (count == 0) throw new IllegalStateException("No amounts in this currency.");
+      long[] estimates = new long[quantiles.length];
+      for (int q = 0; q < quantiles.length; q++) {
+        if (quantiles[q] == 0) {
+          estimates[q] = min;
+          continue;
+        }
+        if (quantiles[q] == 1) {
+          estimates[q] = max;
+          continue;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantiles[q] * count));
+        long seen = 0;
+        int bucket = 0;
+        while (seen + counts[bucket] < rank) seen += counts[bucket++];
+
+        // The middle of the bucket, within the range of the data.
+        long estimate = (lowerBound(bucket) + upperBound(bucket)) / 2;
+        estimates[q] = Math.max(min, Math.min(max, estimate));
+      }
+      return estimates;
+    }
+  }
+
+  /** Count, sum, minimum and maximum of the amounts in one currency. */
+  public static final class Summary {
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    Summary(long count, long sum, long min, long max) {
+      this.count = count;
+      this.sum = sum;
+      this.min = min;
+      this.max = max;
+    }
+
+    /** Returns the number of amounts. */
+    public long count() {
+      return count;
+    }
+
+    /** Returns the total in atomic units. */
+    public long sum() {
+      return sum;
+    }
+
+    /** Returns the smallest amount or 0 if there are none. */
+    public long min() {
+      return min;
+    }
+
+    /** Returns the largest amount or 0 if there are none. */
+    public long max() {
+      return max;
+    }
+
+    @Override public String toString() {
+      return "Summary{count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max + '}';
+    }
+  }
+}
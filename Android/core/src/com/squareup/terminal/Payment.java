@@ -25,6 +25,32 @@ public class Payment {
   /** Constructs a new payment. */
   public Payment() {}
 
+  /** Copies the given payment. */
+  /*package*/ Payment(Payment other) {
+    this.amount = other.amount;
+    this.defaultEmail = other.defaultEmail;
+    this.defaultPhone = other.defaultPhone;
+    this.description = other.description;
+    this.metadata = other.metadata;
+    this.offerReceipt = other.offerReceipt;
+    this.referenceId = other.referenceId;
+    this.accountId = other.accountId;
+  }
+
+  /**
+   * Returns an immutable snapshot of this payment. The snapshot's setters throw {@link
+   * UnsupportedOperationException}. Snapshots can be shared across threads and requested
+   * repeatedly; each one encodes its request once. Equal snapshots are equal and have the
+   * same hash code.
+   *
+   * <p>Recently frozen snapshots are cached, so freezing an equal payment again, such as a
+   * standard donation amount, returns the cached snapshot and skips encoding altogether.
+   * Returns this payment if it's already frozen.
+   */
+  public Payment freeze() {
+    return FrozenPayment.of(this);
+  }
+
   private Money amount;
 
   /**
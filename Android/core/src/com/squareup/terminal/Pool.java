@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+/**
+ * Small pool of reusable objects, shared by every thread. Unlike a thread local, it helps on
+ * virtual threads and other short-lived threads, and it never holds more than a few objects.
+ * The most recently returned object is reused first.
+ *
+ * <p>This class is thread safe.
+ */
+/*package*/ final class Pool<T> {
+
+  /** Enough for every core to hold an object while it's in use. */
+  static final int DEFAULT_CAPACITY =
+      Math.min(2 * Runtime.getRuntime().availableProcessors(), 32);
+
+  private final Object[] objects;
+  private int size;
+
+  Pool(int capacity) {
+    objects = new Object[capacity];
+  }
+
+  /** Removes and returns the most recently returned object, or null if the pool is empty. */
+  @SuppressWarnings("unchecked")
+  synchronized T take() {
+    if (size == 0) return null;
+    T object = (T) objects[--size];
+    objects[size] = null;
+    return object;
+  }
+
+  /**
+   * Returns an object to the pool. If the pool is full, returns false and the caller should
+   * discard the object.
+   */
+  synchronized boolean offer(T object) {
+    if (size == objects.length) return false;
+    objects[size++] = object;
+    return true;
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * Decodes an encoded query string into {@link TerminalParameters} in a single pass. Keys are
+ * matched against {@link TerminalParameters#NAMES} in place, and values are percent-decoded into
+ * a buffer that's reused from one value to the next, so the only Strings created are the
+ * values themselves. Decoding matches {@code android.net.Uri.decode()}: escaped octets are
+ * decoded as UTF-8, invalid octets and escapes become U+FFFD, and '+' is left alone.
+ *
+ * <p>Instances aren't thread safe, but they can be reused.
+ */
+/*package*/ final class QueryDecoder {
+
+  private static final char REPLACEMENT = '\ufffd';
+
+  /** The value being decoded. */
+  private final StringBuilder value = new StringBuilder();
+
+  /** Escaped octets that haven't been decoded into {@link #value} yet. */
+  private byte[] octets = new byte[16];
+  private int octetCount;
+
+  /** Decodes the given query, without the leading '?', into parameters. */
+  void decode(CharSequence query, TerminalParameters parameters) throws ParseException {
+    decode(query, 0, query.length(), false, parameters);
+  }
+
+  /**
+   * Decodes the remaining bytes of the given query into parameters. Doesn't change the
+   * buffer's position.
+   */
+  void decode(ByteBuffer query, TerminalParameters parameters) throws ParseException {
+    decode(new ByteSequence(query), 0, query.remaining(), true, parameters);
+  }
+
+  /**
+   * Decodes {@code query[start..end)}. If {@code bytes} is true, chars >= 0x80 are raw UTF-8
+   * octets rather than characters.
+   */
+  private void decode(CharSequence query, int start, int end, boolean bytes,
+      TerminalParameters parameters) throws ParseException {
+    int keyStart = start;
+    while (keyStart < end) {
+      // Find the key.
+      int keyEnd = keyStart;
+      while (keyEnd < end && query.charAt(keyEnd) != '=') keyEnd++;
+      if (keyEnd == end) throw new ParseException("Unexpected end of key", keyEnd - start);
+      int index = TerminalParameters.indexOf(query, keyStart, keyEnd);
+      if (index == -1) {
+        throw new ParseException("Unexpected parameter: " + query.subSequence(keyStart, keyEnd),
+            keyStart - start);
+      }
+
+      int valueEnd = decodeValue(query, keyEnd + 1, end, bytes);
+      parameters.set(index, value.toString());
+
+      keyStart = valueEnd + 1;
+    }
+  }
+
+  /** Decodes the value in {@code query[start..end)}, up to the first '&' if there is one. */
+  String decodeValue(CharSequence query, int start, int end) {
+    decodeValue(query, start, end, false);
+    return value.toString();
+  }
+
+  /**
+   * Decodes the value starting at {@code start} into {@link #value}, up to the next '&' or
+   * {@code end}. Returns the index of the '&' or {@code end}.
+   */
+  private int decodeValue(CharSequence query, int start, int end, boolean bytes) {
+    value.setLength(0);
+    int i = start;
+    for (char c; i < end && (c = query.charAt(i)) != '&'; i++) {
+      if (c == '%') {
+        int high = i + 2 < end ? hex(query.charAt(i + 1)) : -1;
+        int low = high == -1 ? -1 : hex(query.charAt(i + 2));
+        if (low == -1) {
+          flushOctets();
+          value.append(REPLACEMENT);
+        } else {
+          addOctet((high << 4) | low);
+          i += 2;
+        }
+      } else if (bytes && c >= 0x80) {
+        addOctet(c);
+      } else {
+        flushOctets();
+        value.append(c);
+      }
+    }
+    flushOctets();
+    return i;
+  }
+
+  private static int hex(char c) {
+    if (c >= '0' && c <= '9') return c - '0';
+    if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+    if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+    return -1;
+  }
+
+  private void addOctet(int octet) {
+    if (octetCount == octets.length) {
+      byte[] grown = new byte[octets.length * 2];
+      System.arraycopy(octets, 0, grown, 0, octetCount);
+      octets = grown;
+    }
+    octets[octetCount++] = (byte) octet;
+  }
+
+  /** Decodes pending octets as UTF-8 and appends them to {@link #value}. */
+  private void flushOctets() {
+    int i = 0;
+    while (i < octetCount) {
+      int b = octets[i] & 0xff;
+
+      // Work out the sequence length and the minimum code point it may encode.
+      int length;
+      int codePoint;
+      int min;
+      if (b < 0x80) {
+        value.append((char) b);
+        i++;
+        continue;
+      } else if (b >= 0xc2 && b <= 0xdf) {
+        length = 2;
+        codePoint = b & 0x1f;
+        min = 0x80;
+      } else if (b >= 0xe0 && b <= 0xef) {
+        length = 3;
+        codePoint = b & 0x0f;
+        min = 0x800;
+      } else if (b >= 0xf0 && b <= 0xf4) {
+        length = 4;
+        codePoint = b & 0x07;
+        min = 0x10000;
+      } else {
+        value.append(REPLACEMENT);
+        i++;
+        continue;
+      }
+
+      // Consume continuation octets.
+      int j = i + 1;
+      for (; j < i + length && j < octetCount && (octets[j] & 0xc0) == 0x80; j++) {
+        codePoint = (codePoint << 6) | (octets[j] & 0x3f);
+      }
+      if (j < i + length || codePoint < min || codePoint > Character.MAX_CODE_POINT
+          || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+        // Truncated, overlong or otherwise invalid. Skip the lead octet and whatever
+        // continuation octets followed it.
+        value.append(REPLACEMENT);
+        i = j;
+        continue;
+      }
+
+      if (codePoint < 0x10000) {
+        value.append((char) codePoint);
+      } else {
+        codePoint -= 0x10000;
+        value.append((char) (Character.MIN_HIGH_SURROGATE + (codePoint >>> 10)));
+        value.append((char) (Character.MIN_LOW_SURROGATE + (codePoint & 0x3ff)));
+      }
+      i = j;
+    }
+    octetCount = 0;
+  }
+
+  /** Views a byte buffer's remaining bytes as Latin-1 chars without copying them. */
+  private static final class ByteSequence implements CharSequence {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    ByteSequence(ByteBuffer buffer) {
+      this(buffer, buffer.position(), buffer.remaining());
+    }
+
+    private ByteSequence(ByteBuffer buffer, int offset, int length) {
+      this.buffer = buffer;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public int length() {
+      return length;
+    }
+
+    public char charAt(int index) {
+      return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+      return new ByteSequence(buffer, offset + start, end - start);
+    }
+
+    @Override public String toString() {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) chars[i] = charAt(i);
+      return new String(chars);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+/**
+ * Percent-encodes query parameters the same way as {@code android.net.Uri.encode()}: letters,
+ * digits and {@code _-!.~'()*} pass through, and everything else is encoded as UTF-8 octets.
+ * Callers compute the exact output length up front with {@link #encodedLength} so they can size
+ * their buffer once.
+ */
+/*package*/ final class QueryEncoder {
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  /** Indexed by ASCII character. True if the character doesn't need to be encoded. */
+  private static final boolean[] SAFE = new boolean[128];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) SAFE[c] = true;
+    for (char c = 'A'; c <= 'Z'; c++) SAFE[c] = true;
+    for (char c = '0'; c <= '9'; c++) SAFE[c] = true;
+    for (char c : "_-!.~'()*".toCharArray()) SAFE[c] = true;
+  }
+
+  private QueryEncoder() {}
+
+  /** Returns the length of the given string after encoding. */
+  static int encodedLength(CharSequence s) {
+    int length = 0;
+    for (int i = 0, n = s.length(); i < n; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        length += SAFE[c] ? 1 : 3;
+      } else if (c < 0x800) {
+        length += 6;
+      } else if (Character.isHighSurrogate(c) && i + 1 < n
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        length += 12;
+        i++;
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        length += 3; // Unpaired surrogates are encoded as '?', like String.getBytes() does.
+      } else {
+        length += 9;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Appends the encoded form of the given string. Doesn't allocate if the builder has room for
+   * {@link #encodedLength} more characters.
+   *
+   * @return the builder
+   */
+  static StringBuilder encode(CharSequence s, StringBuilder out) {
+    for (int i = 0, n = s.length(); i < n; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        if (SAFE[c]) {
+          out.append(c);
+        } else {
+          appendOctet(c, out);
+        }
+      } else if (c < 0x800) {
+        appendOctet(0xc0 | (c >> 6), out);
+        appendOctet(0x80 | (c & 0x3f), out);
+      } else if (Character.isHighSurrogate(c) && i + 1 < n
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(++i));
+        appendOctet(0xf0 | (codePoint >> 18), out);
+        appendOctet(0x80 | ((codePoint >> 12) & 0x3f), out);
+        appendOctet(0x80 | ((codePoint >> 6) & 0x3f), out);
+        appendOctet(0x80 | (codePoint & 0x3f), out);
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        appendOctet('?', out);
+      } else {
+        appendOctet(0xe0 | (c >> 12), out);
+        appendOctet(0x80 | ((c >> 6) & 0x3f), out);
+        appendOctet(0x80 | (c & 0x3f), out);
+      }
+    }
+    return out;
+  }
+
+  private static void appendOctet(int octet, StringBuilder out) {
+    out.append('%').append(HEX[octet >> 4]).append(HEX[octet & 0xf]);
+  }
+}
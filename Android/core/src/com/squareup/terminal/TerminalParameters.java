@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * Terminal API URL parameters.
+ *
+ * @author Bob Lee (bob@squareup.com)
+ */
+/*package*/ class TerminalParameters {
+
+  // These field names match the parameter names in the URL.
+  String amount;
+  String currency;
+  String callback;
+  String app_id;
+  String default_email;
+  String default_phone;
+  String description;
+  String metadata;
+  String reference_id;
+  String offer_receipt;
+  String to;
+
+  /**
+   * Parameter names in declaration order. The index of a name is the parameter's index in
+   * {@link #get(int)} and {@link #set(int, String)}.
+   */
+  static final String[] NAMES = {
+      "amount", "currency", "callback", "app_id", "default_email", "default_phone",
+      "description", "metadata", "reference_id", "offer_receipt", "to"
+  };
+
+  /** Decodes queries for {@code copyFrom()}. Created on first use and kept while pooled. */
+  private QueryDecoder decoder;
+
+  /** Returns the value of the parameter at the given index in {@link #NAMES}. */
+  String get(int index) {
+    switch (index) {
+      case 0: return amount;
+      case 1: return currency;
+      case 2: return callback;
+      case 3: return app_id;
+      case 4: return default_email;
+      case 5: return default_phone;
+      case 6: return description;
+      case 7: return metadata;
+      case 8: return reference_id;
+      case 9: return offer_receipt;
+      case 10: return to;
+      default: throw new IndexOutOfBoundsException("index: " + index);
+    }
+  }
+
+  /** Sets the value of the parameter at the given index in {@link #NAMES}. */
+  void set(int index, String value) {
+    switch (index) {
+      case 0: amount = value; break;
+      case 1: currency = value; break;
+      case 2: callback = value; break;
+      case 3: app_id = value; break;
+      case 4: default_email = value; break;
+      case 5: default_phone = value; break;
+      case 6: description = value; break;
+      case 7: metadata = value; break;
+      case 8: reference_id = value; break;
+      case 9: offer_receipt = value; break;
+      case 10: to = value; break;
+      default: throw new IndexOutOfBoundsException("index: " + index);
+    }
+  }
+
+  /** Returns the index of the given parameter name in {@link #NAMES} or -1 if it's unknown. */
+  static int indexOf(String name) {
+    return indexOf(name, 0, name.length());
+  }
+
+  /**
+   * Returns the index in {@link #NAMES} of the parameter name in {@code chars[start..end)} or -1
+   * if it's unknown. Doesn't allocate.
+   */
+  static int indexOf(CharSequence chars, int start, int end) {
+    // Narrow the candidates down to one using the length and a distinguishing character.
+    int index;
+    switch (end - start) {
+      case 2: index = 10; break; // to
+      case 6: index = chars.charAt(start + 1) == 'm' ? 0 : 3; break; // amount, app_id
+      case 8:
+        switch (chars.charAt(start + 1)) {
+          case 'u': index = 1; break; // currency
+          case 'a': index = 2; break; // callback
+          case 'e': index = 7; break; // metadata
+          default: return -1;
+        }
+        break;
+      case 11: index = 6; break; // description
+      case 12: index = 8; break; // reference_id
+      case 13:
+        switch (chars.charAt(start + 8)) {
+          case 'e': index = 4; break; // default_email
+          case 'p': index = 5; break; // default_phone
+          case 'c': index = 9; break; // offer_receipt
+          default: return -1;
+        }
+        break;
+      default: return -1;
+    }
+
+    String name = NAMES[index];
+    for (int i = 0; i < name.length(); i++) {
+      if (chars.charAt(start + i) != name.charAt(i)) return -1;
+    }
+    return index;
+  }
+
+  /** Instances that {@link #recycle()} returned. */
+  private static final Pool<TerminalParameters> pool =
+      new Pool<TerminalParameters>(Pool.DEFAULT_CAPACITY);
+
+  /**
+   * Returns an empty instance from the shared pool, or a new one if the pool is empty. Pass
+   * it to {@link #recycle()} when you're done with it.
+   */
+  static TerminalParameters obtain() {
+    TerminalParameters parameters = pool.take();
+    return parameters == null ? new TerminalParameters() : parameters;
+  }
+
+  /**
+   * Resets this instance and returns it to the shared pool, unless the pool is full. Don't use
+   * it afterwards.
+   */
+  void recycle() {
+    pool.offer(reset());
+  }
+
+  /** Clears every parameter. */
+  TerminalParameters reset() {
+    for (int i = 0; i < NAMES.length; i++) set(i, null);
+    return this;
+  }
+
+  /** Copies parameters from the given payment. */
+  TerminalParameters copyFrom(Payment p) {
+    amount = p.amount().fixedPoint();
+    return copyAllButAmountFrom(p);
+  }
+
+  /**
+   * Copies every parameter but the amount from the given payment. Doesn't allocate, so callers
+   * that write the amount themselves with {@link Money#appendFixedPoint} can encode a payment
+   * without garbage.
+   */
+  TerminalParameters copyAllButAmountFrom(Payment p) {
+    currency = p.amount().currency().name();
+    default_email = p.defaultEmail();
+    default_phone = p.defaultPhone();
+    description = p.description();
+    metadata = p.metadata();
+    reference_id = p.referenceId();
+    offer_receipt = String.valueOf(p.offerReceipt());
+    to = p.recipient();
+    
+    return this;
+  }
+
+  void copyTo(Payment payment) throws ParseException {
+    payment.amount(Money.parse(this.amount, Currency.valueOf(currency)));
+    if (default_email != null) payment.defaultEmail(default_email);
+    if (default_phone != null) payment.defaultPhone(default_phone);
+    if (description != null) payment.description(description);
+    if (metadata != null) payment.metadata(MetadataCodec.decode(metadata));
+    if (reference_id != null) payment.referenceId(reference_id);
+    if (offer_receipt != null) payment.offerReceipt(Boolean.parseBoolean(offer_receipt));
+    if (to != null) payment.recipient(to);
+  }
+
+  /** Returns the exact length of the query string that {@link #appendTo} writes. */
+  int queryLength() {
+    int length = 0;
+    for (int i = 0; i < NAMES.length; i++) {
+      String value = get(i);
+      if (value != null) {
+        if (length > 0) length++; // '&'
+        length += NAMES[i].length() + 1 + QueryEncoder.encodedLength(value);
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Appends the parameters as an encoded query string, without the leading '?'. Writes
+   * {@link #queryLength} characters.
+   *
+   * @return the builder
+   */
+  StringBuilder appendTo(StringBuilder query) {
+    boolean first = true;
+    for (int i = 0; i < NAMES.length; i++) {
+      String value = get(i);
+      if (value != null) {
+        if (!first) query.append('&');
+        first = false;
+        QueryEncoder.encode(value, query.append(NAMES[i]).append('='));
+      }
+    }
+    return query;
+  }
+
+  /** Copies parameters from an encoded query string, without the leading '?'. */
+  TerminalParameters copyFrom(CharSequence query) throws ParseException {
+    decoder().decode(query, this);
+    return this;
+  }
+
+  /**
+   * Copies parameters from the remaining bytes of a UTF-8 encoded query string. Doesn't change
+   * the buffer's position.
+   */
+  TerminalParameters copyFrom(ByteBuffer query) throws ParseException {
+    decoder().decode(query, this);
+    return this;
+  }
+
+  private QueryDecoder decoder() {
+    if (decoder == null) decoder = new QueryDecoder();
+    return decoder;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+/**
+ * Encodes the URLs that request payments through Square. Doesn't depend on Android, so
+ * servers can build URLs for QR codes and for the web flow.
+ */
+public final class TerminalUrl {
+
+  private TerminalUrl() {}
+
+  private static final String BASE_URL = "square://terminal/1.0/pay";
+
+  /** Start of the URL up to the amount, which is always the first parameter. */
+  private static final String PREFIX = BASE_URL + "?amount=";
+
+  /** Larger builders aren't kept, so a long description doesn't pin memory. */
+  private static final int MAX_POOLED_CAPACITY = 4096;
+
+  /** Reused builders. */
+  private static final Pool<StringBuilder> builders =
+      new Pool<StringBuilder>(Pool.DEFAULT_CAPACITY);
+
+  /**
+   * Returns the URL that requests the given payment for an application. Equivalent to {@code
+   * of(payment, applicationId, false)}.
+   */
+  public static String of(Payment payment, String applicationId) {
+    return of(payment, applicationId, false);
+  }
+
+  /**
+   * Returns the URL that requests the given payment for an application. Memoizes the URL
+   * for {@linkplain Payment#freeze() frozen} payments.
+   *
+   * <p>If {@code compressMetadata} is true, {@linkplain Payment#metadata(String) metadata} that's
+   * shorter compressed is deflated and base64url-encoded behind a {@code ~z1~} prefix. JSON and
+   * CSV metadata usually ends up a fraction of its percent-encoded size, which keeps intents and
+   * callback URLs small. Only compress metadata if whatever reads it back, such as your History
+   * API client, decompresses it. Payments decoded by this library are decompressed
+   * automatically.
+   *
+   * @param applicationId application ID assigned by Square Inc.
+   * @throws IllegalArgumentException if the payment has no amount
+   * @throws NullPointerException if payment or applicationId is null
+   */
+  public static String of(Payment payment, String applicationId, boolean compressMetadata) {
+    checkArguments(payment, applicationId);
+    return payment instanceof FrozenPayment
+        ? ((FrozenPayment) payment).url(applicationId, compressMetadata)
+        : encode(payment, applicationId, null, compressMetadata);
+  }
+
+  /**
+   * Returns the URL that requests the given payment from the web. Equivalent to {@code
+   * of(payment, applicationId, callbackUrl, false)}.
+   */
+  public static String of(Payment payment, String applicationId, String callbackUrl) {
+    return of(payment, applicationId, callbackUrl, false);
+  }
+
+  /**
+   * Returns the URL that requests the given payment from the web. Square opens
+   * {@code callbackUrl} with the result when it finishes. See {@link Callback#parse}.
+   *
+   * @param applicationId application ID assigned by Square Inc.
+   * @param compressMetadata see {@link #of(Payment, String, boolean)}
+   * @throws IllegalArgumentException if the payment has no amount
+   * @throws NullPointerException if any argument is null
+   */
+  public static String of(Payment payment, String applicationId, String callbackUrl,
+      boolean compressMetadata) {
+    checkArguments(payment, applicationId);
+    if (callbackUrl == null) throw new NullPointerException("callbackUrl");
+    return encode(payment, applicationId, callbackUrl, compressMetadata);
+  }
+
+  private static void checkArguments(Payment payment, String applicationId) {
+    if (payment == null) throw new NullPointerException("payment");
+    if (applicationId == null) throw new NullPointerException("applicationId");
+    if (payment.amount() == null) throw new IllegalArgumentException("amount is required");
+  }
+
+  /**
+   * Encodes the URL. The payment must have an amount. The callback URL may be null. Borrows
+   * the parameters and builder from shared pools, so once they're warmed up, the only
+   * allocation is usually the URL itself. When more threads encode at once than the pools
+   * hold, the extra threads allocate their own.
+   */
+  /*package*/ static String encode(Payment payment, String applicationId, String callbackUrl,
+      boolean compressMetadata) {
+    TerminalParameters parameters = TerminalParameters.obtain().copyAllButAmountFrom(payment);
+    parameters.app_id = applicationId;
+    parameters.callback = callbackUrl;
+    if (compressMetadata && parameters.metadata != null) {
+      parameters.metadata = MetadataCodec.encode(parameters.metadata);
+    }
+
+    // The currency always follows the amount, so the query never ends with '&'.
+    Money amount = payment.amount();
+    int length = PREFIX.length() + amount.fixedPointLength() + 1 + parameters.queryLength();
+    StringBuilder url = length > MAX_POOLED_CAPACITY ? null : builders.take();
+    if (url == null) url = new StringBuilder(Math.max(length, 256));
+    amount.appendFixedPoint(url.append(PREFIX)).append('&');
+    String result = parameters.appendTo(url).toString();
+    parameters.recycle();
+    if (url.capacity() <= MAX_POOLED_CAPACITY) {
+      url.setLength(0);
+      builders.offer(url);
+    }
+    return result;
+  }
+}
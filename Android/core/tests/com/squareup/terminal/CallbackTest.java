@@ -0,0 +1,71 @@
+package com.squareup.terminal;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link Callback}.
+ */
+public class CallbackTest {
+  @Test
+  public void testSuccessful() throws ParseException {
+    Callback c = Callback.parse("http://callback.url.com?square_status=successful"
+        + "&square_reference_id=reference%20id&square_payment_id=paymentId");
+    assertSame(Callback.STATUS_SUCCESSFUL, c.status());
+    assertEquals("paymentId", c.paymentId());
+    assertEquals("reference id", c.referenceId());
+    assertTrue(c.errors().isEmpty());
+  }
+
+  @Test
+  public void testErrors() throws ParseException {
+    Callback c = Callback.parse("http://callback.url.com?square_status=error"
+        + "&square_errors=able%2C%20baker%2C%20charlie");
+    assertSame(Callback.STATUS_ERROR, c.status());
+    assertNull(c.paymentId());
+    assertNull(c.referenceId());
+    assertEquals(Arrays.asList("able", "baker", "charlie"), c.errors());
+  }
+
+  @Test
+  public void testIgnoresOtherParametersAndFragment() throws ParseException {
+    Callback c = Callback.parse("http://callback.url.com/done?order=7&square_status=cancelled"
+        + "&square_reference_id=r#square_payment_id=p");
+    assertSame(Callback.STATUS_CANCELLED, c.status());
+    assertEquals("r", c.referenceId());
+    assertNull(c.paymentId());
+  }
+
+  @Test
+  public void testQueryAndUnencodedSeparators() throws ParseException {
+    Callback c = Callback.parse("square_status=error&square_errors=a, b%2C%20c%2Cd, ");
+    assertSame(Callback.STATUS_ERROR, c.status());
+    assertEquals(Arrays.asList("a", "b", "c,d", ""), c.errors());
+  }
+
+  @Test
+  public void testMissingStatus() {
+    try {
+      Callback.parse("http://callback.url.com?square_payment_id=p");
+      fail();
+    } catch (ParseException expected) {
+    }
+  }
+
+  @Test
+  public void testUnknownStatus() {
+    try {
+      Callback.parse("http://callback.url.com?square_status=maybe");
+      fail();
+    } catch (ParseException expected) {
+    }
+  }
+}
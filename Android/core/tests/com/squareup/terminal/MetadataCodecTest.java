@@ -0,0 +1,127 @@
+package com.squareup.terminal;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link MetadataCodec}.
+ */
+public class MetadataCodecTest {
+  static final String JSON = "{\"order_id\":\"A-1042\",\"customer\":{\"name\":\"Ada Lovelace\","
+      + "\"email\":\"ada@example.com\"},\"items\":[{\"sku\":\"LATTE-12\",\"name\":\"Latte\","
+      + "\"quantity\":2,\"price\":450},{\"sku\":\"MUFFIN-BB\",\"name\":\"Blueberry muffin\","
+      + "\"quantity\":1,\"price\":325},{\"sku\":\"LATTE-12\",\"name\":\"Latte\",\"quantity\":1,"
+      + "\"price\":450}],\"subtotal\":1675,\"tax\":147,\"tip\":300,\"total\":2122,"
+      + "\"currency\":\"USD\",\"note\":\"Extra hot, no foam\"}";
+
+  @Test
+  public void testRoundTrip() {
+    String compressed = MetadataCodec.encode(JSON);
+    assertTrue(compressed, compressed.startsWith(MetadataCodec.MARKER));
+    assertTrue(compressed.length() * 2 < QueryEncoder.encodedLength(JSON));
+    assertEquals(compressed.length(), QueryEncoder.encodedLength(compressed));
+    assertEquals(JSON, MetadataCodec.decode(compressed));
+  }
+
+  @Test
+  public void testRoundTripsEveryLength() {
+    // Covers each base64url remainder and incompressible input.
+    StringBuilder s = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      s.append((char) ('!' + (i * 7919) % 94));
+      String compressed = MetadataCodec.compress(s.toString());
+      assertEquals(s.toString(), MetadataCodec.decode(compressed));
+    }
+  }
+
+  @Test
+  public void testMoreThreadsThanPooledCodecs() throws InterruptedException {
+    // Codecs that don't fit in the pools are ended, which mustn't affect the pooled ones.
+    final String[] failure = new String[1];
+    Thread[] threads = new Thread[Pool.DEFAULT_CAPACITY * 3];
+    for (int t = 0; t < threads.length; t++) {
+      final String metadata = JSON + t;
+      threads[t] = new Thread() {
+        @Override public void run() {
+          for (int i = 0; i < 50; i++) {
+            String decoded = MetadataCodec.decode(MetadataCodec.compress(metadata));
+            if (!metadata.equals(decoded)) failure[0] = decoded;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) thread.join();
+    assertNull(failure[0]);
+    assertEquals(JSON, MetadataCodec.decode(MetadataCodec.compress(JSON)));
+  }
+
+  @Test
+  public void testUnicode() {
+    String metadata = "caf\u00e9 \u2603 \ud83d\ude00 " + JSON;
+    assertEquals(metadata, MetadataCodec.decode(MetadataCodec.encode(metadata)));
+  }
+
+  @Test
+  public void testShortMetadataStaysRaw() {
+    assertSame("abc", MetadataCodec.encode("abc"));
+    assertSame("abc", MetadataCodec.decode("abc"));
+  }
+
+  @Test
+  public void testMarkerPrefixedMetadataRoundTrips() {
+    String metadata = MetadataCodec.MARKER + "x";
+    String encoded = MetadataCodec.encode(metadata);
+    assertTrue(!encoded.equals(metadata));
+    assertEquals(metadata, MetadataCodec.decode(encoded));
+  }
+
+  @Test
+  public void testInvalidValuesStayRaw() {
+    String compressed = MetadataCodec.compress(JSON);
+    String[] invalid = {
+        MetadataCodec.MARKER,
+        MetadataCodec.MARKER + "not base64!",
+        MetadataCodec.MARKER + "A",
+        compressed.substring(0, compressed.length() - 5),
+        compressed + "AAAA",
+        compressed.substring(0, 10) + (compressed.charAt(10) == 'A' ? 'B' : 'A')
+            + compressed.substring(11),
+    };
+    for (String value : invalid) assertSame(value, MetadataCodec.decode(value));
+  }
+
+  @Test
+  public void testRejectsOversizedOutput() {
+    StringBuilder s = new StringBuilder();
+    while (s.length() <= MetadataCodec.MAX_DECOMPRESSED_SIZE) s.append('a');
+    String compressed = MetadataCodec.compress(s.toString());
+    assertSame(compressed, MetadataCodec.decode(compressed));
+  }
+
+  @Test
+  public void testParameters() throws ParseException {
+    Payment payment = new Payment().amount(2122, Currency.USD).metadata(JSON);
+    String raw = new TerminalParameters().copyFrom(payment).metadata;
+    assertEquals(JSON, raw);
+
+    String url = TerminalUrl.of(payment, "app", true);
+    String query = url.substring(url.indexOf('?') + 1);
+    assertTrue(query.contains("metadata=" + MetadataCodec.MARKER));
+    Payment decoded = new Payment();
+    new TerminalParameters().copyFrom(query).copyTo(decoded);
+    assertEquals(JSON, decoded.metadata());
+
+    assertTrue(url.length() * 2 < TerminalUrl.encode(new Payment().amount(2122, Currency.USD),
+        "app", null, false).length() + QueryEncoder.encodedLength(JSON));
+    assertEquals(TerminalUrl.of(payment, "app"), TerminalUrl.of(payment, "app", false));
+    assertTrue(TerminalUrl.of(payment, "app", "https://example.com/done", true)
+        .contains("metadata=" + MetadataCodec.MARKER));
+  }
+}
@@ -0,0 +1,68 @@
+package com.squareup.terminal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MoneyAccumulatorTest {
+  @Test
+  public void totalsPerCurrency() {
+    MoneyAccumulator accumulator = new MoneyAccumulator()
+        .add(new Money(2000, Currency.USD))
+        .add(500, Currency.USD)
+        .add(1000, Currency.JPY);
+    assertEquals(2500, accumulator.total(Currency.USD));
+    assertEquals(2, accumulator.count(Currency.USD));
+    assertEquals(1000, accumulator.total(Currency.JPY));
+    assertEquals(0, accumulator.total(Currency.EUR));
+    assertEquals("25.00", accumulator.toMoney(Currency.USD).fixedPoint());
+
+    accumulator.reset();
+    assertEquals(0, accumulator.total(Currency.USD));
+    assertEquals(0, accumulator.count(Currency.USD));
+  }
+
+  @Test
+  public void exceedsMaxAmount() {
+    MoneyAccumulator accumulator = new MoneyAccumulator();
+    long max = Currency.USD.maxAmount();
+    accumulator.add(max, Currency.USD).add(max, Currency.USD);
+    assertEquals(2 * max, accumulator.total(Currency.USD));
+    try {
+      accumulator.toMoney(Currency.USD);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void overflow() {
+    MoneyAccumulator accumulator = new MoneyAccumulator().add(Long.MAX_VALUE, Currency.USD);
+    try {
+      accumulator.add(1, Currency.USD);
+      fail();
+    } catch (ArithmeticException expected) {
+    }
+    assertEquals(Long.MAX_VALUE, accumulator.total(Currency.USD));
+    assertEquals(1, accumulator.count(Currency.USD));
+  }
+
+  @Test
+  public void combine() {
+    MoneyAccumulator a = new MoneyAccumulator().add(100, Currency.USD);
+    MoneyAccumulator b = new MoneyAccumulator().add(200, Currency.USD).add(5, Currency.GBP);
+    a.add(b);
+    assertEquals(300, a.total(Currency.USD));
+    assertEquals(2, a.count(Currency.USD));
+    assertEquals(5, a.total(Currency.GBP));
+
+    MoneyAccumulator full = new MoneyAccumulator().add(Long.MAX_VALUE, Currency.GBP);
+    try {
+      a.add(full);
+      fail();
+    } catch (ArithmeticException expected) {
+    }
+    assertEquals(300, a.total(Currency.USD));
+  }
+}
@@ -0,0 +1,182 @@
+package com.squareup.terminal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MoneyColumnTest {
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  /** Random amounts, mostly USD, with a long tail. */
+  private static List<Money> randomMoney(int count, Currency... currencies) {
+    Random random = new Random(42);
+    List<Money> money = new ArrayList<Money>(count);
+    for (int i = 0; i < count; i++) {
+      Currency currency = currencies[random.nextInt(currencies.length)];
+      long amount = random.nextInt(10) == 0
+          ? (long) (random.nextDouble() * currency.maxAmount())
+          : random.nextInt(100000);
+      money.add(new Money(amount, currency));
+    }
+    return money;
+  }
+
+  private static MoneyColumn column(List<Money> money) {
+    MoneyColumn column = new MoneyColumn();
+    for (Money m : money) column.add(m);
+    return column;
+  }
+
+  @Test
+  public void sumMatchesAccumulator() throws InterruptedException {
+    List<Money> money = randomMoney(300000, Currency.USD, Currency.EUR, Currency.JPY);
+    MoneyAccumulator expected = new MoneyAccumulator();
+    for (Money m : money) expected.add(m);
+
+    MoneyColumn column = column(money);
+    assertEquals(money.size(), column.size());
+    for (MoneyAccumulator actual : Arrays.asList(column.sum(), column.sum(executor))) {
+      for (Currency currency : Currency.values()) {
+        assertEquals(expected.total(currency), actual.total(currency));
+        assertEquals(expected.count(currency), actual.count(currency));
+      }
+    }
+  }
+
+  @Test
+  public void summarizeMatchesScalar() throws InterruptedException {
+    for (Currency[] currencies : new Currency[][] {
+        { Currency.USD }, { Currency.USD, Currency.GBP } }) {
+      List<Money> money = randomMoney(200000, currencies);
+      MoneyColumn column = column(money);
+
+      long count = 0;
+      long sum = 0;
+      long min = Long.MAX_VALUE;
+      long max = 0;
+      for (Money m : money) {
+        if (m.currency() != Currency.USD) continue;
+        count++;
+        sum += m.amount();
+        min = Math.min(min, m.amount());
+        max = Math.max(max, m.amount());
+      }
+
+      for (MoneyColumn.Summary summary : Arrays.asList(column.summarize(Currency.USD),
+          column.summarize(Currency.USD, executor))) {
+        assertEquals(count, summary.count());
+        assertEquals(sum, summary.sum());
+        assertEquals(min, summary.min());
+        assertEquals(max, summary.max());
+      }
+    }
+  }
+
+  @Test
+  public void summarizeMissingCurrency() {
+    MoneyColumn.Summary summary = new MoneyColumn().add(100, Currency.USD)
+        .summarize(Currency.CAD);
+    assertEquals(0, summary.count());
+    assertEquals(0, summary.min());
+  }
+
+  @Test
+  public void histogramMatchesScalar() throws InterruptedException {
+    List<Money> money = randomMoney(200000, Currency.USD, Currency.AUD);
+    long[] bounds = { 100, 1000, 10000, 100000 };
+    long[] expected = new long[bounds.length + 1];
+    for (Money m : money) {
+      if (m.currency() != Currency.AUD) continue;
+      int bucket = 0;
+      while (bucket < bounds.length && m.amount() >= bounds[bucket]) bucket++;
+      expected[bucket]++;
+    }
+
+    MoneyColumn column = column(money);
+    assertArrayEquals(expected, column.histogram(Currency.AUD, bounds));
+    assertArrayEquals(expected, column.histogram(Currency.AUD, bounds, executor));
+  }
+
+  @Test
+  public void quantilesWithinOnePercent() throws InterruptedException {
+    List<Money> money = randomMoney(200000, Currency.USD, Currency.JPY);
+    List<Long> usd = new ArrayList<Long>();
+    for (Money m : money) if (m.currency() == Currency.USD) usd.add(m.amount());
+    Long[] sorted = usd.toArray(new Long[usd.size()]);
+    Arrays.sort(sorted);
+
+    double[] quantiles = { 0, 0.01, 0.25, 0.5, 0.9, 0.99, 0.999, 1 };
+    MoneyColumn column = column(money);
+    long[] estimates = column.quantiles(Currency.USD, quantiles);
+    assertArrayEquals(estimates, column.quantiles(Currency.USD, quantiles, executor));
+    for (int i = 0; i < quantiles.length; i++) {
+      long rank = Math.max(1, (long) Math.ceil(quantiles[i] * sorted.length));
+      long exact = sorted[(int) rank - 1];
+      assertTrue(quantiles[i] + ": " + estimates[i] + " vs " + exact,
+          Math.abs(estimates[i] - exact) <= exact / 100);
+    }
+    assertEquals((long) sorted[0], estimates[0]);
+    assertEquals((long) sorted[sorted.length - 1], estimates[quantiles.length - 1]);
+  }
+
+  @Test
+  public void smallAmountQuantilesAreExact() {
+    MoneyColumn column = new MoneyColumn();
+    for (int i = 1; i <= 50; i++) column.add(i, Currency.USD);
+    assertArrayEquals(new long[] { 1, 25, 50 },
+        column.quantiles(Currency.USD, new double[] { 0, 0.5, 1 }));
+  }
+
+  @Test
+  public void minAndMaxQuantilesAreExact() {
+    // 1000 and 1001 share a bucket, and so do 5050 and the bucket's midpoint, 5023.
+    MoneyColumn column = new MoneyColumn();
+    column.add(1001, Currency.USD);
+    column.add(1000, Currency.USD);
+    column.add(5050, Currency.USD);
+    assertArrayEquals(new long[] { 1000, 5050 },
+        column.quantiles(Currency.USD, new double[] { 0, 1 }));
+  }
+
+  @Test
+  public void validation() {
+    MoneyColumn column = new MoneyColumn();
+    try {
+      column.add(Currency.USD.maxAmount() + 1, Currency.USD);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      column.add(new Payment());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      column.quantiles(Currency.USD, new double[] { 0.5 });
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+    column.add(new Payment().amount(5, Currency.USD));
+    assertEquals(Currency.USD, column.currency(0));
+    try {
+      column.quantiles(Currency.USD, new double[] { 1.5 });
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
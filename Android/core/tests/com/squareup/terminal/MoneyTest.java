@@ -0,0 +1,206 @@
+package com.squareup.terminal;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.fail;
+
+public class MoneyTest {
+  @Test
+  public void oneTest() {
+    Money m = new Money(500, Currency.USD);
+    assertEquals(500, m.amount());
+    assertEquals(Currency.USD, m.currency());
+    assertEquals("5.00", m.fixedPoint());
+  }
+
+  @Test
+  public void fixedPointPadding() {
+    assertEquals("0.00", new Money(0, Currency.USD).fixedPoint());
+    assertEquals("0.05", new Money(5, Currency.USD).fixedPoint());
+    assertEquals("0.50", new Money(50, Currency.USD).fixedPoint());
+    assertEquals("10.00", new Money(1000, Currency.USD).fixedPoint());
+    assertEquals("9999999.99", new Money(999999999, Currency.USD).fixedPoint());
+  }
+
+  @Test
+  public void fixedPointMatchesFormat() {
+    for (long amount = 0; amount < 100000; amount += 7) {
+      Money m = new Money(amount, Currency.USD);
+      assertEquals(String.format("%d.%02d", amount / 100, amount % 100), m.fixedPoint());
+    }
+  }
+
+  @Test
+  public void fixedPointIntoBuffers() {
+    Money m = new Money(123456, Currency.USD);
+
+    StringBuilder builder = new StringBuilder("amount=");
+    assertSame(builder, m.appendFixedPoint(builder));
+    assertEquals("amount=1234.56", builder.toString());
+
+    char[] chars = new char[10];
+    assertEquals(9, m.fixedPoint(chars, 2));
+    assertEquals("1234.56", new String(chars, 2, 7));
+  }
+
+  @Test(expected = ArrayIndexOutOfBoundsException.class)
+  public void fixedPointBufferTooSmall() {
+    new Money(123456, Currency.USD).fixedPoint(new char[6], 0);
+  }
+
+  @Test
+  public void parse() throws ParseException {
+    assertEquals(new Money(5000, Currency.USD).fixedPoint(),
+        Money.parse("50.00", Currency.USD).fixedPoint());
+  }
+
+  @Test
+  public void reflexive() throws ParseException {
+    Money m = new Money(87654321, Currency.USD);
+
+    assertEquals(m.fixedPoint(), Money.parse(m.fixedPoint(), m.currency()).fixedPoint());
+  }
+
+  @Test(expected = ParseException.class)
+  public void noDecimal() throws ParseException {
+    Money.parse("12345", Currency.USD);
+  }
+
+  @Test(expected = ParseException.class)
+  public void overPrecise() throws ParseException {
+    Money.parse("123.4567", Currency.USD);
+  }
+
+  @Test(expected = ParseException.class)
+  public void ridiculous() throws ParseException {
+    Money.parse("boo", Currency.USD);
+  }
+
+  @Test(expected = ParseException.class)
+  public void underPrecise() throws ParseException {
+    Money.parse("123.4", Currency.USD);
+  }
+
+  @Test(expected = ParseException.class)
+  public void noWhole() throws ParseException {
+    Money.parse(".45", Currency.USD);
+  }
+
+  @Test(expected = ParseException.class)
+  public void trailingGarbage() throws ParseException {
+    Money.parse("12.34 ", Currency.USD);
+  }
+
+  @Test(expected = ParseException.class)
+  public void negative() throws ParseException {
+    Money.parse("-12.34", Currency.USD);
+  }
+
+  @Test(expected = ParseException.class)
+  public void nonAsciiDigits() throws ParseException {
+    Money.parse("\u0661\u0662.34", Currency.USD);
+  }
+
+  @Test
+  public void maximum() throws ParseException {
+    assertEquals(999999999, Money.parse("9999999.99", Currency.USD).amount());
+    assertEquals(5, Money.parse("0000000000000000000000000.05", Currency.USD).amount());
+  }
+
+  @Test(expected = ParseException.class)
+  public void overMaximum() throws ParseException {
+    Money.parse("10000000.00", Currency.USD);
+  }
+
+  @Test(expected = ParseException.class)
+  public void overflow() throws ParseException {
+    Money.parse("99999999999999999999999999.00", Currency.USD);
+  }
+
+  @Test
+  public void parseRange() throws ParseException {
+    String query = "amount=12.34&currency=USD";
+    Money m = Money.parse(query, 7, 12, Currency.USD);
+    assertEquals(1234, m.amount());
+  }
+
+  @Test
+  public void parseErrorOffset() {
+    try {
+      Money.parse("x=12.3y", 2, 7, Currency.USD);
+      fail();
+    } catch (ParseException e) {
+      assertEquals(4, e.getErrorOffset());
+    }
+  }
+
+  @Test
+  public void zeroScale() throws ParseException {
+    Money m = new Money(1500, Currency.JPY);
+    assertEquals("1500", m.fixedPoint());
+    assertEquals(1500, Money.parse("1500", Currency.JPY).amount());
+  }
+
+  @Test(expected = ParseException.class)
+  public void zeroScaleRejectsDecimalPoint() throws ParseException {
+    Money.parse("15.00", Currency.JPY);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxAmountIsPerCurrency() {
+    new Money(Currency.EUR.maxAmount() + 1, Currency.EUR);
+  }
+
+  @Test
+  public void add() {
+    assertEquals(350, Money.add(100, 250, Currency.USD));
+    long max = Currency.USD.maxAmount();
+    assertEquals(max, Money.add(max - 1, 1, Currency.USD));
+    try {
+      Money.add(max, 1, Currency.USD);
+      fail();
+    } catch (ArithmeticException expected) {
+    }
+  }
+
+  @Test
+  public void multiply() {
+    assertEquals(6000, Money.multiply(2000, 3, Currency.USD));
+    assertEquals(0, Money.multiply(2000, 0, Currency.USD));
+    try {
+      Money.multiply(Currency.USD.maxAmount(), Integer.MAX_VALUE, Currency.USD);
+      fail();
+    } catch (ArithmeticException expected) {
+    }
+    try {
+      Money.multiply(2000, -1, Currency.USD);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void allocate() {
+    long[] shares = new long[3];
+    Money.allocate(100, new int[] { 1, 1, 1 }, shares);
+    assertEquals("[34, 33, 33]", java.util.Arrays.toString(shares));
+
+    Money.allocate(1001, new int[] { 70, 0, 30 }, shares);
+    assertEquals("[701, 0, 300]", java.util.Arrays.toString(shares));
+
+    // No overflow with large amounts and ratios.
+    Money.allocate(Long.MAX_VALUE, new int[] { Integer.MAX_VALUE - 1, 1 }, shares);
+    assertEquals(Long.MAX_VALUE, shares[0] + shares[1]);
+  }
+
+  @Test
+  public void split() {
+    long[] shares = new long[4];
+    Money.split(10, shares);
+    assertEquals("[3, 3, 2, 2]", java.util.Arrays.toString(shares));
+  }
+}
@@ -4,7 +4,10 @@ import org.junit.Test;
 
 import static junit.framework.Assert.assertFalse;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PaymentTest {
   @Test
@@ -89,4 +92,66 @@ public class PaymentTest {
     new Payment().metadata(justFits.toString());
     new Payment().metadata(justBig.toString());
   }
+
+  private static Payment donation() {
+    return new Payment()
+        .amount(2000, Currency.USD)
+        .description("donation")
+        .offerReceipt(false)
+        .recipient("account id");
+  }
+
+  @Test
+  public void freeze() {
+    Payment payment = donation();
+    Payment frozen = payment.freeze();
+    assertEquals(2000, frozen.amount().amount());
+    assertEquals("donation", frozen.description());
+    assertFalse(frozen.offerReceipt());
+    assertEquals("account id", frozen.recipient());
+    assertSame(frozen, frozen.freeze());
+
+    // The snapshot doesn't change with the original.
+    payment.description("changed");
+    assertEquals("donation", frozen.description());
+
+    try {
+      frozen.description("changed");
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+    try {
+      frozen.amount(1, Currency.USD);
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test
+  public void freezeReturnsCachedSnapshot() {
+    Payment frozen = donation().freeze();
+    assertSame(frozen, donation().freeze());
+    assertEquals(frozen.hashCode(), donation().freeze().hashCode());
+
+    Payment other = donation().offerReceipt(true).freeze();
+    assertNotSame(frozen, other);
+    assertFalse(frozen.equals(other));
+  }
+
+  @Test
+  public void frozenUrl() {
+    FrozenPayment frozen = (FrozenPayment) donation().freeze();
+    assertEquals(TerminalUrl.encode(donation(), "app", null, false), frozen.url("app", false));
+    assertSame(frozen.url("app", false), frozen.url("app", false));
+    assertEquals(TerminalUrl.encode(donation(), "other", null, false),
+        frozen.url("other", false));
+
+    // The memoized URL depends on whether metadata is compressed.
+    FrozenPayment withMetadata = (FrozenPayment) donation().metadata(MetadataCodecTest.JSON)
+        .freeze();
+    String compressed = withMetadata.url("app", true);
+    assertTrue(compressed.contains("metadata=" + MetadataCodec.MARKER));
+    assertFalse(withMetadata.url("app", false).contains(MetadataCodec.MARKER));
+    assertEquals(compressed, withMetadata.url("app", true));
+  }
 }
@@ -0,0 +1,33 @@
+package com.squareup.terminal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PoolTest {
+  @Test
+  public void lastInFirstOut() {
+    Pool<Object> pool = new Pool<Object>(2);
+    assertNull(pool.take());
+    Object a = new Object();
+    Object b = new Object();
+    assertTrue(pool.offer(a));
+    assertTrue(pool.offer(b));
+    assertSame(b, pool.take());
+    assertSame(a, pool.take());
+    assertNull(pool.take());
+  }
+
+  @Test
+  public void bounded() {
+    Pool<Object> pool = new Pool<Object>(1);
+    Object a = new Object();
+    assertTrue(pool.offer(a));
+    assertFalse(pool.offer(new Object()));
+    assertSame(a, pool.take());
+    assertTrue(pool.offer(a));
+  }
+}
@@ -0,0 +1,102 @@
+package com.squareup.terminal;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class QueryDecoderTest {
+  private final QueryDecoder decoder = new QueryDecoder();
+
+  private TerminalParameters decode(CharSequence query) throws ParseException {
+    TerminalParameters parameters = new TerminalParameters();
+    decoder.decode(query, parameters);
+    return parameters;
+  }
+
+  @Test
+  public void plain() throws ParseException {
+    TerminalParameters p = decode("amount=1.00&currency=USD&offer_receipt=false");
+    assertEquals("1.00", p.amount);
+    assertEquals("USD", p.currency);
+    assertEquals("false", p.offer_receipt);
+    assertNull(p.metadata);
+  }
+
+  @Test
+  public void percentEscapes() throws ParseException {
+    TerminalParameters p = decode("description=a%20b%26c%3Dd+e&metadata=%7b%22k%22%7D");
+    assertEquals("a b&c=d+e", p.description);
+    assertEquals("{\"k\"}", p.metadata);
+  }
+
+  @Test
+  public void utf8() throws ParseException {
+    // e-acute, euro sign and U+1F600, which needs a surrogate pair.
+    TerminalParameters p = decode("description=caf%C3%A9%20%E2%82%AC%F0%9F%98%80");
+    assertEquals("caf\u00e9 \u20ac\ud83d\ude00", p.description);
+  }
+
+  @Test
+  public void invalidEscapes() throws ParseException {
+    assertEquals("\ufffdzz", decode("to=%zz").to);
+    assertEquals("a\ufffd4", decode("to=a%4").to);
+    assertEquals("\ufffd", decode("to=%").to);
+    assertEquals("\ufffd!", decode("to=%C3!").to);
+    assertEquals("\ufffd\ufffd", decode("to=%C0%80").to);
+    assertEquals("\ufffd", decode("to=%ED%A0%80").to);
+  }
+
+  @Test
+  public void emptyValues() throws ParseException {
+    TerminalParameters p = decode("to=&reference_id=");
+    assertEquals("", p.to);
+    assertEquals("", p.reference_id);
+  }
+
+  @Test
+  public void byteBuffer() throws Exception {
+    // Raw UTF-8 octets are decoded along with escaped ones.
+    byte[] bytes = "xxamount=2.50&to=caf\u00e9%21".getBytes("UTF-8");
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    buffer.position(2);
+    TerminalParameters p = new TerminalParameters();
+    decoder.decode(buffer, p);
+    assertEquals("2.50", p.amount);
+    assertEquals("caf\u00e9!", p.to);
+    assertEquals(2, buffer.position());
+  }
+
+  @Test
+  public void reuse() throws ParseException {
+    StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 100; i++) longValue.append("%E2%82%AC");
+    assertEquals(100, decode("metadata=" + longValue).metadata.length());
+    assertEquals("x", decode("metadata=x").metadata);
+  }
+
+  @Test
+  public void unexpectedParameter() {
+    try {
+      decode("amount=1.00&api_version=1.0");
+      fail();
+    } catch (ParseException e) {
+      assertEquals("Unexpected parameter: api_version", e.getMessage());
+      assertEquals(12, e.getErrorOffset());
+    }
+  }
+
+  @Test(expected = ParseException.class)
+  public void missingValue() throws ParseException {
+    decode("amount=1.00&to");
+  }
+
+  @Test
+  public void copyFromQuery() throws ParseException {
+    TerminalParameters p = new TerminalParameters().copyFrom("reference_id=a%2Fb");
+    assertEquals("a/b", p.reference_id);
+  }
+}
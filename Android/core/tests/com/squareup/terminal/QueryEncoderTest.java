@@ -0,0 +1,65 @@
+package com.squareup.terminal;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryEncoderTest {
+  private static String encode(String s) {
+    String encoded = QueryEncoder.encode(s, new StringBuilder()).toString();
+    assertEquals(encoded.length(), QueryEncoder.encodedLength(s));
+    return encoded;
+  }
+
+  @Test
+  public void safe() {
+    assertEquals("azAZ09_-!.~'()*", encode("azAZ09_-!.~'()*"));
+  }
+
+  @Test
+  public void reserved() {
+    assertEquals("%20%22%23%24%25%26%2B%2C%2F%3A%3B%3D%3F%40%5B%5D", encode(" \"#$%&+,/:;=?@[]"));
+  }
+
+  @Test
+  public void utf8() {
+    assertEquals("%C3%A9%E2%82%AC%F0%9F%98%80", encode("\u00e9\u20ac\ud83d\ude00"));
+  }
+
+  @Test
+  public void unpairedSurrogates() {
+    assertEquals("%3Fa%3F", encode("\ud83da\ude00"));
+    assertEquals("%3F", encode("\ud83d"));
+  }
+
+  /** Compares against a simple encoder built on String.getBytes(). */
+  @Test
+  public void random() throws UnsupportedEncodingException {
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      char[] chars = new char[random.nextInt(20)];
+      for (int j = 0; j < chars.length; j++) {
+        // Bias towards ASCII.
+        chars[j] = (char) (random.nextBoolean() ? random.nextInt(128) : random.nextInt(0x10000));
+      }
+      String s = new String(chars);
+      assertEquals(referenceEncode(s), encode(s));
+    }
+  }
+
+  private static String referenceEncode(String s) throws UnsupportedEncodingException {
+    StringBuilder encoded = new StringBuilder();
+    for (byte b : s.getBytes("UTF-8")) {
+      char c = (char) (b & 0xff);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+          || "_-!.~'()*".indexOf(c) != -1) {
+        encoded.append(c);
+      } else {
+        encoded.append(String.format("%%%02X", b & 0xff));
+      }
+    }
+    return encoded.toString();
+  }
+}
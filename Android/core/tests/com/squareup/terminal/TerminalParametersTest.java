@@ -0,0 +1,127 @@
+package com.squareup.terminal;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit test for {@link TerminalParameters}.
+ */
+public class TerminalParametersTest {
+  @Test
+  public void namesMatchFields() throws IllegalAccessException {
+    Set<String> fields = new HashSet<String>();
+    for (Field field : TerminalParameters.class.getDeclaredFields()) {
+      if (isParameter(field)) fields.add(field.getName());
+    }
+    assertEquals(fields.size(), TerminalParameters.NAMES.length);
+
+    TerminalParameters parameters = new TerminalParameters();
+    for (int i = 0; i < TerminalParameters.NAMES.length; i++) {
+      String name = TerminalParameters.NAMES[i];
+      assertEquals(true, fields.contains(name));
+      parameters.set(i, name + " value");
+    }
+    for (Field field : TerminalParameters.class.getDeclaredFields()) {
+      if (isParameter(field)) {
+        assertEquals(field.getName() + " value", field.get(parameters));
+        assertEquals(field.getName() + " value",
+            parameters.get(TerminalParameters.indexOf(field.getName())));
+      }
+    }
+  }
+
+  @Test
+  public void indexOf() {
+    for (int i = 0; i < TerminalParameters.NAMES.length; i++) {
+      assertEquals(i, TerminalParameters.indexOf(TerminalParameters.NAMES[i]));
+    }
+    assertEquals(-1, TerminalParameters.indexOf(""));
+    assertEquals(-1, TerminalParameters.indexOf("tx"));
+    assertEquals(-1, TerminalParameters.indexOf("amounts"));
+    assertEquals(-1, TerminalParameters.indexOf("currencx"));
+    assertEquals(-1, TerminalParameters.indexOf("default_emaix"));
+    assertEquals(-1, TerminalParameters.indexOf("default_xmail"));
+    assertEquals(-1, TerminalParameters.indexOf("api_version"));
+  }
+
+  @Test
+  public void indexOfRange() {
+    String query = "amount=1.00&offer_receipt=true";
+    assertEquals(0, TerminalParameters.indexOf(query, 0, 6));
+    assertEquals(9, TerminalParameters.indexOf(query, 12, 25));
+    assertEquals(-1, TerminalParameters.indexOf(query, 1, 7));
+  }
+
+  @Test
+  public void copyFromPayment() {
+    TerminalParameters parameters = new TerminalParameters().copyFrom(new Payment()
+        .amount(1234, Currency.USD)
+        .offerReceipt(false)
+        .referenceId("reference"));
+    assertEquals("12.34", parameters.amount);
+    assertEquals("USD", parameters.currency);
+    assertEquals("false", parameters.offer_receipt);
+    assertEquals("reference", parameters.reference_id);
+    assertNull(parameters.metadata);
+  }
+
+  @Test
+  public void appendTo() throws ParseException {
+    TerminalParameters parameters = new TerminalParameters().copyFrom(new Payment()
+        .amount(1234, Currency.USD)
+        .description("50% off & more")
+        .metadata("{\"caf\u00e9\": 1}"));
+    parameters.app_id = "app";
+
+    String query = parameters.appendTo(new StringBuilder()).toString();
+    assertEquals("amount=12.34&currency=USD&app_id=app&description=50%25%20off%20%26%20more"
+        + "&metadata=%7B%22caf%C3%A9%22%3A%201%7D&offer_receipt=true", query);
+    assertEquals(query.length(), parameters.queryLength());
+
+    TerminalParameters decoded = new TerminalParameters().copyFrom(query);
+    for (int i = 0; i < TerminalParameters.NAMES.length; i++) {
+      assertEquals(parameters.get(i), decoded.get(i));
+    }
+  }
+
+  /** Parameters are the instance's String fields. It also caches a decoder. */
+  private static boolean isParameter(Field field) {
+    return !Modifier.isStatic(field.getModifiers()) && field.getType() == String.class;
+  }
+
+  @Test
+  public void decodesBytes() throws Exception {
+    TerminalParameters parameters = new TerminalParameters()
+        .copyFrom(ByteBuffer.wrap("description=caf\u00e9%20%C3%A9&to=x".getBytes("UTF-8")));
+    assertEquals("caf\u00e9 \u00e9", parameters.description);
+    assertEquals("x", parameters.to);
+
+    // The decoder is reused.
+    parameters.reset().copyFrom("description=d");
+    assertEquals("d", parameters.description);
+    assertNull(parameters.to);
+  }
+
+  @Test
+  public void obtainReusesRecycledInstances() {
+    TerminalParameters parameters = TerminalParameters.obtain();
+    parameters.copyFrom(new Payment().amount(1, Currency.USD).description("d"));
+    TerminalParameters other = TerminalParameters.obtain();
+    assertNotSame(parameters, other);
+    parameters.recycle();
+    TerminalParameters reused = TerminalParameters.obtain();
+    assertSame(parameters, reused);
+    for (int i = 0; i < TerminalParameters.NAMES.length; i++) assertNull(reused.get(i));
+    assertNotSame(reused, TerminalParameters.obtain());
+  }
+}
@@ -0,0 +1,94 @@
+package com.squareup.terminal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link TerminalUrl}.
+ */
+public class TerminalUrlTest {
+  @Test
+  public void testUrl() {
+    Payment payment = new Payment().amount(150, Currency.USD).description("Two words");
+    assertEquals("square://terminal/1.0/pay?amount=1.50&currency=USD&app_id=app"
+        + "&description=Two%20words&offer_receipt=true",
+        TerminalUrl.of(payment, "app"));
+  }
+
+  @Test
+  public void testCallbackUrl() {
+    Payment payment = new Payment().amount(150, Currency.USD).referenceId("r1");
+    assertEquals("square://terminal/1.0/pay?amount=1.50&currency=USD"
+        + "&callback=https%3A%2F%2Fexample.com%2Fdone%3Fa%3Db&app_id=app"
+        + "&reference_id=r1&offer_receipt=true",
+        TerminalUrl.of(payment, "app", "https://example.com/done?a=b"));
+  }
+
+  @Test
+  public void testFrozenUrlIsMemoized() {
+    Payment frozen = new Payment().amount(150, Currency.USD).freeze();
+    assertSame(TerminalUrl.of(frozen, "app"), TerminalUrl.of(frozen, "app"));
+  }
+
+  @Test
+  public void testUrlDecodesBack() throws Exception {
+    Payment payment = new Payment().amount(123456, Currency.EUR).description("Caf\u00e9 & co")
+        .metadata("a=b").recipient("to").defaultEmail("e@example.com");
+    String url = TerminalUrl.of(payment, "app");
+    Payment decoded = new Payment();
+    new TerminalParameters().copyFrom(url.substring(url.indexOf('?') + 1)).copyTo(decoded);
+    assertEquals(payment.amount().amount(), decoded.amount().amount());
+    assertEquals(payment.amount().currency(), decoded.amount().currency());
+    assertEquals(payment.description(), decoded.description());
+    assertEquals(payment.metadata(), decoded.metadata());
+  }
+
+  @Test
+  public void testMissingAmount() {
+    try {
+      TerminalUrl.of(new Payment(), "app");
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testMissingApplicationId() {
+    try {
+      TerminalUrl.of(new Payment().amount(1, Currency.USD), null);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+  }
+
+  @Test
+  public void testSteadyStateAllocatesOnlyUrl() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported()
+        && allocations.isThreadAllocatedMemoryEnabled());
+
+    Payment payment = new Payment().amount(123456, Currency.USD).description("Two words")
+        .referenceId("order-1234").recipient("to");
+    String url = TerminalUrl.of(payment, "app");
+    for (int i = 0; i < 20000; i++) TerminalUrl.of(payment, "app");
+
+    long id = Thread.currentThread().getId();
+    int iterations = 10000;
+    long before = allocations.getThreadAllocatedBytes(id);
+    for (int i = 0; i < iterations; i++) TerminalUrl.of(payment, "app");
+    long perUrl = (allocations.getThreadAllocatedBytes(id) - before) / iterations;
+
+    // A String and its array, with generous headers, holding up to two bytes per char.
+    long maxUrlSize = 64 + 2 * url.length();
+    assertTrue(perUrl + " > " + maxUrlSize, perUrl <= maxUrlSize);
+  }
+}
@@ -0,0 +1,271 @@
+// Copyright 2011 Square, Inc.
+package com.squareup.jackson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Validates the email column of a large CSV file, such as a donor list, before an event. Memory
+ * maps the file, splits it into chunks on line boundaries and validates the chunks in parallel.
+ * Each address is checked in place through a {@link CharSequence} view of the mapped bytes, so
+ * validation doesn't create a String per row.
+ *
+ * <p>Chunks are independent tasks on a plain {@link ExecutorService} rather than a fork/join
+ * decomposition: this app targets Android releases that don't have {@code ForkJoinPool}, and
+ * row-aligned chunks of the same size don't benefit from work stealing.
+ *
+ * <p>Rows end with "\n" or "\r\n". Fields are separated by commas and may be quoted the way
+ * opencsv quotes them, but quoted fields can't contain line breaks. Blank rows are skipped.
+ */
+public final class BulkEmailValidator {
+
+  private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+  private final int column;
+  private final boolean header;
+  private final ExecutorService executor;
+  private final int chunkSize;
+
+  /**
+   * @param column zero-based index of the email column
+   * @param header true if the first row contains column names and should be skipped
+   * @param executor validates chunks
+   * @throws IllegalArgumentException if column < 0
+   * @throws NullPointerException if executor is null
+   */
+  public BulkEmailValidator(int column, boolean header, ExecutorService executor) {
+    this(column, header, executor, DEFAULT_CHUNK_SIZE);
+  }
+
+  /*package*/ BulkEmailValidator(int column, boolean header, ExecutorService executor,
+      int chunkSize) {
+    if (column < 0) throw new IllegalArgumentException("column < 0");
+    if (executor == null) throw new NullPointerException("executor");
+    this.column = column;
+    this.header = header;
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Returns the byte offsets of the rows whose email address is invalid or missing, in
+   * ascending order. If validation fails or the calling thread is interrupted, cancels the
+   * chunks that haven't been validated yet.
+   */
+  public long[] validate(File file) throws IOException, InterruptedException {
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+
+      // Split the file into chunks that start at the beginning of a row.
+      List<Long> starts = new ArrayList<Long>();
+      long start = header ? nextRow(channel, 1, size) : 0;
+      while (start < size) {
+        starts.add(start);
+        start = nextRow(channel, start + chunkSize, size);
+      }
+
+      List<Future<long[]>> futures = new ArrayList<Future<long[]>>(starts.size());
+      long[][] results = new long[starts.size()][];
+      int count = 0;
+      boolean done = false;
+      try {
+        for (int i = 0; i < starts.size(); i++) {
+          long end = i + 1 < starts.size() ? starts.get(i + 1) : size;
+          MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, starts.get(i),
+              end - starts.get(i));
+          futures.add(executor.submit(new ChunkValidator(chunk, starts.get(i))));
+        }
+
+        // Chunks are in file order.
+        for (int i = 0; i < results.length; i++) {
+          results[i] = get(futures.get(i));
+          count += results[i].length;
+        }
+        done = true;
+      } finally {
+        if (!done) {
+          for (Future<long[]> future : futures) future.cancel(true);
+        }
+      }
+
+      // Concatenate results.
+      long[] invalid = new long[count];
+      int offset = 0;
+      for (long[] result : results) {
+        System.arraycopy(result, 0, invalid, offset, result.length);
+        offset += result.length;
+      }
+      return invalid;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static long[] get(Future<long[]> future) throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new AssertionError(cause);
+    }
+  }
+
+  /** Returns the offset of the first row that starts at or after position, or size. */
+  private static long nextRow(FileChannel channel, long position, long size)
+      throws IOException {
+    if (position == 0) return 0;
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    // Start one byte early in case position is already at the start of a row.
+    long offset = position - 1;
+    while (offset < size) {
+      buffer.clear();
+      int read = channel.read(buffer, offset);
+      if (read == -1) break;
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') return offset + i + 1;
+      }
+      offset += read;
+    }
+    return size;
+  }
+
+  /** Validates the rows in one chunk. */
+  private class ChunkValidator implements Callable<long[]> {
+    private final ByteBuffer chunk;
+    private final long chunkOffset;
+    private final ByteSequence email;
+
+    private long[] invalid = new long[16];
+    private int invalidCount;
+
+    ChunkValidator(ByteBuffer chunk, long chunkOffset) {
+      this.chunk = chunk;
+      this.chunkOffset = chunkOffset;
+      this.email = new ByteSequence(chunk);
+    }
+
+    public long[] call() {
+      int limit = chunk.limit();
+      int rowStart = 0;
+      while (rowStart < limit) {
+        int rowEnd = rowStart;
+        while (rowEnd < limit && chunk.get(rowEnd) != '\n') rowEnd++;
+        int next = rowEnd + 1;
+        if (rowEnd > rowStart && chunk.get(rowEnd - 1) == '\r') rowEnd--;
+
+        if (rowEnd > rowStart && !isValid(rowStart, rowEnd)) {
+          if (invalidCount == invalid.length) {
+            long[] grown = new long[invalid.length * 2];
+            System.arraycopy(invalid, 0, grown, 0, invalidCount);
+            invalid = grown;
+          }
+          invalid[invalidCount++] = chunkOffset + rowStart;
+        }
+        rowStart = next;
+      }
+
+      long[] result = new long[invalidCount];
+      System.arraycopy(invalid, 0, result, 0, invalidCount);
+      return result;
+    }
+
+    /** Finds the email column in chunk[start..end) and validates it. */
+    private boolean isValid(int start, int end) {
+      int fieldStart = start;
+      for (int field = 0; ; field++) {
+        if (fieldStart > end) return false; // Missing column.
+
+        // Find the end of the field.
+        int fieldEnd;
+        boolean quoted = fieldStart < end && chunk.get(fieldStart) == '"';
+        boolean escapes = false;
+        if (quoted) {
+          fieldEnd = fieldStart + 1;
+          while (true) {
+            if (fieldEnd >= end) return false; // Unterminated quote.
+            if (chunk.get(fieldEnd) == '"') {
+              if (fieldEnd + 1 < end && chunk.get(fieldEnd + 1) == '"') {
+                escapes = true;
+                fieldEnd += 2;
+                continue;
+              }
+              fieldEnd++;
+              break;
+            }
+            fieldEnd++;
+          }
+          if (fieldEnd < end && chunk.get(fieldEnd) != ',') return false; // Junk after quote.
+        } else {
+          fieldEnd = fieldStart;
+          while (fieldEnd < end && chunk.get(fieldEnd) != ',') fieldEnd++;
+        }
+
+        if (field == column) {
+          // An escaped quote can't appear in a valid address.
+          if (escapes) return false;
+          if (quoted) {
+            email.reset(fieldStart + 1, fieldEnd - 1);
+          } else {
+            email.reset(fieldStart, fieldEnd);
+          }
+          return Email.isValidEmail(email);
+        }
+        fieldStart = fieldEnd + 1;
+      }
+    }
+  }
+
+  /**
+   * Views a range of bytes as chars without copying them. Bytes >= 0x80 map to chars >= 0x80,
+   * which aren't valid in an address, so UTF-8 input validates correctly.
+   */
+  private static final class ByteSequence implements CharSequence {
+    private final ByteBuffer buffer;
+    private int start;
+    private int length;
+
+    ByteSequence(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    void reset(int start, int end) {
+      this.start = start;
+      this.length = end - start;
+    }
+
+    public int length() {
+      return length;
+    }
+
+    public char charAt(int index) {
+      if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index: " + index);
+      return (char) (buffer.get(start + index) & 0xff);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+      return toString().substring(start, end);
+    }
+
+    @Override public String toString() {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) chars[i] = charAt(i);
+      return new String(chars);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright 2011 Square, Inc.
+package com.squareup.jackson;
+
+/**
+ * Encodes form fields as one CSV row that fits in a payment description. Quotes fields the same
+ * way as opencsv's {@code CSVWriter} with its default settings: every non-null field is quoted,
+ * embedded quotes are doubled, null fields are left empty and the row ends with a newline.
+ *
+ * <p>If the row would be too long, truncates the longest fields first so the short ones, like
+ * the state and zip code, survive intact.
+ *
+ * <p>Instances reuse their buffers from one row to the next. They aren't thread safe.
+ */
+final class DescriptionEncoder {
+
+  private final int maxLength;
+  private final StringBuilder row;
+
+  /** Encoded length of each field's contents, not counting the surrounding quotes. */
+  private int[] widths = new int[16];
+
+  /** @param maxLength maximum length of a row, including quotes, commas and the newline */
+  DescriptionEncoder(int maxLength) {
+    this.maxLength = maxLength;
+    this.row = new StringBuilder(maxLength);
+  }
+
+  /**
+   * Encodes the given fields as a CSV row of at most {@code maxLength} characters.
+   *
+   * @throws IllegalArgumentException if the quotes, commas and newline alone don't fit
+   */
+  String encode(CharSequence[] fields) {
+    if (widths.length < fields.length) widths = new int[fields.length];
+
+    // Measure.
+    int overhead = fields.length == 0 ? 1 : fields.length; // commas and newline
+    int total = 0;
+    int widest = 0;
+    for (int i = 0; i < fields.length; i++) {
+      CharSequence field = fields[i];
+      int width = 0;
+      if (field != null) {
+        overhead += 2; // quotes
+        for (int j = 0, length = field.length(); j < length; j++) {
+          width += field.charAt(j) == '"' ? 2 : 1;
+        }
+      }
+      widths[i] = width;
+      total += width;
+      widest = Math.max(widest, width);
+    }
+    int budget = maxLength - overhead;
+    if (budget < 0) {
+      throw new IllegalArgumentException(fields.length + " fields don't fit in " + maxLength
+          + " chars.");
+    }
+
+    // Cap the field widths if necessary. Find the largest cap that fits.
+    int cap = widest;
+    if (total > budget) {
+      int low = 0;
+      int high = widest;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (cappedTotal(fields.length, mid) <= budget) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      cap = low;
+
+      // Hand out what's left one char at a time, in field order, to fields that were capped.
+      int remaining = budget - cappedTotal(fields.length, cap);
+      for (int i = 0; i < fields.length; i++) {
+        if (widths[i] > cap) {
+          widths[i] = remaining-- > 0 ? cap + 1 : cap;
+        }
+      }
+    }
+
+    // Encode.
+    row.setLength(0);
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0) row.append(',');
+      CharSequence field = fields[i];
+      if (field == null) continue;
+      row.append('"');
+      int width = 0;
+      for (int j = 0, length = field.length(); j < length; j++) {
+        char c = field.charAt(j);
+        int charWidth = c == '"' ? 2 : 1;
+        if (width + charWidth > widths[i]) break;
+        // Don't split a surrogate pair.
+        if (Character.isHighSurrogate(c) && j + 1 < length && width + 2 > widths[i]) break;
+        if (c == '"') row.append('"');
+        row.append(c);
+        width += charWidth;
+      }
+      row.append('"');
+    }
+    row.append('\n');
+    return row.toString();
+  }
+
+  /** Returns the total field width if no field is wider than the given cap. */
+  private int cappedTotal(int count, int cap) {
+    int total = 0;
+    for (int i = 0; i < count; i++) total += Math.min(widths[i], cap);
+    return total;
+  }
+}
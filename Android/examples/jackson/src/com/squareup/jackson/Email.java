@@ -1,8 +1,6 @@
 // Copyright 2010 Square, Inc.
 package com.squareup.jackson;
 
-import java.util.regex.Pattern;
-
 /**
  * Validates Email addresses.
  *
@@ -11,18 +9,73 @@ import java.util.regex.Pattern;
 public final class Email {
 
   /**
-   * This pattern comes from http://www.regular-expressions.info/email.html.
+   * True for ASCII characters allowed in the local part, other than '.'. Letters match
+   * case-insensitively.
    */
-  private static Pattern EMAIL_PATTERN = Pattern.compile(
-      "[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*"
-          + "@(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+"
-          + "[a-z0-9](?:[a-z0-9-]*[a-z0-9])?", Pattern.CASE_INSENSITIVE);
+  private static final boolean[] LOCAL = new boolean[128];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) LOCAL[c] = true;
+    for (char c = 'A'; c <= 'Z'; c++) LOCAL[c] = true;
+    for (char c = '0'; c <= '9'; c++) LOCAL[c] = true;
+    for (char c : "!#$%&'*+/=?^_`{|}~-".toCharArray()) LOCAL[c] = true;
+  }
 
   /**
-   * Returns true if the given email address looks valid.
+   * Returns true if the given email address looks valid. Accepts the same addresses as this
+   * pattern from http://www.regular-expressions.info/email.html, matched case-insensitively:
+   *
+   * <pre>
+   * [a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*
+   *     &#64;(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?
+   * </pre>
+   *
+   * <p>Unlike a backtracking regex engine, this runs in time linear in the input length and
+   * doesn't allocate.
    */
   public static boolean isValidEmail(CharSequence email) {
-    return EMAIL_PATTERN.matcher(email).matches();
+    int length = email.length();
+
+    // Local part: one or more non-empty atoms separated by dots.
+    int i = 0;
+    boolean emptyAtom = true;
+    for (; i < length; i++) {
+      char c = email.charAt(i);
+      if (c == '@') {
+        break;
+      } else if (c == '.') {
+        if (emptyAtom) return false;
+        emptyAtom = true;
+      } else if (c < 128 && LOCAL[c]) {
+        emptyAtom = false;
+      } else {
+        return false;
+      }
+    }
+    if (i == length || emptyAtom) return false;
+    i++; // '@'
+
+    // Domain: two or more labels separated by dots. Labels contain letters, digits and
+    // hyphens, and they start and end with a letter or digit.
+    int dots = 0;
+    char previous = '.';
+    for (; i < length; i++) {
+      char c = email.charAt(i);
+      if (c == '.') {
+        if (previous == '.' || previous == '-') return false;
+        dots++;
+      } else if (c == '-') {
+        if (previous == '.') return false;
+      } else if (!isLetterOrDigit(c)) {
+        return false;
+      }
+      previous = c;
+    }
+    return dots > 0 && previous != '.' && previous != '-';
+  }
+
+  private static boolean isLetterOrDigit(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
   }
 
   private Email() {}
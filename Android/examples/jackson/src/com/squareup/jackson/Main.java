@@ -3,6 +3,7 @@ package com.squareup.jackson;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.PixelFormat;
@@ -12,15 +13,15 @@ import android.text.TextWatcher;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
-import au.com.bytecode.opencsv.CSVWriter;
 import com.squareup.terminal.Currency;
 import com.squareup.terminal.Money;
 import com.squareup.terminal.Payment;
+import com.squareup.terminal.PaymentQueue;
 import com.squareup.terminal.Response;
 import com.squareup.terminal.Square;
-
 import java.io.IOException;
-import java.io.StringWriter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class Main extends Activity {
 
@@ -32,12 +33,36 @@ public class Main extends Activity {
   private static final int CLEAR_DIALOG = 2;
   private static final int EXIT_DIALOG = 3;
 
+  private static final int PAY_REQUEST = 0;
+  private static final int REPLAY_REQUEST = 1;
+
+  /**
+   * Payments that couldn't be requested yet. Shared by all instances of this activity. Only
+   * accessed on {@link #queueExecutor}.
+   */
+  private static PaymentQueue queue;
+
+  /** Opens and updates the queue. Opening reads the queue's files, so keep it off the UI thread. */
+  private static final Executor queueExecutor = Executors.newSingleThreadExecutor();
+
+  /**
+   * True while a queued payment is being looked up or replayed, or after the user canceled one.
+   * Prevents replaying the same payment in a loop.
+   */
+  private static boolean replaying;
+
   private TextView email;
 
   private int dollars;
 
   private TextView[] textViews;
 
+  /** Payment descriptions can be up to 140 chars. */
+  private final DescriptionEncoder descriptionEncoder = new DescriptionEncoder(140);
+
+  /** Reused by {@link #description()}. */
+  private CharSequence[] values;
+
   @Override
   public void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -55,10 +80,11 @@ public class Main extends Activity {
     TextView occupation = findTextViewById(R.id.occupation);
     TextView amount = findTextViewById(R.id.amount);
 
-    // Note: The order matches that in openCsv().
+    // Note: The order matches that in description().
     textViews = new TextView[] {
         name, email, street, city, state, zip, employer, occupation, amount
     };
+    values = new CharSequence[textViews.length];
 
     // Set up focus navigation around the zip field.
     state.setNextFocusDownId(R.id.zip);
@@ -84,6 +110,74 @@ public class Main extends Activity {
     amount.addTextChangedListener(new AmountTextWatcher());
   }
 
+  @Override protected void onResume() {
+    super.onResume();
+    replayQueuedPayment();
+  }
+
+  /**
+   * Opens the payment queue in the application's files directory. Only call on {@link
+   * #queueExecutor}.
+   */
+  private static PaymentQueue queue(Context context) {
+    if (queue == null) {
+      try {
+        queue = new PaymentQueue(context.getFilesDir());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return queue;
+  }
+
+  /** Requests the next queued payment, if any, once Square is available. */
+  private void replayQueuedPayment() {
+    if (replaying) return;
+    replaying = true;
+    final Context context = getApplicationContext();
+    queueExecutor.execute(new Runnable() {
+      public void run() {
+        final Payment payment = queue(context).peek();
+        runOnUiThread(new Runnable() {
+          public void run() {
+            replay(payment);
+          }
+        });
+      }
+    });
+  }
+
+  private void replay(Payment payment) {
+    if (payment != null && !isFinishing()) {
+      Square square = new Square(this, APP_ID);
+      if (square.installationStatus() == Square.InstallationStatus.AVAILABLE) {
+        square.request(payment, REPLAY_REQUEST);
+        return;
+      }
+    }
+    replaying = false;
+  }
+
+  /** Appends a payment to the queue in the background. */
+  private void enqueue(final Payment payment) {
+    final Context context = getApplicationContext();
+    queueExecutor.execute(new Runnable() {
+      public void run() {
+        queue(context).add(payment);
+      }
+    });
+  }
+
+  /** Removes the payment that was just replayed in the background. */
+  private void dequeue() {
+    final Context context = getApplicationContext();
+    queueExecutor.execute(new Runnable() {
+      public void run() {
+        queue(context).remove();
+      }
+    });
+  }
+
   private static final String AMOUNT_KEY = "amount";
 
   @Override protected void onSaveInstanceState(Bundle outState) {
@@ -103,34 +197,62 @@ public class Main extends Activity {
       return;
     }
 
+    Payment payment = new Payment()
+        .description(description())
+        .defaultEmail(email.getText().toString())
+        .recipient(TO_ID)
+        .amount(new Money(dollars * 100, Currency.USD));
+
     Square square = new Square(this, APP_ID);
     if (square.installationStatus() != Square.InstallationStatus.AVAILABLE) {
+      // Keep the donation and request it after Square is installed.
+      enqueue(payment);
+      Toast.makeText(this, "Payment saved. It will be requested once Square is installed.",
+          Toast.LENGTH_LONG).show();
       square.requestInstallation();
+      startOver();
     } else {
-      square.request(new Payment()
-          .description(description())
-          .defaultEmail(email.getText().toString())
-          .recipient(TO_ID)
-          .amount(new Money(dollars * 100, Currency.USD)));
+      square.request(payment, PAY_REQUEST);
     }
   }
 
   @Override protected void onActivityResult(int requestCode, int resultCode,
       Intent data) {
+    Response response = Square.response(requestCode, resultCode, data);
+
+    if (requestCode == REPLAY_REQUEST) {
+      replaying = false;
+      if (resultCode == RESULT_OK) {
+        dequeue();
+        Toast.makeText(this, "Saved payment completed.", Toast.LENGTH_SHORT).show();
+      } else if (response != null) {
+        // Square rejected the payment. Retrying won't help.
+        dequeue();
+        Toast.makeText(this, getFailureMessage(response), Toast.LENGTH_LONG).show();
+      } else {
+        // Canceled. Leave the payment queued but don't replay it again until the app restarts,
+        // or we'd immediately reopen Square.
+        replaying = true;
+        Toast.makeText(this, "Saved payment canceled.", Toast.LENGTH_LONG).show();
+      }
+      return;
+    }
 
     if (resultCode != RESULT_OK) {
-      Toast.makeText(this, getFailureMessage(data), Toast.LENGTH_LONG).show();
+      Toast.makeText(this, getFailureMessage(response), Toast.LENGTH_LONG).show();
+
+      // Keep the input if the user canceled so they can try again.
+      if (response == null) return;
     }
 
     startOver();
   }
 
-  private String getFailureMessage(Intent data) {
+  private String getFailureMessage(Response response) {
     String message = "Payment canceled.";
-    if (data != null) {
+    if (response != null) {
       StringBuilder b = new StringBuilder("Payment failed");
-      Response response = Response.from(data);
-      if (response.errors().isEmpty()) {
+      if (!response.hasErrors()) {
         b.append(".");
       } else {
         b.append(":");
@@ -234,20 +356,12 @@ public class Main extends Activity {
     return null;
   }
 
+  /** Encodes the input as CSV, truncating the longest fields if necessary. */
   private String description() {
-    StringWriter sout = new StringWriter();
-    CSVWriter cout = new CSVWriter(sout);
-    String[] values = new String[textViews.length];
     for (int i = 0; i < textViews.length; i++) {
-      values[i] = textViews[i].getText().toString();
-    }
-    cout.writeNext(values);
-    try {
-      cout.close();
-    } catch (IOException e) {
-      throw new AssertionError(e);
+      values[i] = textViews[i].getText();
     }
-    return sout.toString();
+    return descriptionEncoder.encode(values);
   }
 
   private class AmountTextWatcher implements TextWatcher {
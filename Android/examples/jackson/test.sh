@@ -0,0 +1,21 @@
+# Runs unit tests for the parts of this app that don't depend on Android.
+
+cd `dirname $0`
+
+JUNIT=../../external/junit-4.10.jar
+CLASSPATH=$JUNIT:libs/opencsv-2.2.jar
+
+# Clear and recreate test output directory.
+rm -rf bin/tests
+mkdir -p bin/tests
+
+# Compile classes and tests.
+javac -g -classpath $CLASSPATH -d bin/tests \
+    src/com/squareup/jackson/Email.java \
+    src/com/squareup/jackson/BulkEmailValidator.java \
+    src/com/squareup/jackson/DescriptionEncoder.java \
+    `find tests -name *.java`
+
+# Run tests.
+java -classpath $CLASSPATH:bin/tests org.junit.runner.JUnitCore \
+  $(find tests -name \*Test.java | sed 's/tests\///' | sed 's/\.java//' | sed 's/\//./g')
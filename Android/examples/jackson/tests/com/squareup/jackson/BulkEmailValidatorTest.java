@@ -0,0 +1,138 @@
+package com.squareup.jackson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkEmailValidatorTest {
+  private ExecutorService executor;
+  private File file;
+
+  @Before public void setUp() throws IOException {
+    executor = Executors.newFixedThreadPool(4);
+    file = File.createTempFile("donors", ".csv");
+  }
+
+  @After public void tearDown() {
+    executor.shutdown();
+    file.delete();
+  }
+
+  private void write(String csv) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(csv.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void quotedAndUnquoted() throws Exception {
+    String csv = "\"Name\",\"Email\"\n"                  // 0: header
+        + "\"Jane\",\"jane@example.com\"\n"              // 15: valid
+        + "\"Doe, John\",\"john@example\"\n"             // 41: invalid
+        + "Bob,bob@example.com\r\n"                      // 68: valid
+        + "Al,\"al\"\"@example.com\"\n"                  // 89: escaped quote
+        + "Missing\n"                                    // 111: no email column
+        + "\n"                                           // 119: blank row, skipped
+        + "\"Caf\u00e9\",caf\u00e9@example.com\n"        // 120: non-ASCII
+        + "Eve,eve@example.com";                         // valid, no trailing newline
+    write(csv);
+
+    long[] invalid = new BulkEmailValidator(1, true, executor).validate(file);
+    assertArrayEquals(new long[] { 41, 89, 111, 120 }, invalid);
+
+    // Without skipping the header, the header is invalid too.
+    invalid = new BulkEmailValidator(1, false, executor).validate(file);
+    assertArrayEquals(new long[] { 0, 41, 89, 111, 120 }, invalid);
+  }
+
+  @Test
+  public void empty() throws Exception {
+    write("");
+    assertEquals(0, new BulkEmailValidator(0, false, executor).validate(file).length);
+  }
+
+  @Test
+  public void blankRows() throws Exception {
+    write("\r\na,a@b.co\n\n\r\nb,bad\n\n");
+    assertArrayEquals(new long[] { 14 }, new BulkEmailValidator(1, false, executor).validate(file));
+  }
+
+  @Test
+  public void interruptCancelsRemainingChunks() throws Exception {
+    write("a,a@b.co\nb,b@c.co\n");
+    final List<Future<?>> tasks = new ArrayList<Future<?>>();
+    // Never runs chunks, and interrupts the caller once both are submitted.
+    ExecutorService stalled = new AbstractExecutorService() {
+      public void execute(Runnable task) {
+        tasks.add((Future<?>) task);
+        if (tasks.size() == 2) Thread.currentThread().interrupt();
+      }
+      public void shutdown() {}
+      public List<Runnable> shutdownNow() {
+        return Collections.emptyList();
+      }
+      public boolean isShutdown() {
+        return false;
+      }
+      public boolean isTerminated() {
+        return false;
+      }
+      public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return false;
+      }
+    };
+    try {
+      new BulkEmailValidator(1, false, stalled, 1).validate(file);
+      fail();
+    } catch (InterruptedException expected) {
+    }
+    assertEquals(2, tasks.size());
+    for (Future<?> task : tasks) assertTrue(task.isCancelled());
+  }
+
+  /** Compares with validating each row as a String, using chunks small enough to split rows. */
+  @Test
+  public void chunkBoundaries() throws Exception {
+    Random random = new Random(0);
+    String[] emails = { "a@b.co", "bad@", "x.y@z.org", "no-at-sign", "\"q@r.st\"" };
+    StringBuilder csv = new StringBuilder();
+    List<Long> expected = new ArrayList<Long>();
+    for (int i = 0; i < 1000; i++) {
+      String email = emails[random.nextInt(emails.length)];
+      String unquoted = email.replace("\"", "");
+      if (!Email.isValidEmail(unquoted)) expected.add((long) csv.length());
+      csv.append(i).append(',').append(email).append('\n');
+    }
+    write(csv.toString());
+
+    for (int chunkSize : new int[] { 1, 7, 64, 1000, 1 << 20 }) {
+      long[] invalid = new BulkEmailValidator(1, false, executor, chunkSize).validate(file);
+      long[] expectedArray = new long[expected.size()];
+      for (int i = 0; i < expectedArray.length; i++) expectedArray[i] = expected.get(i);
+      assertEquals("chunkSize=" + chunkSize, Arrays.toString(expectedArray),
+          Arrays.toString(invalid));
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.squareup.jackson;
+
+import au.com.bytecode.opencsv.CSVReader;
+import au.com.bytecode.opencsv.CSVWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DescriptionEncoderTest {
+  private final DescriptionEncoder encoder = new DescriptionEncoder(140);
+
+  private static String csvWriter(String[] fields) throws IOException {
+    StringWriter out = new StringWriter();
+    CSVWriter writer = new CSVWriter(out);
+    writer.writeNext(fields);
+    writer.close();
+    return out.toString();
+  }
+
+  private static String[] csvReader(String row) throws IOException {
+    return new CSVReader(new StringReader(row)).readNext();
+  }
+
+  @Test
+  public void matchesCsvWriter() throws IOException {
+    String[] fields = { "Jane \"JD\" Doe", "jane@example.com", "1 Main St, Apt 2", "Springfield",
+        "IL", "62701", "", null, "C:\\" };
+    assertEquals(csvWriter(fields), encoder.encode(fields));
+  }
+
+  @Test
+  public void truncatesLongestFieldsFirst() throws IOException {
+    String[] fields = { "Jane Doe", "jane@example.com", repeat('s', 100), "Springfield", "IL",
+        "62701", repeat('e', 100), "Engineer", "20" };
+    String row = encoder.encode(fields);
+    assertEquals(140, row.length());
+
+    String[] decoded = csvReader(row);
+    assertEquals(fields.length, decoded.length);
+    for (int i = 0; i < fields.length; i++) {
+      if (i == 2 || i == 6) {
+        assertTrue(fields[i].startsWith(decoded[i]));
+      } else {
+        assertEquals(fields[i], decoded[i]);
+      }
+    }
+    // The two long fields share what's left evenly.
+    assertTrue(Math.abs(decoded[2].length() - decoded[6].length()) <= 1);
+  }
+
+  @Test
+  public void quotesCountTwice() throws IOException {
+    String[] fields = { repeat('"', 100) };
+    String row = encoder.encode(fields);
+    assertTrue(row.length() <= 140);
+    assertEquals(68, csvReader(row)[0].length());
+  }
+
+  @Test
+  public void surrogatePairsStayWhole() throws IOException {
+    StringBuilder emoji = new StringBuilder();
+    for (int i = 0; i < 100; i++) emoji.append("\ud83d\ude00");
+    String[] fields = { "x", emoji.toString() };
+    String row = encoder.encode(fields);
+    assertTrue(row.length() <= 140);
+    String decoded = csvReader(row)[1];
+    assertTrue(decoded.length() % 2 == 0);
+    assertTrue(emoji.toString().startsWith(decoded));
+  }
+
+  /** Checks random rows against opencsv: whole when they fit, decodable prefixes otherwise. */
+  @Test
+  public void random() throws IOException {
+    Random random = new Random(0);
+    // No backslashes: opencsv's reader treats them as escapes, although its writer doesn't.
+    String alphabet = "ab ,\"\n'";
+    for (int n = 0; n < 2000; n++) {
+      String[] fields = new String[random.nextInt(10) + 1];
+      for (int i = 0; i < fields.length; i++) {
+        StringBuilder field = new StringBuilder();
+        for (int j = random.nextInt(30); j > 0; j--) {
+          field.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        fields[i] = field.toString();
+      }
+
+      String expected = csvWriter(fields);
+      String row = encoder.encode(fields);
+      if (expected.length() <= 140) {
+        assertEquals(expected, row);
+      } else {
+        assertTrue(row.length() <= 140);
+        String[] decoded = csvReader(row);
+        assertEquals(fields.length, decoded.length);
+        for (int i = 0; i < fields.length; i++) {
+          assertTrue(fields[i].startsWith(decoded[i]));
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tooManyFields() {
+    new DescriptionEncoder(10).encode(new String[] { "a", "b", "c", "d" });
+  }
+
+  @Test
+  public void reuse() {
+    assertEquals("\"a\",\"b\"\n", encoder.encode(new String[] { "a", "b" }));
+    assertEquals("\"c\"\n", encoder.encode(new String[] { "c" }));
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    java.util.Arrays.fill(chars, c);
+    return new String(chars);
+  }
+}
@@ -0,0 +1,92 @@
+package com.squareup.jackson;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EmailTest {
+
+  /** The pattern Email used before it was rewritten by hand. */
+  private static final Pattern EMAIL_PATTERN = Pattern.compile(
+      "[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*"
+          + "@(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+"
+          + "[a-z0-9](?:[a-z0-9-]*[a-z0-9])?", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Characters that exercise every branch of the validator, including non-ASCII characters
+   * that have ASCII case variants (long s and the Kelvin sign).
+   */
+  private static final String ALPHABET = "aZ09.-@_+!~`{ \u00e9\u017f\u212a\u0000";
+
+  @Test
+  public void valid() {
+    assertTrue(Email.isValidEmail("foo@bar.com"));
+    assertTrue(Email.isValidEmail("Foo.Bar@Example.COM"));
+    assertTrue(Email.isValidEmail("a!#$%&'*+/=?^_`{|}~-z@a-1.b2"));
+    assertTrue(Email.isValidEmail("a.b.c@d.e.f"));
+    assertTrue(Email.isValidEmail("a@b--c.d"));
+  }
+
+  @Test
+  public void invalid() {
+    assertFalse(Email.isValidEmail(""));
+    assertFalse(Email.isValidEmail("foo"));
+    assertFalse(Email.isValidEmail("foo@"));
+    assertFalse(Email.isValidEmail("@bar.com"));
+    assertFalse(Email.isValidEmail("foo@bar"));
+    assertFalse(Email.isValidEmail(".foo@bar.com"));
+    assertFalse(Email.isValidEmail("foo.@bar.com"));
+    assertFalse(Email.isValidEmail("foo..bar@bar.com"));
+    assertFalse(Email.isValidEmail("foo@bar..com"));
+    assertFalse(Email.isValidEmail("foo@.bar.com"));
+    assertFalse(Email.isValidEmail("foo@bar.com."));
+    assertFalse(Email.isValidEmail("foo@-bar.com"));
+    assertFalse(Email.isValidEmail("foo@bar-.com"));
+    assertFalse(Email.isValidEmail("foo@bar.com-"));
+    assertFalse(Email.isValidEmail("foo@bar@baz.com"));
+    assertFalse(Email.isValidEmail("f oo@bar.com"));
+    assertFalse(Email.isValidEmail("foo@b_r.com"));
+    assertFalse(Email.isValidEmail("caf\u00e9@bar.com"));
+  }
+
+  /** Compares the validator with the regex on random strings. */
+  @Test
+  public void matchesPattern() {
+    Random random = new Random(0);
+    char[] chars = new char[16];
+    for (int i = 0; i < 200000; i++) {
+      int length = random.nextInt(chars.length);
+      for (int j = 0; j < length; j++) {
+        chars[j] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+      }
+      String email = new String(chars, 0, length);
+      assertEquals(email, EMAIL_PATTERN.matcher(email).matches(), Email.isValidEmail(email));
+    }
+  }
+
+  /** Compares the validator with the regex on mutations of valid addresses. */
+  @Test
+  public void matchesPatternNearValid() {
+    Random random = new Random(0);
+    String[] valid = { "jane.doe+gala@mail.example.com", "a@b.c", "x-y@a-b-c.d-e.f" };
+    for (int i = 0; i < 100000; i++) {
+      StringBuilder email = new StringBuilder(valid[random.nextInt(valid.length)]);
+      for (int mutations = random.nextInt(3) + 1; mutations > 0; mutations--) {
+        int index = random.nextInt(email.length());
+        char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        switch (random.nextInt(3)) {
+          case 0: email.setCharAt(index, c); break;
+          case 1: email.insert(index, c); break;
+          default: email.deleteCharAt(index);
+        }
+        if (email.length() == 0) email.append(c);
+      }
+      String s = email.toString();
+      assertEquals(s, EMAIL_PATTERN.matcher(s).matches(), Email.isValidEmail(s));
+    }
+  }
+}
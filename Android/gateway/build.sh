@@ -0,0 +1,34 @@
+# Builds the terminal URL gateway, which runs on a plain JVM without android.jar.
+#
+# "./build.sh" compiles the core API and the gateway, runs the tests and writes the jar to
+# build/dist. "./build.sh loadtest [seconds per step]" then runs the load test against
+# localhost. Run the gateway with:
+#
+#   java -jar build/dist/square-terminal-gateway-0.2.jar application-id [port]
+
+cd `dirname $0`
+
+NAME=square-terminal-gateway-0.2
+JUNIT=../external/junit-4.10.jar
+
+# Clear and recreate build directory.
+rm -rf build
+mkdir -p build/classes build/test-classes build/loadtest build/dist
+
+# Compile the core API and the gateway. No android.jar.
+javac -g -d build/classes `find ../core/src src -name *.java`
+
+# Compile and run tests.
+javac -g -classpath $JUNIT:build/classes -d build/test-classes `find tests -name *.java`
+java -classpath $JUNIT:build/classes:build/test-classes org.junit.runner.JUnitCore \
+  $(find tests -name \*Test.java | sed 's/tests\///' | sed 's/\.java//' | sed 's/\//./g')
+
+# Generate jar.
+echo "Main-Class: com.squareup.terminal.gateway.Gateway" > build/manifest.txt
+jar cfm build/dist/$NAME.jar build/manifest.txt -C build/classes .
+
+if [ "$1" = "loadtest" ]; then
+  shift
+  javac -g -classpath build/classes -d build/loadtest `find loadtest -name *.java`
+  java -classpath build/classes:build/loadtest com.squareup.terminal.gateway.LoadTest "$@"
+fi
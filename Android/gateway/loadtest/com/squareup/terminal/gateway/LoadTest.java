@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal.gateway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts a gateway on localhost and posts payments to {@code /pay} from a growing number of
+ * client threads over keep-alive connections. Prints requests per second for each number of
+ * clients, from 1 up to twice the number of cores. Clients and server share the cores, so
+ * throughput should grow roughly with the core count and then level off.
+ *
+ * <pre>java com.squareup.terminal.gateway.LoadTest [seconds per step]</pre>
+ */
+public final class LoadTest {
+
+  private static final byte[] BODY = ("{\"amount\": 150, \"currency\": \"USD\", "
+      + "\"description\": \"Coffee\", \"referenceId\": \"order-1234\"}").getBytes();
+
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    int cores = Runtime.getRuntime().availableProcessors();
+
+    Gateway gateway = new Gateway("load-test");
+    InetSocketAddress address =
+        gateway.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    URL url = new URL("http", address.getHostString(), address.getPort(), "/pay");
+    System.out.println("cores: " + cores + ", executor: "
+        + Gateway.newExecutor().getClass().getSimpleName());
+
+    // Warm up.
+    run(url, cores, 2);
+
+    System.out.println("clients  requests/s  speedup");
+    double single = 0;
+    for (int clients = 1; clients <= Math.max(2, cores * 2); clients *= 2) {
+      double rate = run(url, clients, seconds);
+      if (clients == 1) single = rate;
+      System.out.println(String.format("%7d  %10.0f  %7.2f", clients, rate, rate / single));
+    }
+    gateway.stop();
+  }
+
+  /** Runs clients for the given number of seconds and returns requests per second. */
+  private static double run(final URL url, int clients, int seconds) throws Exception {
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicLong requests = new AtomicLong();
+    final CountDownLatch finished = new CountDownLatch(clients);
+    for (int i = 0; i < clients; i++) {
+      new Thread() {
+        @Override public void run() {
+          try {
+            long count = 0;
+            byte[] buffer = new byte[1024];
+            while (!done.get()) {
+              post(url, buffer);
+              count++;
+            }
+            requests.addAndGet(count);
+          } catch (IOException e) {
+            e.printStackTrace();
+          } finally {
+            finished.countDown();
+          }
+        }
+      }.start();
+    }
+    long start = System.nanoTime();
+    Thread.sleep(seconds * 1000L);
+    done.set(true);
+    finished.await();
+    return requests.get() * 1e9 / (System.nanoTime() - start);
+  }
+
+  /** Posts a payment and reads the response so the connection can be reused. */
+  private static void post(URL url, byte[] buffer) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setDoOutput(true);
+    OutputStream out = connection.getOutputStream();
+    out.write(BODY);
+    out.close();
+    if (connection.getResponseCode() != 200) {
+      throw new IOException("Unexpected response: " + connection.getResponseCode());
+    }
+    InputStream in = connection.getInputStream();
+    while (in.read(buffer) != -1) {}
+    in.close();
+  }
+}
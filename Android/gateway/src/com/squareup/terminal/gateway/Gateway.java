@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal.gateway;
+
+import com.squareup.terminal.Callback;
+import com.squareup.terminal.Currency;
+import com.squareup.terminal.Money;
+import com.squareup.terminal.Payment;
+import com.squareup.terminal.TerminalUrl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Embedded HTTP server that turns payments into Terminal API URLs and parses callback URLs,
+ * for QR codes and the web flow. Endpoints:
+ *
+ * <ul>
+ *   <li>{@code POST /pay} takes a payment as JSON, for example
+ *       {@code {"amount": 150, "currency": "USD", "description": "Coffee"}}, and returns
+ *       {@code {"url": "square://terminal/1.0/pay?..."}}. The amount is in the currency's
+ *       smallest unit. Optional fields are {@code description}, {@code defaultEmail},
+ *       {@code defaultPhone}, {@code metadata}, {@code referenceId}, {@code recipient},
+ *       {@code offerReceipt} and {@code callback}, the web flow's callback URL.</li>
+ *   <li>{@code POST /callback} takes the URL that Square opened as plain text and returns
+ *       {@code {"status": ..., "paymentId": ..., "referenceId": ..., "errors": [...]}}.</li>
+ * </ul>
+ *
+ * Malformed requests get a 400 with {@code {"error": ...}} and unexpected failures get a 500.
+ * Handlers don't block, so requests run on virtual threads when the JVM supports them and on
+ * one thread per core otherwise.
+ *
+ * <p>The JDK server writes the headers and the body separately. With Nagle's algorithm on, the
+ * body waits for the client's delayed ACK, which caps a keep-alive connection at about 20
+ * requests per second. So {@link #start} sets the system property {@code
+ * sun.net.httpserver.nodelay} to true unless it's already set. The JDK reads it once, so it has
+ * no effect if another {@code HttpServer} started earlier in the process.
+ */
+public final class Gateway {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /** Largest request body accepted. */
+  private static final int MAX_BODY_SIZE = 16 * 1024;
+
+  private static final Logger logger = Logger.getLogger(Gateway.class.getName());
+
+  /** Disables Nagle's algorithm. See the class doc. */
+  private static final String NODELAY = "sun.net.httpserver.nodelay";
+
+  private final String applicationId;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * @param applicationId application ID assigned by Square Inc., used in every URL
+   * @throws NullPointerException if applicationId is null
+   */
+  public Gateway(String applicationId) {
+    if (applicationId == null) throw new NullPointerException("applicationId");
+    this.applicationId = applicationId;
+  }
+
+  /**
+   * Starts serving on the given address. Pass port 0 to pick a free port.
+   *
+   * @return the address the server is bound to
+   * @throws IllegalStateException if the gateway is already started
+   */
+  public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+    if (server != null) throw new IllegalStateException("already started");
+    if (System.getProperty(NODELAY) == null) System.setProperty(NODELAY, "true");
+    server = HttpServer.create(address, 1024);
+    server.createContext("/pay", new Handler() {
+      @Override String handle(String body) throws ParseException {
+        return pay(body);
+      }
+    });
+    server.createContext("/callback", new Handler() {
+      @Override String handle(String body) throws ParseException {
+        return callback(body);
+      }
+    });
+    executor = newExecutor();
+    server.setExecutor(executor);
+    server.start();
+    return server.getAddress();
+  }
+
+  /** Stops serving and waits up to a second for requests in flight. */
+  public synchronized void stop() throws InterruptedException {
+    if (server == null) return;
+    server.stop(0);
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+    server = null;
+    executor = null;
+  }
+
+  /**
+   * Returns a virtual thread per task executor if the JVM supports virtual threads, or a pool
+   * with one thread per core.
+   */
+  /*package*/ static ExecutorService newExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (Exception e) {
+      return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+  }
+
+  /** Handles {@code /pay}. */
+  /*package*/ String pay(String body) throws ParseException {
+    Map<String, Object> json = Json.parseObject(body);
+    Payment payment = new Payment();
+    payment.amount(new Money(integer(json, "amount"), currency(json)));
+    String description = string(json, "description");
+    if (description != null) payment.description(description);
+    String defaultEmail = string(json, "defaultEmail");
+    if (defaultEmail != null) payment.defaultEmail(defaultEmail);
+    String defaultPhone = string(json, "defaultPhone");
+    if (defaultPhone != null) payment.defaultPhone(defaultPhone);
+    String metadata = string(json, "metadata");
+    if (metadata != null) payment.metadata(metadata);
+    String referenceId = string(json, "referenceId");
+    if (referenceId != null) payment.referenceId(referenceId);
+    String recipient = string(json, "recipient");
+    if (recipient != null) payment.recipient(recipient);
+    Object offerReceipt = json.get("offerReceipt");
+    if (offerReceipt != null) {
+      if (!(offerReceipt instanceof Boolean)) throw new ParseException("offerReceipt", 0);
+      payment.offerReceipt((Boolean) offerReceipt);
+    }
+
+    String callback = string(json, "callback");
+    String url = callback == null
+        ? TerminalUrl.of(payment, applicationId)
+        : TerminalUrl.of(payment, applicationId, callback);
+    StringBuilder out = new StringBuilder(url.length() + 10).append("{\"url\":");
+    return Json.appendString(out, url).append('}').toString();
+  }
+
+  /** Handles {@code /callback}. */
+  /*package*/ String callback(String body) throws ParseException {
+    Callback callback = Callback.parse(body.trim());
+    StringBuilder out = new StringBuilder(128).append("{\"status\":");
+    Json.appendString(out, callback.status()).append(",\"paymentId\":");
+    Json.appendString(out, callback.paymentId()).append(",\"referenceId\":");
+    Json.appendString(out, callback.referenceId()).append(",\"errors\":");
+    return Json.appendArray(out, callback.errors()).append('}').toString();
+  }
+
+  private static long integer(Map<String, Object> json, String name) throws ParseException {
+    Object value = json.get(name);
+    if (!(value instanceof Long)) throw new ParseException(name + " must be an integer", 0);
+    return (Long) value;
+  }
+
+  private static String string(Map<String, Object> json, String name) throws ParseException {
+    Object value = json.get(name);
+    if (value != null && !(value instanceof String)) {
+      throw new ParseException(name + " must be a string", 0);
+    }
+    return (String) value;
+  }
+
+  private static Currency currency(Map<String, Object> json) throws ParseException {
+    String currency = string(json, "currency");
+    if (currency == null) throw new ParseException("currency is required", 0);
+    try {
+      return Currency.valueOf(currency);
+    } catch (IllegalArgumentException e) {
+      throw new ParseException("Unsupported currency: " + currency, 0);
+    }
+  }
+
+  /** Reads a POST body and writes the JSON that {@link #handle} returns. */
+  /*package*/ abstract static class Handler implements HttpHandler {
+    abstract String handle(String body) throws ParseException;
+
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+          exchange.getResponseHeaders().set("Allow", "POST");
+          respond(exchange, 405, error("POST required"));
+          return;
+        }
+        String body = readBody(exchange.getRequestBody());
+        if (body == null) {
+          respond(exchange, 413, error("Request body too large"));
+          return;
+        }
+        String response;
+        try {
+          response = handle(body);
+        } catch (ParseException e) {
+          respond(exchange, 400, error(e.getMessage()));
+          return;
+        } catch (IllegalArgumentException e) {
+          respond(exchange, 400, error(e.getMessage()));
+          return;
+        } catch (RuntimeException e) {
+          // Don't leak details to the client.
+          logger.log(Level.WARNING, "Request to " + exchange.getRequestURI() + " failed", e);
+          respond(exchange, 500, error("Internal server error"));
+          return;
+        }
+        respond(exchange, 200, response);
+      } finally {
+        exchange.close();
+      }
+    }
+
+    /** Returns the body, or null if it's larger than {@link #MAX_BODY_SIZE}. */
+    private static String readBody(InputStream in) throws IOException {
+      ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+      byte[] buffer = new byte[4096];
+      for (int n; (n = in.read(buffer)) != -1; ) {
+        if (body.size() + n > MAX_BODY_SIZE) return null;
+        body.write(buffer, 0, n);
+      }
+      return new String(body.toByteArray(), UTF_8);
+    }
+
+    private static String error(String message) {
+      return Json.appendString(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json)
+        throws IOException {
+      byte[] bytes = json.getBytes(UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+    }
+  }
+
+  /**
+   * Runs a gateway until the process is killed.
+   *
+   * <pre>java com.squareup.terminal.gateway.Gateway application-id [port]</pre>
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: Gateway application-id [port]");
+      System.exit(1);
+    }
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+    InetSocketAddress address = new Gateway(args[0]).start(new InetSocketAddress(port));
+    System.out.println("Listening on " + address);
+  }
+}
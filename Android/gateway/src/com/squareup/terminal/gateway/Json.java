@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal.gateway;
+
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the gateway: parses a flat object whose values are strings, integers,
+ * booleans or null, and writes strings.
+ */
+/*package*/ final class Json {
+
+  private Json() {}
+
+  /**
+   * Parses a flat JSON object. Integers become Longs.
+   *
+   * @throws ParseException if the JSON is malformed, nested or has non-integer numbers
+   */
+  static Map<String, Object> parseObject(CharSequence json) throws ParseException {
+    return new Reader(json).readObject();
+  }
+
+  /** Appends the given string as a quoted JSON string, or null. */
+  static StringBuilder appendString(StringBuilder out, String s) {
+    if (s == null) return out.append("null");
+    out.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"': out.append("\\\""); break;
+        case '\\': out.append("\\\\"); break;
+        case '\n': out.append("\\n"); break;
+        case '\r': out.append("\\r"); break;
+        case '\t': out.append("\\t"); break;
+        default:
+          if (c < 0x20) {
+            out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    return out.append('"');
+  }
+
+  /** Appends the given strings as a JSON array. */
+  static StringBuilder appendArray(StringBuilder out, List<String> strings) {
+    out.append('[');
+    for (int i = 0; i < strings.size(); i++) {
+      if (i > 0) out.append(',');
+      appendString(out, strings.get(i));
+    }
+    return out.append(']');
+  }
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static final class Reader {
+    private final CharSequence json;
+    private int pos;
+
+    Reader(CharSequence json) {
+      this.json = json;
+    }
+
+    Map<String, Object> readObject() throws ParseException {
+      Map<String, Object> object = new LinkedHashMap<String, Object>();
+      expect('{');
+      if (peek() == '}') {
+        pos++;
+      } else {
+        while (true) {
+          expect('"');
+          String name = readString();
+          expect(':');
+          object.put(name, readValue());
+          char c = next();
+          if (c == '}') break;
+          if (c != ',') throw error("Expected ',' or '}'");
+        }
+      }
+      if (peek() != 0) throw error("Unexpected content after object");
+      return object;
+    }
+
+    private Object readValue() throws ParseException {
+      char c = peek();
+      switch (c) {
+        case '"':
+          pos++;
+          return readString();
+        case 't':
+          readLiteral("true");
+          return Boolean.TRUE;
+        case 'f':
+          readLiteral("false");
+          return Boolean.FALSE;
+        case 'n':
+          readLiteral("null");
+          return null;
+        default:
+          if (c == '-' || (c >= '0' && c <= '9')) return readInteger();
+          throw error("Unexpected value");
+      }
+    }
+
+    private void readLiteral(String literal) throws ParseException {
+      for (int i = 0; i < literal.length(); i++, pos++) {
+        if (pos == json.length() || json.charAt(pos) != literal.charAt(i)) {
+          throw error("Expected " + literal);
+        }
+      }
+    }
+
+    private Long readInteger() throws ParseException {
+      int start = pos;
+      if (json.charAt(pos) == '-') pos++;
+      long value = 0;
+      int digits = 0;
+      for (char c; pos < json.length() && (c = json.charAt(pos)) >= '0' && c <= '9'; pos++) {
+        if (++digits > 18) throw error("Integer too large");
+        value = value * 10 + (c - '0');
+      }
+      if (digits == 0) throw error("Expected digits");
+      if (pos < json.length()) {
+        char c = json.charAt(pos);
+        if (c == '.' || c == 'e' || c == 'E') throw error("Expected an integer");
+      }
+      return json.charAt(start) == '-' ? -value : value;
+    }
+
+    /** Reads a string after its opening quote. */
+    private String readString() throws ParseException {
+      StringBuilder s = new StringBuilder();
+      while (true) {
+        if (pos == json.length()) throw error("Unterminated string");
+        char c = json.charAt(pos++);
+        if (c == '"') return s.toString();
+        if (c < 0x20) throw error("Unescaped control character");
+        if (c != '\\') {
+          s.append(c);
+          continue;
+        }
+        if (pos == json.length()) throw error("Unterminated escape");
+        c = json.charAt(pos++);
+        switch (c) {
+          case '"': case '\\': case '/': s.append(c); break;
+          case 'b': s.append('\b'); break;
+          case 'f': s.append('\f'); break;
+          case 'n': s.append('\n'); break;
+          case 'r': s.append('\r'); break;
+          case 't': s.append('\t'); break;
+          case 'u':
+            if (pos + 4 > json.length()) throw error("Unterminated escape");
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+              int digit = Character.digit(json.charAt(pos++), 16);
+              if (digit == -1) throw error("Invalid escape");
+              code = (code << 4) | digit;
+            }
+            s.append((char) code);
+            break;
+          default:
+            throw error("Invalid escape");
+        }
+      }
+    }
+
+    /** Skips whitespace and returns the next char without consuming it, or 0 at the end. */
+    private char peek() {
+      while (pos < json.length()) {
+        char c = json.charAt(pos);
+        if (c != ' ' && c != '\t' && c != '\n' && c != '\r') return c;
+        pos++;
+      }
+      return 0;
+    }
+
+    private char next() throws ParseException {
+      char c = peek();
+      if (c == 0) throw error("Unexpected end");
+      pos++;
+      return c;
+    }
+
+    private void expect(char expected) throws ParseException {
+      if (next() != expected) throw error("Expected '" + expected + "'");
+    }
+
+    private ParseException error(String message) {
+      return new ParseException(message + " at " + pos, pos);
+    }
+  }
+}
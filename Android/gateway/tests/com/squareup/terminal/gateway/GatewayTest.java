@@ -0,0 +1,136 @@
+package com.squareup.terminal.gateway;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.text.ParseException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link Gateway}.
+ */
+public class GatewayTest {
+  private final Gateway gateway = new Gateway("app");
+  private InetSocketAddress address;
+
+  @Before public void setUp() throws IOException {
+    address = gateway.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  @After public void tearDown() throws InterruptedException {
+    gateway.stop();
+  }
+
+  @Test
+  public void testPay() throws IOException {
+    assertEquals("200 {\"url\":\"square://terminal/1.0/pay?amount=1.50&currency=USD&app_id=app"
+        + "&description=Coffee&offer_receipt=false\"}",
+        post("/pay", "{\"amount\": 150, \"currency\": \"USD\", \"description\": \"Coffee\", "
+            + "\"offerReceipt\": false}"));
+  }
+
+  @Test
+  public void testPayWithCallback() throws IOException {
+    assertEquals("200 {\"url\":\"square://terminal/1.0/pay?amount=0.01&currency=CAD"
+        + "&callback=https%3A%2F%2Fexample.com%2Fdone&app_id=app&reference_id=r1"
+        + "&offer_receipt=true\"}",
+        post("/pay", "{\"amount\": 1, \"currency\": \"CAD\", \"referenceId\": \"r1\", "
+            + "\"callback\": \"https://example.com/done\"}"));
+  }
+
+  @Test
+  public void testPayErrors() throws IOException {
+    assertEquals("400 {\"error\":\"amount must be an integer\"}",
+        post("/pay", "{\"currency\": \"USD\"}"));
+    assertEquals("400 {\"error\":\"Unsupported currency: XYZ\"}",
+        post("/pay", "{\"amount\": 1, \"currency\": \"XYZ\"}"));
+    assertEquals(400, status(post("/pay", "{\"amount\": -1, \"currency\": \"USD\"}")));
+    assertEquals(400, status(post("/pay", "not json")));
+  }
+
+  @Test
+  public void testCallback() throws IOException {
+    assertEquals("200 {\"status\":\"error\",\"paymentId\":null,\"referenceId\":\"r1\","
+        + "\"errors\":[\"amount_too_small\",\"x\"]}",
+        post("/callback", "https://example.com/done?square_status=error"
+            + "&square_reference_id=r1&square_errors=amount_too_small%2C%20x\n"));
+    assertEquals(400, status(post("/callback", "https://example.com/done")));
+  }
+
+  @Test
+  public void testRequiresPost() throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url("/pay").openConnection();
+    assertEquals(405, connection.getResponseCode());
+    connection.getErrorStream().close();
+  }
+
+  @Test
+  public void testUnexpectedErrors() throws IOException {
+    HttpServer server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/fail", new Gateway.Handler() {
+      @Override String handle(String body) {
+        throw new IllegalStateException("secret");
+      }
+    });
+    server.start();
+    try {
+      URL url = new URL("http", address.getHostString(), server.getAddress().getPort(), "/fail");
+      assertEquals("500 {\"error\":\"Internal server error\"}", post(url, "{}"));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testDirectCalls() throws ParseException {
+    assertEquals("{\"status\":\"successful\",\"paymentId\":\"p\",\"referenceId\":null,"
+        + "\"errors\":[]}",
+        gateway.callback("x:?square_status=successful&square_payment_id=p"));
+    try {
+      gateway.pay("{\"amount\": 1, \"currency\": \"USD\", \"offerReceipt\": \"no\"}");
+      fail();
+    } catch (ParseException expected) {
+    }
+  }
+
+  private URL url(String path) throws IOException {
+    return new URL("http", address.getHostString(), address.getPort(), path);
+  }
+
+  private static int status(String response) {
+    return Integer.parseInt(response.substring(0, 3));
+  }
+
+  /** Returns the status code and body, separated by a space. */
+  private String post(String path, String body) throws IOException {
+    return post(url(path), body);
+  }
+
+  private static String post(URL url, String body) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setDoOutput(true);
+    OutputStream out = connection.getOutputStream();
+    out.write(body.getBytes("UTF-8"));
+    out.close();
+    int status = connection.getResponseCode();
+    InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    for (int n; (n = in.read(buffer)) != -1; ) response.write(buffer, 0, n);
+    in.close();
+    return status + " " + response.toString("UTF-8");
+  }
+}
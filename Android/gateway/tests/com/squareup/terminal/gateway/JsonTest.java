@@ -0,0 +1,58 @@
+package com.squareup.terminal.gateway;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link Json}.
+ */
+public class JsonTest {
+  @Test
+  public void testParseObject() throws ParseException {
+    Map<String, Object> json = Json.parseObject(
+        " { \"a\" : \"b\\\"\\u00e9\\n\", \"n\": -150, \"t\": true, \"f\": false, \"z\": null } ");
+    assertEquals("b\"\u00e9\n", json.get("a"));
+    assertEquals(-150L, json.get("n"));
+    assertEquals(Boolean.TRUE, json.get("t"));
+    assertEquals(Boolean.FALSE, json.get("f"));
+    assertTrue(json.containsKey("z"));
+    assertNull(json.get("z"));
+  }
+
+  @Test
+  public void testEmptyObject() throws ParseException {
+    assertTrue(Json.parseObject("{}").isEmpty());
+  }
+
+  @Test
+  public void testMalformed() {
+    String[] malformed = {
+        "", "[]", "{", "{\"a\"}", "{\"a\":1,}", "{\"a\":1.5}", "{\"a\":{}}", "{\"a\":tru}",
+        "{\"a\":\"b}", "{} x", "{\"a\":12345678901234567890}"
+    };
+    for (String json : malformed) {
+      try {
+        Json.parseObject(json);
+        fail(json);
+      } catch (ParseException expected) {
+      }
+    }
+  }
+
+  @Test
+  public void testAppendString() {
+    assertEquals("\"a\\\"b\\\\c\\n\\u0001\u00e9\"",
+        Json.appendString(new StringBuilder(), "a\"b\\c\n\u0001\u00e9").toString());
+    assertEquals("null", Json.appendString(new StringBuilder(), null).toString());
+    assertEquals("[\"a\",\"b\"]",
+        Json.appendArray(new StringBuilder(), Arrays.asList("a", "b")).toString());
+  }
+}
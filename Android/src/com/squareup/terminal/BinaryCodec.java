@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * Compact binary format for archiving {@link Payment}s and {@link Response}s. Reads and writes
+ * go directly to and from a caller-supplied {@link ByteBuffer}, starting at its position.
+ *
+ * <p>Each record starts with a magic byte and a byte that holds the format version and record
+ * type. A varint bitmask of the fields that are present comes next, followed by those fields in
+ * order. Amounts are unsigned varints, currencies are {@link Currency} ordinals, and strings
+ * are UTF-8 with a varint byte length in front. Each error is a varint: 0 is followed by an
+ * unknown code's string, 1 is a null code, and known codes are their index in the error code
+ * registry plus 2.
+ *
+ * <p>Readers accept any version up to {@link #VERSION}. New fields must go at the end, behind a
+ * new presence bit, and must bump the version.
+ */
+public final class BinaryCodec {
+
+  private BinaryCodec() {}
+
+  /** Current format version, 1-15. */
+  public static final int VERSION = 1;
+
+  private static final byte MAGIC = 'S';
+
+  private static final int TYPE_PAYMENT = 1;
+  private static final int TYPE_RESPONSE = 2;
+
+  // Payment presence bits.
+  private static final int AMOUNT = 1;
+  private static final int DEFAULT_EMAIL = 1 << 1;
+  private static final int DEFAULT_PHONE = 1 << 2;
+  private static final int DESCRIPTION = 1 << 3;
+  private static final int METADATA = 1 << 4;
+  private static final int REFERENCE_ID = 1 << 5;
+  private static final int RECIPIENT = 1 << 6;
+  /** Set if the payment shouldn't offer a receipt. */
+  private static final int NO_RECEIPT = 1 << 7;
+
+  // Response presence bits.
+  private static final int PAYMENT_ID = 1;
+  private static final int RESPONSE_REFERENCE_ID = 1 << 1;
+  private static final int ERRORS = 1 << 2;
+
+  // Error markers. Known codes follow the markers.
+  private static final int UNKNOWN_ERROR = 0;
+  private static final int NULL_ERROR = 1;
+  private static final int KNOWN_ERROR_BASE = 2;
+
+  /** Magic, version and type. The presence bits follow. */
+  private static final int HEADER_SIZE = 2;
+
+  private static final char REPLACEMENT = '\ufffd';
+
+  /** Returns the number of bytes {@link #write(Payment, ByteBuffer)} will write. */
+  public static int encodedLength(Payment payment) {
+    int length = HEADER_SIZE + varintLength(presence(payment));
+    Money amount = payment.amount();
+    if (amount != null) length += 1 + varintLength(amount.amount());
+    length += stringLength(payment.defaultEmail());
+    length += stringLength(payment.defaultPhone());
+    length += stringLength(payment.description());
+    length += stringLength(payment.metadata());
+    length += stringLength(payment.referenceId());
+    length += stringLength(payment.recipient());
+    return length;
+  }
+
+  /**
+   * Writes the given payment to the buffer, starting at its position. Use {@link
+   * #encodedLength(Payment)} to size the buffer.
+   *
+   * @throws BufferOverflowException if the buffer doesn't have enough space, in which case
+   *  the buffer's contents and position are undefined
+   * @throws NullPointerException if payment or buffer is null
+   */
+  public static void write(Payment payment, ByteBuffer buffer) {
+    writeHeader(buffer, TYPE_PAYMENT, presence(payment));
+    Money amount = payment.amount();
+    if (amount != null) {
+      buffer.put((byte) amount.currency().ordinal());
+      writeVarint(buffer, amount.amount());
+    }
+    writeString(buffer, payment.defaultEmail());
+    writeString(buffer, payment.defaultPhone());
+    writeString(buffer, payment.description());
+    writeString(buffer, payment.metadata());
+    writeString(buffer, payment.referenceId());
+    writeString(buffer, payment.recipient());
+  }
+
+  private static int presence(Payment payment) {
+    int present = 0;
+    if (payment.amount() != null) present |= AMOUNT;
+    if (payment.defaultEmail() != null) present |= DEFAULT_EMAIL;
+    if (payment.defaultPhone() != null) present |= DEFAULT_PHONE;
+    if (payment.description() != null) present |= DESCRIPTION;
+    if (payment.metadata() != null) present |= METADATA;
+    if (payment.referenceId() != null) present |= REFERENCE_ID;
+    if (payment.recipient() != null) present |= RECIPIENT;
+    if (!payment.offerReceipt()) present |= NO_RECEIPT;
+    return present;
+  }
+
+  /**
+   * Reads a payment from the buffer, starting at its position, and advances the position past
+   * it.
+   *
+   * @throws ParseException if the data isn't a valid payment or is truncated, in which case
+   *  the buffer's position is undefined. The error offset is the buffer position.
+   * @throws NullPointerException if buffer is null
+   */
+  public static Payment readPayment(ByteBuffer buffer) throws ParseException {
+    readHeader(buffer, TYPE_PAYMENT);
+    int present = readPresence(buffer);
+    Payment payment = new Payment();
+    int offset = buffer.position();
+    try {
+      if ((present & AMOUNT) != 0) {
+        int ordinal = readByte(buffer) & 0xff;
+        Currency[] currencies = Currency.values();
+        if (ordinal >= currencies.length) throw new ParseException("Unknown currency", offset);
+        payment.amount(new Money(readVarint(buffer), currencies[ordinal]));
+      }
+      if ((present & DEFAULT_EMAIL) != 0) payment.defaultEmail(readString(buffer));
+      if ((present & DEFAULT_PHONE) != 0) payment.defaultPhone(readString(buffer));
+      if ((present & DESCRIPTION) != 0) payment.description(readString(buffer));
+      if ((present & METADATA) != 0) payment.metadata(readString(buffer));
+      if ((present & REFERENCE_ID) != 0) payment.referenceId(readString(buffer));
+      if ((present & RECIPIENT) != 0) payment.recipient(readString(buffer));
+      if ((present & NO_RECEIPT) != 0) payment.offerReceipt(false);
+    } catch (IllegalArgumentException e) {
+      // The payment rejected a value.
+      ParseException pe = new ParseException(e.getMessage(), offset);
+      pe.initCause(e);
+      throw pe;
+    }
+    return payment;
+  }
+
+  /** Returns the number of bytes {@link #write(Response, ByteBuffer)} will write. */
+  public static int encodedLength(Response response) {
+    // Response presence bits fit in one byte.
+    int length = HEADER_SIZE + 1;
+    length += stringLength(response.paymentId());
+    length += stringLength(response.referenceId());
+    int errorCount = response.errorCount();
+    if (errorCount > 0) {
+      length += varintLength(errorCount);
+      for (int i = 0; i < errorCount; i++) {
+        int code = response.errorCode(i);
+        // A null code is just the marker.
+        length += code == -1 ? 1 + stringLength(response.error(i))
+            : varintLength(code + KNOWN_ERROR_BASE);
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Writes the given response to the buffer, starting at its position. Use {@link
+   * #encodedLength(Response)} to size the buffer.
+   *
+   * @throws BufferOverflowException if the buffer doesn't have enough space, in which case
+   *  the buffer's contents and position are undefined
+   * @throws NullPointerException if response or buffer is null
+   */
+  public static void write(Response response, ByteBuffer buffer) {
+    String paymentId = response.paymentId();
+    String referenceId = response.referenceId();
+    int errorCount = response.errorCount();
+
+    int present = 0;
+    if (paymentId != null) present |= PAYMENT_ID;
+    if (referenceId != null) present |= RESPONSE_REFERENCE_ID;
+    if (errorCount > 0) present |= ERRORS;
+
+    writeHeader(buffer, TYPE_RESPONSE, present);
+    writeString(buffer, paymentId);
+    writeString(buffer, referenceId);
+    if (errorCount > 0) {
+      writeVarint(buffer, errorCount);
+      for (int i = 0; i < errorCount; i++) {
+        int code = response.errorCode(i);
+        if (code == -1) {
+          String error = response.error(i);
+          buffer.put((byte) (error == null ? NULL_ERROR : UNKNOWN_ERROR));
+          writeString(buffer, error);
+        } else {
+          writeVarint(buffer, code + KNOWN_ERROR_BASE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a response from the buffer, starting at its position, and advances the position past
+   * it.
+   *
+   * @throws ParseException if the data isn't a valid response or is truncated, in which case
+   *  the buffer's position is undefined. The error offset is the buffer position.
+   * @throws NullPointerException if buffer is null
+   */
+  public static Response readResponse(ByteBuffer buffer) throws ParseException {
+    readHeader(buffer, TYPE_RESPONSE);
+    int present = readPresence(buffer);
+    String paymentId = (present & PAYMENT_ID) != 0 ? readString(buffer) : null;
+    String referenceId = (present & RESPONSE_REFERENCE_ID) != 0 ? readString(buffer) : null;
+    if ((present & ERRORS) == 0) return new Response(paymentId, referenceId, null, null);
+
+    int offset = buffer.position();
+    long count = readVarint(buffer);
+    // Each error takes at least one byte.
+    if (count == 0 || count > buffer.remaining()) {
+      throw new ParseException("Invalid error count", offset);
+    }
+
+    int[] errorCodes = new int[(int) count];
+    String[] unknownErrors = null;
+    int unknownCount = 0;
+    for (int i = 0; i < errorCodes.length; i++) {
+      offset = buffer.position();
+      long marker = readVarint(buffer);
+      if (marker < KNOWN_ERROR_BASE) {
+        // Unknown and null codes are both stored as unknown errors.
+        if (unknownErrors == null) unknownErrors = new String[errorCodes.length - i];
+        unknownErrors[unknownCount] = marker == UNKNOWN_ERROR ? readString(buffer) : null;
+        errorCodes[i] = -1 - unknownCount++;
+      } else if (marker - KNOWN_ERROR_BASE < ErrorCode.CODES.length) {
+        errorCodes[i] = (int) (marker - KNOWN_ERROR_BASE);
+      } else {
+        throw new ParseException("Unknown error code", offset);
+      }
+    }
+    return new Response(paymentId, referenceId, errorCodes, unknownErrors);
+  }
+
+  private static void writeHeader(ByteBuffer buffer, int type, int present) {
+    buffer.put(MAGIC).put((byte) (VERSION << 4 | type));
+    writeVarint(buffer, present);
+  }
+
+  /** Reads the magic, version and type. */
+  private static void readHeader(ByteBuffer buffer, int type) throws ParseException {
+    int offset = buffer.position();
+    if (readByte(buffer) != MAGIC) throw new ParseException("Bad magic", offset);
+    int versionAndType = readByte(buffer) & 0xff;
+    int version = versionAndType >>> 4;
+    if (version == 0 || version > VERSION) {
+      throw new ParseException("Unsupported version: " + version, offset + 1);
+    }
+    if ((versionAndType & 0xf) != type) {
+      throw new ParseException("Unexpected type: " + (versionAndType & 0xf), offset + 1);
+    }
+  }
+
+  private static int readPresence(ByteBuffer buffer) throws ParseException {
+    int offset = buffer.position();
+    long present = readVarint(buffer);
+    if (present > Integer.MAX_VALUE) throw new ParseException("Too many presence bits", offset);
+    return (int) present;
+  }
+
+  private static byte readByte(ByteBuffer buffer) throws ParseException {
+    if (!buffer.hasRemaining()) throw truncated(buffer);
+    return buffer.get();
+  }
+
+  private static ParseException truncated(ByteBuffer buffer) {
+    return new ParseException("Truncated", buffer.position());
+  }
+
+  private static int varintLength(long value) {
+    int length = 1;
+    while ((value >>>= 7) != 0) length++;
+    return length;
+  }
+
+  /** Writes an unsigned LEB128 varint. */
+  private static void writeVarint(ByteBuffer buffer, long value) {
+    while ((value & ~0x7fL) != 0) {
+      buffer.put((byte) (value | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  /** Reads a non-negative varint. */
+  private static long readVarint(ByteBuffer buffer) throws ParseException {
+    int offset = buffer.position();
+    long value = 0;
+    for (int shift = 0; shift < 63; shift += 7) {
+      byte b = readByte(buffer);
+      value |= (long) (b & 0x7f) << shift;
+      if (b >= 0) return value;
+    }
+    throw new ParseException("Varint too long", offset);
+  }
+
+  /** Returns the encoded length of an optional string, or 0 if it's null. */
+  private static int stringLength(String s) {
+    if (s == null) return 0;
+    int length = utf8Length(s);
+    return varintLength(length) + length;
+  }
+
+  /**
+   * Returns the number of bytes in the UTF-8 encoding of s. Unpaired surrogates are encoded as
+   * '?', like {@link String#getBytes(String)} does.
+   */
+  private static int utf8Length(String s) {
+    int length = s.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) continue;
+      if (c < 0x800) {
+        bytes++;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        // 4 bytes for 2 chars.
+        bytes += 2;
+        i++;
+      } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+        // Unpaired surrogate.
+      } else {
+        bytes += 2;
+      }
+    }
+    return bytes;
+  }
+
+  /** Writes an optional string. Does nothing if it's null. */
+  private static void writeString(ByteBuffer buffer, String s) {
+    if (s == null) return;
+    int utf8Length = utf8Length(s);
+    writeVarint(buffer, utf8Length);
+    if (buffer.remaining() < utf8Length) throw new BufferOverflowException();
+
+    if (buffer.hasArray()) {
+      // Encode straight into the backing array.
+      int position = buffer.position();
+      encodeUtf8(s, buffer.array(), buffer.arrayOffset() + position);
+      buffer.position(position + utf8Length);
+    } else {
+      byte[] bytes = new byte[utf8Length];
+      encodeUtf8(s, bytes, 0);
+      buffer.put(bytes);
+    }
+  }
+
+  /** Encodes s as UTF-8 into bytes at the given offset. See {@link #utf8Length}. */
+  private static void encodeUtf8(String s, byte[] bytes, int offset) {
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        bytes[offset++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[offset++] = (byte) (0xc0 | c >> 6);
+        bytes[offset++] = (byte) (0x80 | c & 0x3f);
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(++i));
+        bytes[offset++] = (byte) (0xf0 | codePoint >> 18);
+        bytes[offset++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+        bytes[offset++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+        bytes[offset++] = (byte) (0x80 | codePoint & 0x3f);
+      } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+        bytes[offset++] = '?';
+      } else {
+        bytes[offset++] = (byte) (0xe0 | c >> 12);
+        bytes[offset++] = (byte) (0x80 | c >> 6 & 0x3f);
+        bytes[offset++] = (byte) (0x80 | c & 0x3f);
+      }
+    }
+  }
+
+  /**
+   * Reads a string. Malformed UTF-8 sequences decode to U+FFFD, matching {@link
+   * QueryDecoder}.
+   */
+  private static String readString(ByteBuffer buffer) throws ParseException {
+    int offset = buffer.position();
+    long length = readVarint(buffer);
+    if (length > buffer.remaining()) throw new ParseException("Truncated string", offset);
+    int end = buffer.position() + (int) length;
+
+    // UTF-8 never needs more chars than bytes.
+    char[] chars = new char[(int) length];
+    int count = 0;
+    int i = buffer.position();
+    while (i < end) {
+      int b = buffer.get(i++) & 0xff;
+      if (b < 0x80) {
+        chars[count++] = (char) b;
+        continue;
+      }
+
+      int extra;
+      int codePoint;
+      int min;
+      if (b >= 0xc2 && b <= 0xdf) {
+        extra = 1;
+        codePoint = b & 0x1f;
+        min = 0x80;
+      } else if (b >= 0xe0 && b <= 0xef) {
+        extra = 2;
+        codePoint = b & 0x0f;
+        min = 0x800;
+      } else if (b >= 0xf0 && b <= 0xf4) {
+        extra = 3;
+        codePoint = b & 0x07;
+        min = 0x10000;
+      } else {
+        chars[count++] = REPLACEMENT;
+        continue;
+      }
+
+      int j = i;
+      while (j < i + extra && j < end && (buffer.get(j) & 0xc0) == 0x80) {
+        codePoint = codePoint << 6 | buffer.get(j++) & 0x3f;
+      }
+      if (j < i + extra || codePoint < min || codePoint > Character.MAX_CODE_POINT
+          || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+        // Skip the valid continuation bytes and emit one replacement character.
+        chars[count++] = REPLACEMENT;
+        i = j;
+        continue;
+      }
+      i = j;
+
+      if (codePoint >= 0x10000) {
+        codePoint -= 0x10000;
+        chars[count++] = (char) (0xd800 + (codePoint >>> 10));
+        chars[count++] = (char) (0xdc00 + (codePoint & 0x3ff));
+      } else {
+        chars[count++] = (char) codePoint;
+      }
+    }
+    buffer.position(end);
+    return new String(chars, 0, count);
+  }
+}
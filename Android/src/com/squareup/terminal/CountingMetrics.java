@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free {@link Metrics} that keeps counters and histograms in memory. Recording never
+ * locks or allocates, so it's cheap enough to leave on in production. Read the values
+ * whenever you want to report them.
+ */
+public final class CountingMetrics implements Metrics {
+
+  private static final String[] STATUSES = {
+      Response.STATUS_SUCCESSFUL, Response.STATUS_ERROR, Response.STATUS_CANCELLED
+  };
+
+  private final Histogram encodeNanos = new Histogram();
+  private final Histogram urlLengths = new Histogram();
+  private final Histogram latencyNanos = new Histogram();
+  private final AtomicLong unknownLatencies = new AtomicLong();
+  private final AtomicLongArray statusCounts = new AtomicLongArray(STATUSES.length);
+
+  /** Indexed like {@link ErrorCode#CODES}. The last element counts unknown codes. */
+  private final AtomicLongArray errorCounts = new AtomicLongArray(ErrorCode.CODES.length + 1);
+
+  public void requestEncoded(long encodeNanos, int urlLength) {
+    this.encodeNanos.record(encodeNanos);
+    urlLengths.record(urlLength);
+  }
+
+  public void resultReceived(int requestCode, long latencyNanos, String status) {
+    if (latencyNanos < 0) {
+      unknownLatencies.incrementAndGet();
+    } else {
+      this.latencyNanos.record(latencyNanos);
+    }
+    for (int i = 0; i < STATUSES.length; i++) {
+      if (STATUSES[i].equals(status)) {
+        statusCounts.incrementAndGet(i);
+        break;
+      }
+    }
+  }
+
+  public void resultError(String errorCode) {
+    int index = ErrorCode.indexOf(errorCode);
+    errorCounts.incrementAndGet(index == -1 ? ErrorCode.CODES.length : index);
+  }
+
+  /** Returns the distribution of time spent encoding requests, in nanoseconds. */
+  public Histogram encodeNanos() {
+    return encodeNanos;
+  }
+
+  /** Returns the distribution of request URL lengths. */
+  public Histogram urlLengths() {
+    return urlLengths;
+  }
+
+  /** Returns the distribution of request-to-result latencies, in nanoseconds. */
+  public Histogram latencyNanos() {
+    return latencyNanos;
+  }
+
+  /** Returns the number of results whose latency was unknown. */
+  public long unknownLatencies() {
+    return unknownLatencies.get();
+  }
+
+  /**
+   * Returns the number of results with the given status.
+   *
+   * @param status {@link Response#STATUS_SUCCESSFUL}, {@link Response#STATUS_ERROR} or {@link
+   *  Response#STATUS_CANCELLED}
+   */
+  public long statusCount(String status) {
+    for (int i = 0; i < STATUSES.length; i++) {
+      if (STATUSES[i].equals(status)) return statusCounts.get(i);
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the number of times the given error code was returned. Codes that Square added
+   * after this version of the API are counted together under any unknown code.
+   */
+  public long errorCount(String errorCode) {
+    int index = ErrorCode.indexOf(errorCode);
+    return errorCounts.get(index == -1 ? ErrorCode.CODES.length : index);
+  }
+
+  /**
+   * Lock-free histogram with a fixed bucket for each power of two. Bucket 0 counts zeros
+   * and negative values, and bucket {@code i > 0} counts values in {@code [2^(i-1), 2^i)}.
+   */
+  public static final class Histogram {
+
+    /** Number of buckets. */
+    public static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    Histogram() {}
+
+    void record(long value) {
+      if (value < 0) value = 0;
+      counts.incrementAndGet(bucket(value));
+      count.incrementAndGet();
+      sum.addAndGet(value);
+    }
+
+    static int bucket(long value) {
+      return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /** Returns the number of recorded values. */
+    public long count() {
+      return count.get();
+    }
+
+    /** Returns the sum of the recorded values. */
+    public long sum() {
+      return sum.get();
+    }
+
+    /** Returns the number of values in the given bucket. */
+    public long bucketCount(int bucket) {
+      return counts.get(bucket);
+    }
+
+    /** Returns the smallest value that falls into the given bucket. */
+    public static long bucketLowerBound(int bucket) {
+      return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    /**
+     * Returns an upper bound for the given quantile: the exclusive upper bound of the bucket
+     * that holds the value at that rank. Returns 0 if nothing has been recorded.
+     *
+     * @param quantile between 0 and 1
+     * @throws IllegalArgumentException if quantile is out of range
+     */
+    public long quantileUpperBound(double quantile) {
+      if (!(quantile >= 0 && quantile <= 1)) {
+        throw new IllegalArgumentException("quantile: " + quantile);
+      }
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+      if (total == 0) return 0;
+
+      long rank = Math.max(1, (long) Math.ceil(quantile * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS - 1; i++) {
+        seen += counts.get(i);
+        if (seen >= rank) return bucketLowerBound(i + 1);
+      }
+      return Long.MAX_VALUE;
+    }
+  }
+}
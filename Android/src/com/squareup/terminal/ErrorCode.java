@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+/**
+ * Registry of the error codes that Square returns, so responses can store small ints instead
+ * of Strings. Codes that aren't listed here are still carried as Strings.
+ */
+/*package*/ final class ErrorCode {
+
+  private ErrorCode() {}
+
+  /** Known error codes. A code's index in this array is its int value. Append only. */
+  static final String[] CODES = {
+      "amount_missing",
+      "amount_invalid_format",
+      "amount_too_small",
+      "amount_too_large",
+      "app_id_invalid",
+      "app_id_missing",
+      "currency_missing",
+      "currency_not_supported",
+      "description_too_long",
+      "metadata_too_long",
+      "reference_id_too_long",
+      "to_invalid_recipient"
+  };
+
+  /** Returns the int value of the given code or -1 if the code is unknown or null. */
+  static int indexOf(String code) {
+    if (code == null) return -1;
+    for (int i = 0; i < CODES.length; i++) {
+      if (CODES[i].equals(code)) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the int value of the code in {@code chars[start..end)} or -1 if the code is
+   * unknown. Doesn't allocate.
+   */
+  static int indexOf(CharSequence chars, int start, int end) {
+    int length = end - start;
+    outer:
+    for (int i = 0; i < CODES.length; i++) {
+      String code = CODES[i];
+      if (code.length() != length) continue;
+      for (int j = 0; j < length; j++) {
+        if (chars.charAt(start + j) != code.charAt(j)) continue outer;
+      }
+      return i;
+    }
+    return -1;
+  }
+}
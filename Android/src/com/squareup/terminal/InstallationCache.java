@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide cache for values that {@link Square} looks up through the package manager. Each
+ * lookup is a Binder round trip, and apps check the installation status before every payment.
+ * Installing, replacing or removing any package invalidates the cache, and entries can also
+ * expire after a {@linkplain #ttl(long) TTL}.
+ *
+ * <p>Reads are a couple of volatile loads. Two threads that miss at the same time may both
+ * load the value; that's harmless.
+ */
+/*package*/ class InstallationCache {
+
+  /** The cache shared by every {@link Square} in this process. */
+  static final InstallationCache INSTANCE = new InstallationCache();
+
+  /** Loads a value on a cache miss. */
+  interface Loader<T> {
+    T load();
+  }
+
+  /** Incremented on every package change. Entries from older generations are stale. */
+  private final AtomicInteger generation = new AtomicInteger();
+
+  private final AtomicBoolean registered = new AtomicBoolean();
+
+  /**
+   * Entry lifetime in nanoseconds. {@link Long#MAX_VALUE} keeps entries until a package
+   * changes, and 0 disables caching.
+   */
+  private volatile long ttlNanos = Long.MAX_VALUE;
+
+  private volatile Entry<Square.InstallationStatus> installationStatus;
+  private volatile Entry<Intent> marketIntent;
+
+  /*package*/ InstallationCache() {}
+
+  /**
+   * Sets the entry lifetime. {@link Long#MAX_VALUE}, the default, keeps entries until a package
+   * changes, and 0 disables caching.
+   */
+  void ttl(long nanos) {
+    if (nanos < 0) throw new IllegalArgumentException("ttl < 0");
+    ttlNanos = nanos;
+    invalidate();
+  }
+
+  /** Discards all entries. */
+  void invalidate() {
+    generation.incrementAndGet();
+  }
+
+  Square.InstallationStatus installationStatus(Context context,
+      Loader<Square.InstallationStatus> loader) {
+    return installationStatus(context, loader, System.nanoTime());
+  }
+
+  Square.InstallationStatus installationStatus(Context context,
+      Loader<Square.InstallationStatus> loader, long nanoTime) {
+    Entry<Square.InstallationStatus> entry = installationStatus;
+    if (entry != null && entry.isFresh(nanoTime)) return entry.value;
+    installationStatus = entry = load(context, loader, nanoTime);
+    return entry.value;
+  }
+
+  /** Returns the market intent, which may be null if the device doesn't support one. */
+  Intent marketIntent(Context context, Loader<Intent> loader) {
+    return marketIntent(context, loader, System.nanoTime());
+  }
+
+  Intent marketIntent(Context context, Loader<Intent> loader, long nanoTime) {
+    Entry<Intent> entry = marketIntent;
+    if (entry != null && entry.isFresh(nanoTime)) return entry.value;
+    marketIntent = entry = load(context, loader, nanoTime);
+    return entry.value;
+  }
+
+  private <T> Entry<T> load(Context context, Loader<T> loader, long nanoTime) {
+    if (!registered.get() && registered.compareAndSet(false, true)) registerReceiver(context);
+
+    // Read the generation first so an invalidation during the load marks the entry stale.
+    int generation = this.generation.get();
+    return new Entry<T>(loader.load(), generation, nanoTime, ttlNanos);
+  }
+
+  /**
+   * Listens for package changes. Called once, before the first load. Tests override this
+   * because receivers require the Android runtime.
+   */
+  void registerReceiver(Context context) {
+    IntentFilter filter = new IntentFilter();
+    filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+    filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+    filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+    filter.addDataScheme("package");
+
+    // Register with the application so the receiver outlives the calling activity.
+    context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+      @Override public void onReceive(Context context, Intent intent) {
+        // Any package can change the status. For example, installing the Market changes how
+        // we resolve the market intent.
+        invalidate();
+      }
+    }, filter);
+  }
+
+  private class Entry<T> {
+    final T value;
+    final int generation;
+    final long loadTime;
+    final long ttl;
+
+    Entry(T value, int generation, long loadTime, long ttl) {
+      this.value = value;
+      this.generation = generation;
+      this.loadTime = loadTime;
+      this.ttl = ttl;
+    }
+
+    boolean isFresh(long nanoTime) {
+      // Compare elapsed time rather than an expiration time so MAX_VALUE can't overflow.
+      return generation == InstallationCache.this.generation.get() && nanoTime - loadTime < ttl;
+    }
+  }
+}
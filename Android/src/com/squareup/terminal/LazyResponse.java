@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+/**
+ * Response that decodes each field from its source the first time it's accessed and caches the
+ * result. Checking {@link #paymentId()} or {@link #hasErrors()} on a successful response
+ * allocates nothing beyond the response itself. Error codes are looked up in
+ * {@link ErrorCode#CODES} only when asked for.
+ */
+/*package*/ abstract class LazyResponse extends Response {
+
+  private static final String[] NO_ERRORS = new String[0];
+
+  private String paymentId;
+  private String referenceId;
+  private String[] errors;
+  private boolean paymentIdLoaded;
+  private boolean referenceIdLoaded;
+
+  /** Returns the string extra with the given name, or null if there isn't one. */
+  /*package*/ abstract String stringExtra(String name);
+
+  /** Returns the string array extra with the given name, or null if there isn't one. */
+  /*package*/ abstract String[] stringArrayExtra(String name);
+
+  @Override public synchronized String paymentId() {
+    if (!paymentIdLoaded) {
+      paymentId = stringExtra(PAYMENT_ID);
+      paymentIdLoaded = true;
+    }
+    return paymentId;
+  }
+
+  @Override public synchronized String referenceId() {
+    if (!referenceIdLoaded) {
+      referenceId = stringExtra(REFERENCE_ID);
+      referenceIdLoaded = true;
+    }
+    return referenceId;
+  }
+
+  /** Returns the error array. Don't modify it. */
+  private synchronized String[] errorArray() {
+    String[] errors = this.errors;
+    if (errors == null) {
+      errors = stringArrayExtra(ERRORS);
+      this.errors = errors = errors == null ? NO_ERRORS : errors;
+    }
+    return errors;
+  }
+
+  @Override public int errorCount() {
+    return errorArray().length;
+  }
+
+  @Override /*package*/ String error(int index) {
+    return errorArray()[index];
+  }
+
+  @Override /*package*/ int errorCode(int index) {
+    return ErrorCode.indexOf(error(index));
+  }
+}
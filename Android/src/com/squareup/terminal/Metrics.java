@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+/**
+ * Receives timings and counts from the payment request path. Install an implementation with
+ * {@link Square#metrics(Metrics)}; {@link CountingMetrics} is a ready-made one. The default
+ * is {@link #NONE}.
+ *
+ * <p>Methods are called on the thread that requests or encodes the payment, often the UI
+ * thread, so implementations should be fast, thread safe and avoid allocating.
+ */
+public interface Metrics {
+
+  /**
+   * Called after a payment request is encoded.
+   *
+   * @param encodeNanos time spent building the request URL
+   * @param urlLength length of the request URL
+   */
+  void requestEncoded(long encodeNanos, int urlLength);
+
+  /**
+   * Called when {@link Square#response} receives a result.
+   *
+   * @param requestCode that was passed to {@code Square.request()}
+   * @param latencyNanos time between starting Square and receiving the result, or -1 if
+   *  unknown, e.g. because the process was restarted in between
+   * @param status {@link Response#STATUS_SUCCESSFUL}, {@link Response#STATUS_ERROR} or {@link
+   *  Response#STATUS_CANCELLED}
+   */
+  void resultReceived(int requestCode, long latencyNanos, String status);
+
+  /** Called by {@link Square#response} once for each error code in a result. */
+  void resultError(String errorCode);
+
+  /** Ignores everything. */
+  Metrics NONE = new Metrics() {
+    public void requestEncoded(long encodeNanos, int urlLength) {}
+    public void resultReceived(int requestCode, long latencyNanos, String status) {}
+    public void resultError(String errorCode) {}
+  };
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import android.content.Intent;
+import android.net.Uri;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Payments that are validated and encoded in the background, in parallel, so the UI thread
+ * only has to start the activity. Create a batch with {@link Square#prepare(List)} and request
+ * its payments with {@link Square#request(PaymentBatch, int, int)}. Results are in the same
+ * order as the payments passed to {@code prepare()}. An invalid payment doesn't affect the rest
+ * of the batch; check for it with {@link #error(int)}.
+ *
+ * <p>This class is thread safe.
+ */
+public final class PaymentBatch {
+
+  private final List<FutureTask<Intent>> tasks;
+
+  /** Validates and encodes a single payment. */
+  /*package*/ interface Encoder {
+    Intent encode(Payment payment);
+  }
+
+  /*package*/ PaymentBatch(List<Payment> payments, final String applicationId,
+      final boolean compressMetadata, Executor executor) {
+    this(payments, executor, new Encoder() {
+      public Intent encode(Payment payment) {
+        return Square.newIntent(payment, applicationId, compressMetadata);
+      }
+    });
+  }
+
+  /** Tests use this to encode payments without the Android runtime. */
+  /*package*/ PaymentBatch(List<Payment> payments, Executor executor, final Encoder encoder) {
+    tasks = new ArrayList<FutureTask<Intent>>(payments.size());
+    for (final Payment payment : payments) {
+      FutureTask<Intent> task = new FutureTask<Intent>(new Callable<Intent>() {
+        public Intent call() {
+          if (payment == null) throw new NullPointerException("payment");
+          return encoder.encode(payment);
+        }
+      });
+      tasks.add(task);
+    }
+    for (FutureTask<Intent> task : tasks) executor.execute(task);
+  }
+
+  /** Returns the number of payments in this batch. */
+  public int size() {
+    return tasks.size();
+  }
+
+  /** Returns true if every payment in this batch has been prepared. Doesn't block. */
+  public boolean isDone() {
+    for (FutureTask<Intent> task : tasks) {
+      if (!task.isDone()) return false;
+    }
+    return true;
+  }
+
+  /** Returns true if the payment at the given index has been prepared. Doesn't block. */
+  public boolean isDone(int index) {
+    return tasks.get(index).isDone();
+  }
+
+  /**
+   * Returns the terminal URL for the payment at the given index or null if the payment is
+   * invalid. Waits for the payment to be prepared if necessary.
+   *
+   * @throws IndexOutOfBoundsException if index is out of range
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public Uri uri(int index) throws InterruptedException {
+    Intent intent = intent(index);
+    return intent == null ? null : intent.getData();
+  }
+
+  /**
+   * Returns the reason the payment at the given index is invalid or null if it's valid. Waits
+   * for the payment to be prepared if necessary.
+   *
+   * @throws IndexOutOfBoundsException if index is out of range
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public RuntimeException error(int index) throws InterruptedException {
+    try {
+      tasks.get(index).get();
+      return null;
+    } catch (ExecutionException e) {
+      return asRuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Returns the intent for the payment at the given index or null if the payment is invalid.
+   * Callers must copy the intent before modifying it.
+   */
+  /*package*/ Intent intent(int index) throws InterruptedException {
+    try {
+      return tasks.get(index).get();
+    } catch (ExecutionException e) {
+      // Rethrow errors. Payments only fail with runtime exceptions.
+      asRuntimeException(e.getCause());
+      return null;
+    }
+  }
+
+  private static RuntimeException asRuntimeException(Throwable t) {
+    if (t instanceof Error) throw (Error) t;
+    if (t instanceof RuntimeException) return (RuntimeException) t;
+    throw new AssertionError(t);
+  }
+
+  private static ExecutorService defaultExecutor;
+
+  /** Returns a lazily created pool with one daemon thread per processor. */
+  /*package*/ static synchronized Executor defaultExecutor() {
+    if (defaultExecutor == null) {
+      defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "PaymentBatch");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return defaultExecutor;
+  }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Durable FIFO queue of payments that couldn't be requested yet, for example because Square
+ * isn't installed. Queued payments survive process death. Replay them with {@link
+ * Square#request(Payment, int)} once Square is {@linkplain Square.InstallationStatus#AVAILABLE
+ * available}, and {@linkplain #remove() remove} each one after it goes through.
+ *
+ * <p>Payments are appended to a write-ahead log as encoded {@code TerminalParameters}. A small
+ * index file records where the first payment that hasn't been removed starts. It alternates
+ * between two slots so a torn write leaves the previous head intact. A background
+ * thread writes changes in batches and syncs each batch to disk once, so {@link #add} and
+ * {@link #remove} never wait for I/O. Call {@link #flush()} to wait for changes to reach the
+ * disk. On open, a torn record at the end of the log is discarded.
+ *
+ * <p>Only one instance should use a directory at a time. This class is thread safe.
+ */
+public final class PaymentQueue {
+
+  private static final String LOG_FILE = "payments.log";
+  private static final String INDEX_FILE = "payments.idx";
+
+  /** Length and CRC32 of the body. */
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  /** Sequence number, head offset and their CRC32. The index holds two slots. */
+  private static final int INDEX_SLOT_SIZE = 20;
+
+  /** Pending writes. Contains byte[] records, Long head offsets and CountDownLatch flushes. */
+  private final BlockingQueue<Object> writes = new LinkedBlockingQueue<Object>();
+
+  private final RandomAccessFile log;
+  private final RandomAccessFile index;
+
+  /** Queued payments and the log offsets where their records end. Guarded by this. */
+  private final LinkedList<Entry> entries = new LinkedList<Entry>();
+
+  /** Offset where the next record will be written. Guarded by this. */
+  private long logEnd;
+
+  /** Sequence number of the newest index slot. Only accessed by the writer after recovery. */
+  private long headSequence = -1;
+
+  /** Set if the writer fails. Guarded by this. */
+  private IOException writeFailure;
+
+  private final Thread writer;
+
+  /**
+   * Opens the queue in the given directory, creating it if necessary, and loads the payments
+   * that are still queued.
+   *
+   * @throws IOException if the files can't be read or created
+   * @throws NullPointerException if directory is null
+   */
+  public PaymentQueue(File directory) throws IOException {
+    if (directory == null) throw new NullPointerException("directory");
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Couldn't create " + directory + ".");
+    }
+    log = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+    index = new RandomAccessFile(new File(directory, INDEX_FILE), "rw");
+    try {
+      recover();
+    } catch (IOException e) {
+      log.close();
+      index.close();
+      throw e;
+    }
+
+    writer = new Thread("PaymentQueue") {
+      @Override public void run() {
+        writeLoop();
+      }
+    };
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /** Loads entries from the log, starting at the head recorded in the index. */
+  private void recover() throws IOException {
+    long head = readHead();
+    long length = log.length();
+    // Compaction empties the log before it resets the head. If it was interrupted in between,
+    // every payment in the log was already removed. Replaying them would request them again.
+    if (head > length) head = length;
+
+    FileChannel channel = log.getChannel();
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    long offset = head;
+    while (offset + RECORD_HEADER_SIZE <= length) {
+      header.clear();
+      readFully(channel, header, offset);
+      int bodyLength = header.getInt(0);
+      int crc = header.getInt(4);
+      if (bodyLength < 0 || offset + RECORD_HEADER_SIZE + bodyLength > length) break;
+
+      byte[] body = new byte[bodyLength];
+      readFully(channel, ByteBuffer.wrap(body), offset + RECORD_HEADER_SIZE);
+      if (crc(body) != crc) break;
+
+      Payment payment;
+      try {
+        payment = decode(body);
+      } catch (ParseException e) {
+        throw new IOException("Corrupt payment at offset " + offset + ": " + e.getMessage());
+      }
+      offset += RECORD_HEADER_SIZE + bodyLength;
+      entries.add(new Entry(payment, offset));
+    }
+
+    // Discard a torn write at the end of the log.
+    if (offset < length) log.setLength(offset);
+    logEnd = offset;
+    if (entries.isEmpty() && (head != 0 || logEnd != 0)) compact();
+  }
+
+  /**
+   * Returns the head from the newest valid index slot.
+   *
+   * @throws IOException if neither slot is valid but the log isn't empty. Replaying the whole log
+   *     could request payments that were already removed.
+   */
+  private long readHead() throws IOException {
+    long head = 0;
+    long indexLength = index.length();
+    for (int slot = 0; slot < 2; slot++) {
+      long position = slot * INDEX_SLOT_SIZE;
+      if (indexLength < position + INDEX_SLOT_SIZE) break;
+      index.seek(position);
+      long sequence = index.readLong();
+      long value = index.readLong();
+      int crc = index.readInt();
+      if (crc == crc(sequence, value) && sequence > headSequence) {
+        headSequence = sequence;
+        head = value;
+      }
+    }
+    if (headSequence == -1) {
+      if (log.length() != 0) throw new IOException("Corrupt index.");
+      // A new queue.
+      writeHead(0);
+      index.getFD().sync();
+    }
+    return head;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read == -1) throw new IOException("Unexpected end of file");
+    }
+  }
+
+  /**
+   * Appends a payment to the queue. Returns immediately; the payment is written to disk in the
+   * background. Later changes to the payment don't affect the queue.
+   *
+   * @throws IllegalArgumentException if the payment has no amount
+   * @throws IllegalStateException if a previous write failed
+   * @throws NullPointerException if payment is null
+   */
+  public void add(Payment payment) {
+    if (payment == null) throw new NullPointerException("payment");
+    if (payment.amount() == null) throw new IllegalArgumentException("amount is required");
+
+    byte[] body = encode(payment);
+    byte[] record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length)
+        .putInt(body.length)
+        .putInt(crc(body))
+        .put(body)
+        .array();
+
+    Payment copy;
+    try {
+      copy = decode(body);
+    } catch (ParseException e) {
+      throw new AssertionError(e);
+    }
+
+    synchronized (this) {
+      checkWriteFailure();
+      logEnd += record.length;
+      entries.add(new Entry(copy, logEnd));
+      writes.add(record);
+    }
+  }
+
+  /** Returns the first payment in the queue or null if the queue is empty. */
+  public synchronized Payment peek() {
+    return entries.isEmpty() ? null : entries.getFirst().payment;
+  }
+
+  /**
+   * Removes the first payment from the queue. Returns immediately; the change is written to
+   * disk in the background.
+   *
+   * @throws java.util.NoSuchElementException if the queue is empty
+   * @throws IllegalStateException if a previous write failed
+   */
+  public synchronized Payment remove() {
+    checkWriteFailure();
+    Entry entry = entries.removeFirst();
+    writes.add(entry.end);
+    return entry.payment;
+  }
+
+  /** Returns the number of queued payments. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Returns a snapshot of the queued payments in order. */
+  public synchronized List<Payment> payments() {
+    List<Payment> payments = new ArrayList<Payment>(entries.size());
+    for (Entry entry : entries) payments.add(entry.payment);
+    return payments;
+  }
+
+  /**
+   * Waits until all previous changes have been synced to disk. Don't call this on the UI
+   * thread.
+   *
+   * @throws IOException if a write failed
+   */
+  public void flush() throws IOException, InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    writes.add(latch);
+    latch.await();
+    synchronized (this) {
+      if (writeFailure != null) throw writeFailure;
+    }
+  }
+
+  /** Flushes pending changes and closes the files. */
+  public void close() throws IOException, InterruptedException {
+    try {
+      flush();
+    } finally {
+      writer.interrupt();
+      writer.join();
+      log.close();
+      index.close();
+    }
+  }
+
+  private void checkWriteFailure() {
+    if (writeFailure != null) {
+      IllegalStateException e = new IllegalStateException("Write failed.");
+      e.initCause(writeFailure);
+      throw e;
+    }
+  }
+
+  /** Writes batches until interrupted. */
+  private void writeLoop() {
+    List<Object> batch = new ArrayList<Object>();
+    while (true) {
+      try {
+        batch.add(writes.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      writes.drainTo(batch);
+
+      List<CountDownLatch> flushes = new ArrayList<CountDownLatch>();
+      try {
+        writeBatch(batch, flushes);
+      } catch (IOException e) {
+        synchronized (this) {
+          if (writeFailure == null) writeFailure = e;
+        }
+      }
+      for (CountDownLatch flush : flushes) flush.countDown();
+      batch.clear();
+    }
+  }
+
+  /** Writes a batch of changes and syncs them once. */
+  private void writeBatch(List<Object> batch, List<CountDownLatch> flushes) throws IOException {
+    // Skip writes after a failure; the files may be inconsistent.
+    synchronized (this) {
+      if (writeFailure != null) {
+        for (Object write : batch) {
+          if (write instanceof CountDownLatch) flushes.add((CountDownLatch) write);
+        }
+        return;
+      }
+    }
+
+    long head = -1;
+    boolean logChanged = false;
+    for (Object write : batch) {
+      if (write instanceof byte[]) {
+        byte[] record = (byte[]) write;
+        log.seek(log.length());
+        log.write(record);
+        logChanged = true;
+      } else if (write instanceof Long) {
+        head = (Long) write;
+      } else {
+        flushes.add((CountDownLatch) write);
+      }
+    }
+
+    // Sync the log before the index so the index never points past a record that isn't there.
+    if (logChanged) log.getFD().sync();
+    if (head != -1) {
+      synchronized (this) {
+        // If the queue is empty and nothing else is pending, start the log over.
+        if (entries.isEmpty() && logEnd == head && writes.isEmpty()) {
+          compact();
+          return;
+        }
+      }
+      writeHead(head);
+      index.getFD().sync();
+    }
+  }
+
+  /**
+   * Empties the log. Only call when the queue is empty. Guarded by this. Truncates the log before
+   * resetting the head so a crash in between can't leave the head in front of removed payments.
+   */
+  private void compact() throws IOException {
+    log.setLength(0);
+    log.getFD().sync();
+    logEnd = 0;
+    writeHead(0);
+    index.getFD().sync();
+  }
+
+  /** Writes the head to the older index slot. */
+  private void writeHead(long head) throws IOException {
+    long sequence = ++headSequence;
+    index.seek((sequence & 1) * INDEX_SLOT_SIZE);
+    index.writeLong(sequence);
+    index.writeLong(head);
+    index.writeInt(crc(sequence, head));
+  }
+
+  private static byte[] encode(Payment payment) {
+    TerminalParameters parameters = TerminalParameters.obtain().copyFrom(payment);
+    try {
+      return parameters.appendTo(new StringBuilder(parameters.queryLength())).toString()
+          .getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    } finally {
+      parameters.recycle();
+    }
+  }
+
+  private static Payment decode(byte[] body) throws ParseException {
+    TerminalParameters parameters = TerminalParameters.obtain();
+    try {
+      Payment payment = new Payment();
+      parameters.copyFrom(ByteBuffer.wrap(body)).copyTo(payment);
+      return payment;
+    } finally {
+      parameters.recycle();
+    }
+  }
+
+  private static int crc(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    return (int) crc.getValue();
+  }
+
+  private static int crc(long sequence, long head) {
+    return crc(ByteBuffer.allocate(16).putLong(sequence).putLong(head).array());
+  }
+
+  private static class Entry {
+    final Payment payment;
+    final long end;
+
+    Entry(Payment payment, long end) {
+      this.payment = payment;
+      this.end = end;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A payment requested with {@link Square#requestAsync(Payment)}. Completes when the activity
+ * passes the result to {@link Square#response(int, int, android.content.Intent)}.
+ *
+ * <p>{@link #get()} returns the {@link Response}, or null if the user canceled without a
+ * response. {@link #status()} tells whether the payment was successful, had errors or was
+ * canceled. A payment in Square can't be canceled from here, so {@link #cancel} always
+ * returns false. Outstanding payments are tracked per process; if the process dies before the
+ * result arrives, the result goes to {@code onActivityResult()} as usual.
+ */
+public final class PendingPayment implements Future<Response> {
+
+  /** First request code used for asynchronous requests. Don't use these codes yourself. */
+  public static final int MIN_REQUEST_CODE = 0xf000;
+
+  /** Last request code used for asynchronous requests. */
+  public static final int MAX_REQUEST_CODE = 0xffff;
+
+  private static final int REQUEST_CODES = MAX_REQUEST_CODE - MIN_REQUEST_CODE + 1;
+
+  private static final AtomicInteger nextRequestCode = new AtomicInteger();
+
+  /** Outstanding payments indexed by request code - MIN_REQUEST_CODE. */
+  private static final AtomicReferenceArray<PendingPayment> outstanding
+      = new AtomicReferenceArray<PendingPayment>(REQUEST_CODES);
+
+  /** Receives the result of a pending payment. */
+  public interface Listener {
+
+    /** Called on the thread that calls {@link Square#response}, usually the UI thread. */
+    void onResult(PendingPayment payment);
+  }
+
+  private final int requestCode;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile Response response;
+  private volatile String status;
+
+  /** Listeners to call when done. Null once called. Guarded by this. */
+  private List<Listener> listeners = new ArrayList<Listener>(1);
+
+  private PendingPayment(int requestCode) {
+    this.requestCode = requestCode;
+  }
+
+  /**
+   * Creates a pending payment with an unused request code.
+   *
+   * @throws IllegalStateException if every request code is in use
+   */
+  static PendingPayment register() {
+    for (int attempt = 0; attempt < REQUEST_CODES; attempt++) {
+      int index = (nextRequestCode.getAndIncrement() & Integer.MAX_VALUE) % REQUEST_CODES;
+      PendingPayment payment = new PendingPayment(MIN_REQUEST_CODE + index);
+      if (outstanding.compareAndSet(index, null, payment)) return payment;
+    }
+    throw new IllegalStateException("Too many outstanding payments.");
+  }
+
+  /** Forgets a payment that couldn't be requested. */
+  static void unregister(PendingPayment payment) {
+    outstanding.compareAndSet(payment.requestCode - MIN_REQUEST_CODE, payment, null);
+  }
+
+  /**
+   * Completes the payment with the given request code, if it's outstanding.
+   *
+   * @return true if a payment was completed
+   */
+  static boolean complete(int requestCode, Response response, String status) {
+    if (requestCode < MIN_REQUEST_CODE || requestCode > MAX_REQUEST_CODE) return false;
+    PendingPayment payment = outstanding.getAndSet(requestCode - MIN_REQUEST_CODE, null);
+    if (payment == null) return false;
+    payment.complete(response, status);
+    return true;
+  }
+
+  private void complete(Response response, String status) {
+    this.response = response;
+    this.status = status;
+    done.countDown();
+
+    List<Listener> listeners;
+    synchronized (this) {
+      listeners = this.listeners;
+      this.listeners = null;
+    }
+    for (Listener listener : listeners) listener.onResult(this);
+  }
+
+  /**
+   * Calls the listener when the result arrives, or right away if it already has.
+   *
+   * @return this payment
+   * @throws NullPointerException if listener is null
+   */
+  public PendingPayment listener(Listener listener) {
+    if (listener == null) throw new NullPointerException("listener");
+    synchronized (this) {
+      if (listeners != null) {
+        listeners.add(listener);
+        return this;
+      }
+    }
+    listener.onResult(this);
+    return this;
+  }
+
+  /** Returns the request code that this payment was requested with. */
+  public int requestCode() {
+    return requestCode;
+  }
+
+  /**
+   * Returns {@link Response#STATUS_SUCCESSFUL}, {@link Response#STATUS_ERROR}, {@link
+   * Response#STATUS_CANCELLED}, or null if the result hasn't arrived yet.
+   */
+  public String status() {
+    return status;
+  }
+
+  /** Returns false. Payments in Square can't be canceled by the caller. */
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  /** Returns false. A payment the user canceled completes with {@link #status()} cancelled. */
+  public boolean isCancelled() {
+    return false;
+  }
+
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  /**
+   * Waits for the result. Don't call this on the UI thread, which delivers the result.
+   *
+   * @return the response, or null if the user canceled without a response
+   */
+  public Response get() throws InterruptedException {
+    done.await();
+    return response;
+  }
+
+  /**
+   * Waits for the result. Don't call this on the UI thread, which delivers the result.
+   *
+   * @return the response, or null if the user canceled without a response
+   */
+  public Response get(long timeout, TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    if (!done.await(timeout, unit)) throw new TimeoutException();
+    return response;
+  }
+
+  @Override public String toString() {
+    return "PendingPayment{requestCode=" + requestCode + ", status=" + status + '}';
+  }
+}
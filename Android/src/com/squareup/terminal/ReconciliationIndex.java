@@ -0,0 +1,596 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * On-disk index from reference IDs to the latest {@link Response} for each payment, for
+ * reconciling payments locally before confirming them with Square's History API. Holds
+ * millions of responses without keeping them on the heap.
+ *
+ * <p>Responses are appended to a log in {@link BinaryCodec} format. A memory-mapped hash table
+ * with open addressing maps each reference ID to its latest record, so lookups take one probe
+ * sequence and one read from the log. Replacing a response leaves garbage in the log; the index
+ * compacts itself when more than half of a large log is garbage.
+ *
+ * <p>One process at a time may open a directory for writing. Any number of processes may open
+ * it {@linkplain #ReconciliationIndex(File, boolean) read-only}. They share the writer's
+ * mapping and see its inserts as they happen. When the writer grows or compacts the index, it
+ * swaps in new files and marks the old table stale; readers reopen the next time they look
+ * something up. Changes reach the disk when the OS writes them back or when the writer calls
+ * {@link #sync()}.
+ *
+ * <p>This class is thread safe.
+ */
+public final class ReconciliationIndex {
+
+  private static final String TABLE_FILE = "reconciliation.idx";
+  private static final String TEMP_TABLE_FILE = "reconciliation.idx.tmp";
+  private static final String LOG_PREFIX = "reconciliation-";
+  private static final String LOG_SUFFIX = ".log";
+
+  // Table header layout.
+  private static final int MAGIC = 0x53515249; // "SQRI"
+  private static final int VERSION = 1;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int CAPACITY_OFFSET = 8;
+  private static final int COUNT_OFFSET = 12;
+  private static final int LOG_LENGTH_OFFSET = 16;
+  private static final int LIVE_BYTES_OFFSET = 24;
+  private static final int GENERATION_OFFSET = 32;
+  private static final int STALE_OFFSET = 40;
+  private static final int HEADER_SIZE = 64;
+
+  /**
+   * Each slot holds the log offset of a record plus 1 (so 0 means empty), followed by the
+   * reference ID's hash. The hash is written last when inserting, so a reader never sees a
+   * slot without an offset.
+   */
+  private static final int SLOT_SIZE = 16;
+  private static final int SLOT_HASH_OFFSET = 8;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /** Mappings are limited to 2GB. */
+  private static final int MAX_CAPACITY = 1 << 26;
+
+  /** Logs smaller than this are never compacted automatically. */
+  private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+  // Record status bytes, in the order of STATUSES.
+  private static final String[] STATUSES = {
+      Response.STATUS_SUCCESSFUL, Response.STATUS_ERROR, Response.STATUS_CANCELLED
+  };
+
+  /** Length of the status byte and response in a record. */
+  private static final int RECORD_HEADER_SIZE = 4;
+
+  private final File directory;
+  private final boolean readOnly;
+
+  private RandomAccessFile tableFile;
+  private MappedByteBuffer table;
+  private int capacity;
+  private long generation;
+  private RandomAccessFile logFile;
+  private FileChannel log;
+
+  /** Reused by {@link #readRecord}. */
+  private final ByteBuffer lengthBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+  /** The entry that the last successful {@link #find} decoded. Guarded by this. */
+  private Entry found;
+
+  /** True if opening the index rebuilt the table. */
+  private boolean rebuilt;
+
+  /**
+   * Opens the index in the given directory for writing, creating it if necessary.
+   *
+   * @throws IOException if the index can't be opened or is corrupt
+   * @throws NullPointerException if directory is null
+   */
+  public ReconciliationIndex(File directory) throws IOException {
+    this(directory, false);
+  }
+
+  /**
+   * Opens the index in the given directory.
+   *
+   * @param readOnly true to only look up responses. The index must exist.
+   * @throws IOException if the index can't be opened or is corrupt
+   * @throws NullPointerException if directory is null
+   */
+  public ReconciliationIndex(File directory, boolean readOnly) throws IOException {
+    if (directory == null) throw new NullPointerException("directory");
+    this.directory = directory;
+    this.readOnly = readOnly;
+
+    if (!readOnly) {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Couldn't create " + directory + ".");
+      }
+      if (!new File(directory, TABLE_FILE).exists()) create();
+    }
+    open();
+    if (!readOnly) recover();
+  }
+
+  /** Creates an empty index. */
+  private void create() throws IOException {
+    File logFile = logFile(0);
+    new RandomAccessFile(logFile, "rw").close();
+    writeTable(INITIAL_CAPACITY, 0, null, null, 0, 0);
+  }
+
+  /** Maps the table and opens the log it points to. */
+  private void open() throws IOException {
+    RandomAccessFile tableFile = new RandomAccessFile(new File(directory, TABLE_FILE),
+        readOnly ? "r" : "rw");
+    try {
+      FileChannel channel = tableFile.getChannel();
+      if (channel.size() < HEADER_SIZE) throw new IOException("Corrupt table header");
+      MappedByteBuffer table = channel.map(
+          readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+          0, channel.size());
+      if (table.getInt(MAGIC_OFFSET) != MAGIC) throw new IOException("Not an index");
+      if (table.getInt(VERSION_OFFSET) != VERSION) {
+        throw new IOException("Unsupported version: " + table.getInt(VERSION_OFFSET));
+      }
+      int capacity = table.getInt(CAPACITY_OFFSET);
+      if (Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY
+          || HEADER_SIZE + (long) capacity * SLOT_SIZE != channel.size()) {
+        throw new IOException("Corrupt table header");
+      }
+      long generation = table.getLong(GENERATION_OFFSET);
+      RandomAccessFile logFile = new RandomAccessFile(logFile(generation),
+          readOnly ? "r" : "rw");
+
+      closeFiles();
+      this.tableFile = tableFile;
+      this.table = table;
+      this.capacity = capacity;
+      this.generation = generation;
+      this.logFile = logFile;
+      this.log = logFile.getChannel();
+    } catch (IOException e) {
+      tableFile.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Discards a partial record at the end of the log and removes leftover files. If the log lost
+   * records that the table points to, rebuilds the table from the records that survived.
+   */
+  private void recover() throws IOException {
+    long logLength = table.getLong(LOG_LENGTH_OFFSET);
+    if (log.size() < logLength) {
+      // For example, the OS wrote back the mapped table but not the end of the log.
+      reindex();
+      rebuilt = true;
+      logLength = table.getLong(LOG_LENGTH_OFFSET);
+    }
+    if (log.size() > logLength) log.truncate(logLength);
+
+    File[] files = directory.listFiles();
+    if (files == null) return;
+    String currentLog = logFile(generation).getName();
+    for (File file : files) {
+      String name = file.getName();
+      if (name.equals(TEMP_TABLE_FILE) || (name.startsWith(LOG_PREFIX)
+          && name.endsWith(LOG_SUFFIX) && !name.equals(currentLog))) {
+        file.delete();
+      }
+    }
+  }
+
+  /** Clears the table and replays the log into it, stopping at the first invalid record. */
+  private void reindex() throws IOException {
+    for (int slot = 0; slot < capacity; slot++) {
+      table.putInt(slotOffset(slot) + SLOT_HASH_OFFSET, 0);
+      table.putLong(slotOffset(slot), 0);
+    }
+    table.putInt(COUNT_OFFSET, 0);
+    table.putLong(LOG_LENGTH_OFFSET, 0);
+    table.putLong(LIVE_BYTES_OFFSET, 0);
+
+    long offset = 0;
+    while (offset + RECORD_HEADER_SIZE <= log.size()) {
+      Entry entry;
+      int recordLength;
+      try {
+        entry = readEntry(offset);
+        recordLength = RECORD_HEADER_SIZE + readLength(offset);
+      } catch (IOException e) {
+        break; // A partial or corrupt record.
+      }
+      String referenceId = entry.response.referenceId();
+      if (referenceId == null) break;
+      index(referenceId, offset, recordLength);
+      offset += recordLength;
+    }
+  }
+
+  private File logFile(long generation) {
+    return new File(directory, LOG_PREFIX + generation + LOG_SUFFIX);
+  }
+
+  /** Reopens the files if a writer replaced them. Only readers need to check. */
+  private void refresh() throws IOException {
+    if (readOnly && table.getInt(STALE_OFFSET) != 0) open();
+  }
+
+  /** Convenience method, equivalent to {@code put(response, false)}. */
+  public void put(Response response) throws IOException {
+    put(response, false);
+  }
+
+  /**
+   * Records the given response, replacing any previous response with the same reference ID.
+   * Responses from {@link Response#fromCallbackUrl} are recorded with their {@linkplain
+   * Response#status() status}.
+   *
+   * @param canceled true if the user canceled the payment. Ignored if the response has a status.
+   * @throws IllegalArgumentException if the response has no reference ID
+   * @throws IllegalStateException if this index is read-only
+   * @throws NullPointerException if response is null
+   */
+  public synchronized void put(Response response, boolean canceled) throws IOException {
+    if (readOnly) throw new IllegalStateException("read-only");
+    String referenceId = response.referenceId();
+    if (referenceId == null) throw new IllegalArgumentException("referenceId is required");
+
+    int length = 1 + BinaryCodec.encodedLength(response);
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+    String status = response.status();
+    if (status == null) status = response.status(canceled);
+    record.putInt(length).put(statusIndex(status));
+    BinaryCodec.write(response, record);
+    record.flip();
+
+    // Append the record before publishing it in the table.
+    long offset = table.getLong(LOG_LENGTH_OFFSET);
+    writeFully(log, record, offset);
+    index(referenceId, offset, record.capacity());
+
+    long logLength = table.getLong(LOG_LENGTH_OFFSET);
+    if (logLength >= MIN_COMPACTION_SIZE && table.getLong(LIVE_BYTES_OFFSET) < logLength / 2) {
+      compact();
+    }
+  }
+
+  /** Points the reference ID at the record that was appended at the given offset. */
+  private void index(String referenceId, long offset, int recordLength) throws IOException {
+    int hash = hash(referenceId);
+    int slot = find(referenceId, hash);
+    found = null;
+    long liveBytes = table.getLong(LIVE_BYTES_OFFSET) + recordLength;
+    if (slot >= 0) {
+      // Replace.
+      long oldOffset = table.getLong(slotOffset(slot)) - 1;
+      liveBytes -= RECORD_HEADER_SIZE + readLength(oldOffset);
+      table.putLong(slotOffset(slot), offset + 1);
+    } else {
+      int count = table.getInt(COUNT_OFFSET) + 1;
+      if (count > capacity / 2) grow();
+      insert(table, capacity, hash, offset);
+      table.putInt(COUNT_OFFSET, count);
+    }
+    table.putLong(LOG_LENGTH_OFFSET, offset + recordLength);
+    table.putLong(LIVE_BYTES_OFFSET, liveBytes);
+  }
+
+  private static byte statusIndex(String status) {
+    for (int i = 0; i < STATUSES.length; i++) {
+      if (STATUSES[i].equals(status)) return (byte) i;
+    }
+    throw new AssertionError(status);
+  }
+
+  /**
+   * Returns the latest response for the given reference ID or null if there isn't one.
+   *
+   * @throws IOException if the log can't be read or is corrupt
+   * @throws NullPointerException if referenceId is null
+   */
+  public synchronized Entry get(String referenceId) throws IOException {
+    if (referenceId == null) throw new NullPointerException("referenceId");
+    refresh();
+    if (find(referenceId, hash(referenceId)) < 0) return null;
+    Entry entry = found;
+    found = null;
+    return entry;
+  }
+
+  /**
+   * Returns true if opening this index found that the log had lost responses and rebuilt the
+   * table from the ones that survived. Lost responses must be recorded again.
+   */
+  public boolean rebuilt() {
+    return rebuilt;
+  }
+
+  /** Returns the number of reference IDs in this index. */
+  public synchronized int size() throws IOException {
+    refresh();
+    return table.getInt(COUNT_OFFSET);
+  }
+
+  /**
+   * Returns the slot that holds the given reference ID and sets {@link #found} to its entry, or
+   * returns -1 if there isn't one. Compares reference IDs only when the hashes match.
+   */
+  private int find(String referenceId, int hash) throws IOException {
+    int mask = capacity - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int slotHash = table.getInt(slotOffset(slot) + SLOT_HASH_OFFSET);
+      if (slotHash == 0) return -1;
+      if (slotHash != hash) continue;
+      long offset = table.getLong(slotOffset(slot)) - 1;
+      if (offset == -1) continue; // A reader raced with an insert.
+      Entry entry = readEntry(offset);
+      if (referenceId.equals(entry.response.referenceId())) {
+        found = entry;
+        return slot;
+      }
+    }
+  }
+
+  /** Inserts a new slot. The caller ensures the table has room. */
+  private static void insert(ByteBuffer table, int capacity, int hash, long offset) {
+    int mask = capacity - 1;
+    int slot = hash & mask;
+    while (table.getInt(slotOffset(slot) + SLOT_HASH_OFFSET) != 0) slot = (slot + 1) & mask;
+    table.putLong(slotOffset(slot), offset + 1);
+    table.putInt(slotOffset(slot) + SLOT_HASH_OFFSET, hash);
+  }
+
+  private static int slotOffset(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  /** Spreads String.hashCode() and reserves 0 for empty slots. */
+  private static int hash(String referenceId) {
+    int h = referenceId.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h == 0 ? 1 : h;
+  }
+
+  /** Reads the length of the record at the given offset, excluding the length itself. */
+  private int readLength(long offset) throws IOException {
+    lengthBuffer.clear();
+    readFully(log, lengthBuffer, offset);
+    int length = lengthBuffer.getInt(0);
+    if (length < 1 || offset + RECORD_HEADER_SIZE + length > log.size()) {
+      throw new IOException("Corrupt record at offset " + offset);
+    }
+    return length;
+  }
+
+  /** Reads the record at the given offset, including its length. */
+  private ByteBuffer readRecord(long offset) throws IOException {
+    int length = readLength(offset);
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+    record.putInt(length);
+    readFully(log, record, offset);
+    record.flip();
+    return record;
+  }
+
+  private Entry readEntry(long offset) throws IOException {
+    ByteBuffer record = readRecord(offset);
+    record.position(RECORD_HEADER_SIZE);
+    int status = record.get();
+    if (status < 0 || status >= STATUSES.length) {
+      throw new IOException("Corrupt record at offset " + offset);
+    }
+    try {
+      return new Entry(BinaryCodec.readResponse(record), STATUSES[status]);
+    } catch (ParseException e) {
+      IOException ioe = new IOException("Corrupt record at offset " + offset);
+      ioe.initCause(e);
+      throw ioe;
+    }
+  }
+
+  /** Doubles the capacity of the table. */
+  private void grow() throws IOException {
+    if (capacity == MAX_CAPACITY) throw new IOException("Index is full");
+    rebuild(capacity * 2, false);
+  }
+
+  /**
+   * Rewrites the log without replaced responses. The index calls this automatically when
+   * more than half of a large log is garbage.
+   *
+   * @throws IllegalStateException if this index is read-only
+   */
+  public synchronized void compact() throws IOException {
+    if (readOnly) throw new IllegalStateException("read-only");
+    rebuild(capacity, true);
+  }
+
+  /** Replaces the table, and the log if compacting, then marks the old table stale. */
+  private void rebuild(int newCapacity, boolean compactLog) throws IOException {
+    long newGeneration = compactLog ? generation + 1 : generation;
+    long logLength = table.getLong(LOG_LENGTH_OFFSET);
+    FileChannel newLog = null;
+    RandomAccessFile newLogFile = null;
+    if (compactLog) {
+      newLogFile = new RandomAccessFile(logFile(newGeneration), "rw");
+      newLog = newLogFile.getChannel();
+      newLog.truncate(0);
+    }
+    try {
+      writeTable(newCapacity, newGeneration, table, newLog, logLength,
+          table.getInt(COUNT_OFFSET));
+      if (newLog != null) newLog.force(true);
+    } finally {
+      if (newLogFile != null) newLogFile.close();
+    }
+
+    File temp = new File(directory, TEMP_TABLE_FILE);
+    if (!temp.renameTo(new File(directory, TABLE_FILE))) {
+      throw new IOException("Couldn't replace " + TABLE_FILE + ".");
+    }
+
+    // Tell readers to reopen.
+    MappedByteBuffer oldTable = table;
+    oldTable.putInt(STALE_OFFSET, 1);
+    oldTable.force();
+
+    long oldGeneration = generation;
+    open();
+    if (compactLog) logFile(oldGeneration).delete();
+  }
+
+  /**
+   * Writes a table to the temporary file, or straight to the table file if there's no old
+   * table to copy from. If newLog is non-null, copies live records to it too.
+   */
+  private void writeTable(int capacity, long generation, ByteBuffer oldTable, FileChannel newLog,
+      long logLength, int count) throws IOException {
+    File file = new File(directory, oldTable == null ? TABLE_FILE : TEMP_TABLE_FILE);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = raf.getChannel();
+      channel.truncate(0);
+      long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+      raf.setLength(size);
+      MappedByteBuffer newTable = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+      long liveBytes = oldTable == null ? 0 : oldTable.getLong(LIVE_BYTES_OFFSET);
+      if (oldTable != null) {
+        long newLogLength = 0;
+        for (int slot = 0; slot < this.capacity; slot++) {
+          int hash = oldTable.getInt(slotOffset(slot) + SLOT_HASH_OFFSET);
+          if (hash == 0) continue;
+          long offset = oldTable.getLong(slotOffset(slot)) - 1;
+          if (newLog != null) {
+            ByteBuffer record = readRecord(offset);
+            int recordLength = record.remaining();
+            writeFully(newLog, record, newLogLength);
+            offset = newLogLength;
+            newLogLength += recordLength;
+          }
+          insert(newTable, capacity, hash, offset);
+        }
+        if (newLog != null) {
+          logLength = newLogLength;
+          liveBytes = newLogLength;
+        }
+      }
+
+      newTable.putInt(MAGIC_OFFSET, MAGIC);
+      newTable.putInt(VERSION_OFFSET, VERSION);
+      newTable.putInt(CAPACITY_OFFSET, capacity);
+      newTable.putInt(COUNT_OFFSET, count);
+      newTable.putLong(LOG_LENGTH_OFFSET, logLength);
+      newTable.putLong(LIVE_BYTES_OFFSET, liveBytes);
+      newTable.putLong(GENERATION_OFFSET, generation);
+      newTable.force();
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Writes changes to disk.
+   *
+   * @throws IllegalStateException if this index is read-only
+   */
+  public synchronized void sync() throws IOException {
+    if (readOnly) throw new IllegalStateException("read-only");
+    log.force(true);
+    table.force();
+  }
+
+  /** Closes this index. Writers should {@linkplain #sync() sync} first. */
+  public synchronized void close() throws IOException {
+    closeFiles();
+    table = null;
+  }
+
+  private void closeFiles() throws IOException {
+    if (tableFile != null) tableFile.close();
+    if (logFile != null) logFile.close();
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read == -1) throw new IOException("Unexpected end of log");
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position() - start);
+    }
+  }
+
+  /** A response and its status. */
+  public static final class Entry {
+
+    private final Response response;
+    private final String status;
+
+    Entry(Response response, String status) {
+      this.response = response;
+      this.status = status;
+    }
+
+    /** Returns the response. */
+    public Response response() {
+      return response;
+    }
+
+    /** Returns the payment ID or null if the payment was unsuccessful. */
+    public String paymentId() {
+      return response.paymentId();
+    }
+
+    /**
+     * Returns {@link Response#STATUS_SUCCESSFUL}, {@link Response#STATUS_ERROR} or {@link
+     * Response#STATUS_CANCELLED}.
+     */
+    public String status() {
+      return status;
+    }
+
+    /** Returns the response's error codes. */
+    public List<String> errors() {
+      return response.errors();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2011 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the &quot;License&quot;);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.terminal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers when requests started, keyed by request code, without locking or allocating.
+ * Request codes share a small table, so if two outstanding requests collide, the older one's
+ * latency is lost.
+ */
+/*package*/ final class RequestTimer {
+
+  private static final int SLOTS = 64;
+
+  /**
+   * For each slot, the number of the start in the high 32 bits and request code + 1 in the low
+   * 32 bits, or 0 if the slot is empty. Numbering starts tells a restart with the same request
+   * code apart from the start it replaced.
+   */
+  private final AtomicLongArray keys = new AtomicLongArray(SLOTS);
+  private final AtomicLongArray startTimes = new AtomicLongArray(SLOTS);
+  private final AtomicInteger starts = new AtomicInteger();
+
+  /** Records the start time of a request. */
+  void start(int requestCode, long nanoTime) {
+    int slot = requestCode & (SLOTS - 1);
+    long key = (long) starts.incrementAndGet() << 32 | (requestCode + 1L);
+    // Clear the key while replacing the time so a concurrent stop() can't mix them up.
+    keys.set(slot, 0);
+    startTimes.set(slot, nanoTime);
+    keys.set(slot, key);
+  }
+
+  /** Returns the time since the request started and forgets it, or -1 if it's unknown. */
+  long stop(int requestCode, long nanoTime) {
+    int slot = requestCode & (SLOTS - 1);
+    long key = keys.get(slot);
+    if ((int) key != requestCode + 1) return -1;
+    long startTime = startTimes.get(slot);
+    // Fails if a start() replaced the key, and maybe the time, after we read it.
+    if (!keys.compareAndSet(slot, key, 0)) return -1;
+    return nanoTime - startTime;
+  }
+}
@@ -16,43 +16,105 @@
 package com.squareup.terminal;
 
 import android.content.Intent;
-import java.util.ArrayList;
+import java.text.ParseException;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Immutable response to a payment request from the Square app. Square intentionally elides
  * payment details from Terminal API responses. Instead, applications should use Square's
  * History API to confirm payments and query payment details.
  *
+ * <p>A response from {@link #lazyFrom(Intent)} reads its intent on demand, so it only stays
+ * unchanged as long as the intent does.
+ *
  * @author Bob Lee (bob@squareup.com)
  */
 public class Response {
 
-  private static final String PAYMENT_ID = "paymentId";
-  private static final String REFERENCE_ID = "referenceId";
-  private static final String ERRORS = "errors";
+  /*package*/ static final String PAYMENT_ID = "paymentId";
+  /*package*/ static final String REFERENCE_ID = "referenceId";
+  /*package*/ static final String ERRORS = "errors";
 
-  public static final String PARAM_STATUS = "square_status=";
-  public static final String PARAM_REFERENCE_ID = "square_reference_id=";
-  public static final String PARAM_ERRORS = "square_errors=";
-  public static final String PARAM_PAYMENT_ID = "square_payment_id=";
+  public static final String PARAM_STATUS = Callback.PARAM_STATUS;
+  public static final String PARAM_REFERENCE_ID = Callback.PARAM_REFERENCE_ID;
+  public static final String PARAM_ERRORS = Callback.PARAM_ERRORS;
+  public static final String PARAM_PAYMENT_ID = Callback.PARAM_PAYMENT_ID;
 
-  public static final String STATUS_ERROR = "error";
-  public static final String STATUS_SUCCESSFUL = "successful";
-  public static final String STATUS_CANCELLED = "cancelled";
+  public static final String STATUS_ERROR = Callback.STATUS_ERROR;
+  public static final String STATUS_SUCCESSFUL = Callback.STATUS_SUCCESSFUL;
+  public static final String STATUS_CANCELLED = Callback.STATUS_CANCELLED;
 
   private final String paymentId;
   private final String referenceId;
 
-  private final List<String> errors;
+  private static final int[] NO_ERRORS = new int[0];
+
+  /**
+   * Error codes in order. Known codes are indexes into {@link ErrorCode#CODES}. An unknown
+   * code {@code c < 0} is at index {@code -1 - c} in {@link #unknownErrors}.
+   */
+  private final int[] errorCodes;
+
+  /** Error codes that aren't in {@link ErrorCode#CODES}, or null if there are none. */
+  private final String[] unknownErrors;
+
+  /** Status from the callback URL this response was parsed from, or null. */
+  private final String status;
+
+  /** Lazily created view of the errors. */
+  private List<String> errors;
 
   private Response(String paymentId, String referenceId, List<String> errors) {
     this.paymentId = paymentId;
     this.referenceId = referenceId;
-    this.errors = errors == null ? Collections.<String>emptyList() :
-      Collections.unmodifiableList(new ArrayList<String>(errors));
+    this.status = null;
+
+    int size = errors == null ? 0 : errors.size();
+    if (size == 0) {
+      this.errorCodes = NO_ERRORS;
+      this.unknownErrors = null;
+      return;
+    }
+
+    int[] errorCodes = new int[size];
+    String[] unknownErrors = null;
+    int unknownCount = 0;
+    int i = 0;
+    for (String error : errors) {
+      int code = ErrorCode.indexOf(error);
+      if (code == -1) {
+        if (unknownErrors == null) unknownErrors = new String[size - i];
+        unknownErrors[unknownCount] = error;
+        code = -1 - unknownCount++;
+      }
+      errorCodes[i++] = code;
+    }
+    this.errorCodes = errorCodes;
+    this.unknownErrors = unknownErrors;
+  }
+
+  /** Constructs a response from error codes in the format of {@link #errorCodes}. */
+  /*package*/ Response(String paymentId, String referenceId, int[] errorCodes,
+      String[] unknownErrors) {
+    this(paymentId, referenceId, errorCodes, unknownErrors, null);
+  }
+
+  private Response(String paymentId, String referenceId, int[] errorCodes,
+      String[] unknownErrors, String status) {
+    this.paymentId = paymentId;
+    this.referenceId = referenceId;
+    this.errorCodes = errorCodes == null ? NO_ERRORS : errorCodes;
+    this.unknownErrors = unknownErrors;
+    this.status = status;
+  }
+
+  /** Constructs an empty response for subclasses that override the accessors. */
+  /*package*/ Response() {
+    this(null, null, NO_ERRORS, null);
   }
 
   /**
@@ -62,9 +124,7 @@ public class Response {
    * @param referenceId passed to {@link Payment#referenceId(String)}
    */
   public Response(String paymentId, String referenceId) {
-    this.paymentId = paymentId;
-    this.referenceId = referenceId;
-    this.errors = Collections.emptyList();
+    this(paymentId, referenceId, null);
   }
 
   /**
@@ -98,60 +158,135 @@ public class Response {
    */
   public List<String> errors() {
     // Note: This API should catch all other errors before requesting the payment.
+    if (errorCount() == 0) return Collections.emptyList();
+
+    // Benign race: the view is stateless, so threads may safely create their own.
+    List<String> errors = this.errors;
+    if (errors == null) this.errors = errors = new ErrorList();
     return errors;
   }
 
+  /**
+   * Returns {@link #STATUS_SUCCESSFUL}, {@link #STATUS_ERROR} or {@link #STATUS_CANCELLED} if
+   * this response came from {@link #fromCallbackUrl}, or null otherwise. For intents, the
+   * result code tells whether the payment was canceled.
+   */
+  public String status() {
+    return status;
+  }
+
+  /** Returns the number of error codes. Unlike {@code errors().size()}, never allocates. */
+  public int errorCount() {
+    return errorCodes.length;
+  }
+
+  /** Returns true if the response has any error codes. Never allocates. */
+  public boolean hasErrors() {
+    return errorCount() > 0;
+  }
+
+  /** Returns the error code at the given index. */
+  /*package*/ String error(int index) {
+    int code = errorCodes[index];
+    return code >= 0 ? ErrorCode.CODES[code] : unknownErrors[-1 - code];
+  }
+
+  /**
+   * Returns the index in {@link ErrorCode#CODES} of the error at the given index, or -1 if
+   * the code is unknown.
+   */
+  /*package*/ int errorCode(int index) {
+    int code = errorCodes[index];
+    return code >= 0 ? code : -1;
+  }
+
+  /** Read-only view of the errors. */
+  private class ErrorList extends AbstractList<String> implements RandomAccess {
+    @Override public String get(int index) {
+      return error(index);
+    }
+
+    @Override public int size() {
+      return errorCount();
+    }
+  }
+
   /**
    * Converts this response to an intent that can be passed to
    * {@link android.app.Activity#setResult(int, android.content.Intent)}.
    */
   public Intent toIntent() {
     Intent intent = new Intent();
-    intent.putExtra(PAYMENT_ID, paymentId);
-    intent.putExtra(REFERENCE_ID, referenceId);
-    intent.putExtra(ERRORS, errors.toArray(new String[errors.size()]));
+    intent.putExtra(PAYMENT_ID, paymentId());
+    intent.putExtra(REFERENCE_ID, referenceId());
+    String[] errors = new String[errorCount()];
+    for (int i = 0; i < errors.length; i++) errors[i] = error(i);
+    intent.putExtra(ERRORS, errors);
     return intent;
   }
 
   /**
    * Converts this response to a url to open in the browser, based on a given callback url provided
-   * by a web client. Returns null if the base url is null.
+   * by a web client. Returns null if the base url is null. Parameter values are percent-encoded.
    */
   public String toCallbackUrl(String callbackUrl, boolean canceled) {
     if (callbackUrl == null) return null;
 
-    StringBuilder rtn = new StringBuilder(callbackUrl);
+    int errorCount = errorCount();
+    boolean hasErrors = errorCount > 0;
+    String status = status(canceled);
+    String referenceId = referenceId();
+    String paymentId = String.valueOf(paymentId());
 
-    boolean hasErrors = !errors.isEmpty();
-    String status = canceled ? STATUS_CANCELLED : hasErrors ? STATUS_ERROR : STATUS_SUCCESSFUL;
+    // Compute the exact length so we only allocate the buffer once.
+    int length = callbackUrl.length() + 1 + PARAM_STATUS.length() + status.length();
+    if (referenceId != null) {
+      length += 1 + PARAM_REFERENCE_ID.length() + QueryEncoder.encodedLength(referenceId);
+    }
+    if (!canceled) {
+      if (hasErrors) {
+        length += 1 + PARAM_ERRORS.length()
+            + ENCODED_ERROR_SEPARATOR.length() * (errorCount - 1);
+        for (int i = 0; i < errorCount; i++) {
+          length += QueryEncoder.encodedLength(error(i));
+        }
+      } else {
+        length += 1 + PARAM_PAYMENT_ID.length() + QueryEncoder.encodedLength(paymentId);
+      }
+    }
+
+    StringBuilder rtn = new StringBuilder(length).append(callbackUrl);
     boolean hasParams = callbackUrl.indexOf('?') > -1;
 
     rtn.append(hasParams ? '&' : '?').append(PARAM_STATUS).append(status);
 
-    if (referenceId() != null) rtn.append('&').append(PARAM_REFERENCE_ID).append(referenceId());
+    if (referenceId != null) {
+      QueryEncoder.encode(referenceId, rtn.append('&').append(PARAM_REFERENCE_ID));
+    }
 
     if (!canceled) {
       if (hasErrors) {
-        rtn.append('&').append(PARAM_ERRORS).append(errorsAsString(errors()));
+        rtn.append('&').append(PARAM_ERRORS);
+        for (int i = 0; i < errorCount; i++) {
+          if (i > 0) rtn.append(ENCODED_ERROR_SEPARATOR);
+          QueryEncoder.encode(error(i), rtn);
+        }
       } else {
-        rtn.append('&').append(PARAM_PAYMENT_ID).append(paymentId());
+        QueryEncoder.encode(paymentId, rtn.append('&').append(PARAM_PAYMENT_ID));
       }
     }
 
     return rtn.toString();
   }
 
-  private static String errorsAsString(List<String> errors) {
-    StringBuilder rtn = new StringBuilder();
-    for (String e : errors) {
-      if (rtn.length() > 0) {
-        rtn.append(", ");
-      }
-      rtn.append(e);
-    }
-    return rtn.toString();
+  /** Returns {@link #STATUS_CANCELLED}, {@link #STATUS_ERROR} or {@link #STATUS_SUCCESSFUL}. */
+  /*package*/ String status(boolean canceled) {
+    return canceled ? STATUS_CANCELLED : hasErrors() ? STATUS_ERROR : STATUS_SUCCESSFUL;
   }
 
+  /** Separates error codes in {@link #PARAM_ERRORS}. This is ", " percent-encoded. */
+  private static final String ENCODED_ERROR_SEPARATOR = "%2C%20";
+
   /**
    * Takes the intent that was passed to
    * {@link android.app.Activity#onActivityResult(int, int, android.content.Intent)} and converts
@@ -166,4 +301,68 @@ public class Response {
     String[] errors = data.getStringArrayExtra(ERRORS);
     return new Response(paymentId, referenceId, errors == null ? null : Arrays.asList(errors));
   }
+
+  /**
+   * Like {@link #from(Intent)}, but reads each extra from the intent the first time it's
+   * needed, so checking {@link #paymentId()} or {@link #hasErrors()} doesn't decode or copy
+   * anything else. The response isn't a snapshot: don't modify the intent, or the error array
+   * in it, while the response is in use.
+   *
+   * @throws NullPointerException if data is null
+   */
+  public static Response lazyFrom(final Intent data) {
+    if (data == null) throw new NullPointerException("data");
+    return new LazyResponse() {
+      @Override String stringExtra(String name) {
+        return data.getStringExtra(name);
+      }
+
+      @Override String[] stringArrayExtra(String name) {
+        return data.getStringArrayExtra(name);
+      }
+    };
+  }
+
+  /**
+   * Parses the URL that Square opened after a web payment, or just its query, reversing
+   * {@link #toCallbackUrl}. Parameters that Square didn't add, such as the application's own,
+   * are ignored. {@link #status()} returns the payment's status.
+   *
+   * <p>Parses the URL in a single pass. Known error codes are matched in place, so a typical
+   * response allocates only itself, its IDs and its error code array.
+   *
+   * @throws ParseException if the URL has no status or an unknown status
+   * @throws NullPointerException if url is null
+   */
+  public static Response fromCallbackUrl(CharSequence url) throws ParseException {
+    CallbackParser parser = new CallbackParser();
+    parser.parse(url);
+
+    int[] errorCodes = NO_ERRORS;
+    String[] unknownErrors = null;
+    // Count the errors so we only allocate the array once.
+    int count = parser.errorCount();
+    if (count > 0) {
+      CharSequence chars = parser.url();
+      errorCodes = new int[count];
+      int unknownCount = 0;
+      for (int i = 0; parser.nextError(); i++) {
+        int code = ErrorCode.indexOf(chars, parser.errorStart(), parser.errorEnd());
+        if (code == -1) {
+          // Unknown, or escaped, which Square doesn't do for known codes.
+          String error = parser.error();
+          code = ErrorCode.indexOf(error);
+          if (code == -1) {
+            if (unknownErrors == null) unknownErrors = new String[count - i];
+            unknownErrors[unknownCount] = error;
+            code = -1 - unknownCount++;
+          }
+        }
+        errorCodes[i] = code;
+      }
+    }
+
+    return new Response(parser.paymentId(), parser.referenceId(), errorCodes, unknownErrors,
+        parser.status());
+  }
 }
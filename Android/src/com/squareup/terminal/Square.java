@@ -22,6 +22,8 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Entry point for Square's Android Terminal API. Interacts with the Square
@@ -34,6 +36,10 @@ import java.util.List;
  *      navigating to the Android Market.</li>
  *   <li>{@linkplain #request(Payment, int) Request a payment} through
  *      Square.</li>
+ *   <li>{@linkplain #requestAsync Request a payment asynchronously} and get
+ *      the response through a future.</li>
+ *   <li>{@linkplain #prepare(List) Prepare many payments} in the background
+ *      and request them later.</li>
  * </ol>
  *
  * For example:
@@ -70,27 +76,58 @@ public final class Square {
   /** Square package name. */
   private static final String PACKAGE = "com.squareup";
 
+  private static volatile Metrics metrics = Metrics.NONE;
+
+  private static final RequestTimer requestTimer = new RequestTimer();
+
   private final Activity activity;
   private final String applicationId;
+  private final boolean compressMetadata;
 
   /**
-   * Constructs a new instance of this API.
+   * Constructs a new instance of this API that doesn't compress metadata.
    *
    * @param activity that requests the payment and receives the response
    * @param applicationId application ID assigned by Square Inc. for the current application
    * @throws NullPointerException if activity or application ID is null
    */
   public Square(Activity activity, String applicationId) {
+    this(activity, applicationId, false);
+  }
+
+  /**
+   * Constructs a new instance of this API.
+   *
+   * @param activity that requests the payment and receives the response
+   * @param applicationId application ID assigned by Square Inc. for the current application
+   * @param compressMetadata true to compress large {@linkplain Payment#metadata(String)
+   *  metadata} in requests. See {@link TerminalUrl#of(Payment, String, boolean)}.
+   * @throws NullPointerException if activity or application ID is null
+   */
+  public Square(Activity activity, String applicationId, boolean compressMetadata) {
     if (activity == null) throw new NullPointerException("activity");
     if (applicationId == null) throw new NullPointerException("applicationId");
     this.activity = activity;
     this.applicationId = applicationId;
+    this.compressMetadata = compressMetadata;
   }
 
   /**
-   * Checks the status of the Square installation, if any, on this device.
+   * Checks the status of the Square installation, if any, on this device. The status is cached
+   * for the whole process until a package is installed, replaced or removed, or until the
+   * {@linkplain #installationStatusTtl TTL} expires, so it's cheap to check before every payment.
    */
   public InstallationStatus installationStatus() {
+    return InstallationCache.INSTANCE.installationStatus(activity,
+        new InstallationCache.Loader<InstallationStatus>() {
+          public InstallationStatus load() {
+            return loadInstallationStatus();
+          }
+        });
+  }
+
+  /** Queries the package manager for the installation status. */
+  private InstallationStatus loadInstallationStatus() {
     try {
       PackageInfo info = activity.getPackageManager().getPackageInfo(
           PACKAGE, 0);
@@ -101,9 +138,29 @@ public final class Square {
     }
   }
 
+  /**
+   * Limits how long {@link #installationStatus()} and {@link #requestInstallation()} cache
+   * package manager results. By default, results are cached until a package changes. Package
+   * changes always invalidate the cache, regardless of the TTL.
+   *
+   * @param ttl time to live. {@link Long#MAX_VALUE}, the default, caches results until a package
+   *  changes, and 0 disables caching.
+   * @param unit of ttl
+   * @throws IllegalArgumentException if ttl < 0
+   * @throws NullPointerException if unit is null
+   */
+  public static void installationStatusTtl(long ttl, TimeUnit unit) {
+    InstallationCache.INSTANCE.ttl(unit.toNanos(ttl));
+  }
+
   /** Navigates to Square in the Android Market. */
   public void requestInstallation() {
-    Intent marketIntent = getMarketIntent();
+    Intent marketIntent = InstallationCache.INSTANCE.marketIntent(activity,
+        new InstallationCache.Loader<Intent>() {
+          public Intent load() {
+            return getMarketIntent();
+          }
+        });
     if (marketIntent != null) {
       activity.startActivity(marketIntent);
     } else {
@@ -152,8 +209,6 @@ public final class Square {
     request(payment, 0);
   }
 
-  private static final Uri BASE_URL = Uri.parse("square://terminal/1.0/pay");
-
   /**
    * Requests a payment through Square. Starts Square and fills in the payment information.
    *
@@ -167,8 +222,11 @@ public final class Square {
    * <p>The Intent passed to {@code onActivityResult} can be parsed using
    * {@link Response#from(android.content.Intent)}</p>
    *
+   * <p>If you request the same payment repeatedly, pass a {@linkplain Payment#freeze() frozen}
+   * payment so it's only encoded once.
+   *
    * @param requestCode to pass to {@link android.app.Activity#onActivityResult}, >= 0
-   * @throws IllegalArgumentException if requestCode < 0
+   * @throws IllegalArgumentException if requestCode < 0 or the payment has no amount
    * @throws NullPointerException if payment is null
    * @throws android.content.ActivityNotFoundException if Square is not
    *  installed or doesn't support this version of the API
@@ -177,20 +235,150 @@ public final class Square {
     if (requestCode < 0) throw new IllegalArgumentException("requestCode < 0");
     if (payment == null) throw new NullPointerException("payment");
 
+    Intent intent = newIntent(payment, applicationId, compressMetadata);
+    requestTimer.start(requestCode, System.nanoTime());
+    activity.startActivityForResult(intent, requestCode);
+  }
+
+  /**
+   * Requests a payment through Square and returns a handle that completes when the result
+   * arrives. Allocates a request code between {@link PendingPayment#MIN_REQUEST_CODE} and
+   * {@link PendingPayment#MAX_REQUEST_CODE}, so several payments can be outstanding at once
+   * without matching request codes by hand. The activity must pass every result to {@link
+   * #response(int, int, Intent)} from {@code onActivityResult()}.
+   *
+   * @throws IllegalArgumentException if the payment has no amount
+   * @throws IllegalStateException if too many payments are outstanding
+   * @throws NullPointerException if payment is null
+   * @throws android.content.ActivityNotFoundException if Square is not
+   *  installed or doesn't support this version of the API
+   */
+  public PendingPayment requestAsync(Payment payment) {
+    if (payment == null) throw new NullPointerException("payment");
+    PendingPayment pending = PendingPayment.register();
+    try {
+      request(payment, pending.requestCode());
+    } catch (RuntimeException e) {
+      PendingPayment.unregister(pending);
+      throw e;
+    }
+    return pending;
+  }
+
+  /**
+   * Validates and encodes the given payments on a shared pool of background threads. Use
+   * {@link #request(PaymentBatch, int, int)} to request the prepared payments.
+   *
+   * @param payments to prepare, which must not be modified until the batch is done
+   * @throws NullPointerException if payments is null
+   */
+  public PaymentBatch prepare(List<Payment> payments) {
+    return prepare(payments, PaymentBatch.defaultExecutor());
+  }
+
+  /**
+   * Validates and encodes the given payments using the given executor. Use
+   * {@link #request(PaymentBatch, int, int)} to request the prepared payments.
+   *
+   * @param payments to prepare, which must not be modified until the batch is done
+   * @param executor runs one task per payment
+   * @throws NullPointerException if payments or executor is null
+   */
+  public PaymentBatch prepare(List<Payment> payments, Executor executor) {
+    if (payments == null) throw new NullPointerException("payments");
+    if (executor == null) throw new NullPointerException("executor");
+    return new PaymentBatch(payments, applicationId, compressMetadata, executor);
+  }
+
+  /**
+   * Requests a payment that was prepared in a batch. Behaves like {@link #request(Payment,
+   * int)}, except the payment has already been validated and encoded. Waits for the payment
+   * to be prepared if it isn't yet.
+   *
+   * @param index of the payment in the batch
+   * @param requestCode to pass to {@link android.app.Activity#onActivityResult}, >= 0
+   * @throws IllegalArgumentException if requestCode < 0 or the payment is invalid, in which case
+   *  the cause is the validation error
+   * @throws IndexOutOfBoundsException if index is out of range
+   * @throws NullPointerException if batch is null
+   * @throws InterruptedException if interrupted while waiting for the payment to be prepared
+   */
+  public void request(PaymentBatch batch, int index, int requestCode)
+      throws InterruptedException {
+    if (requestCode < 0) throw new IllegalArgumentException("requestCode < 0");
+    if (batch == null) throw new NullPointerException("batch");
+
+    Intent intent = batch.intent(index);
+    if (intent == null) {
+      // The (String, Throwable) constructor requires API level 9.
+      IllegalArgumentException e =
+          new IllegalArgumentException("Invalid payment at index " + index + ".");
+      e.initCause(batch.error(index));
+      throw e;
+    }
+
+    // Copy the intent in case the same payment is requested again.
+    intent = new Intent(intent);
+    requestTimer.start(requestCode, System.nanoTime());
+    activity.startActivityForResult(intent, requestCode);
+  }
+
+  /**
+   * Converts the result of a payment request to a Response, completes the {@link
+   * PendingPayment} if it was {@linkplain #requestAsync requested asynchronously}, and reports
+   * it to the installed {@linkplain #metrics(Metrics) metrics}. Call this from {@link
+   * android.app.Activity#onActivityResult Activity.onActivityResult()} instead of {@link
+   * Response#from(Intent)}.
+   *
+   * @return the response, or null if data is null, which happens when the user cancels
+   */
+  public static Response response(int requestCode, int resultCode, Intent data) {
+    long latency = requestTimer.stop(requestCode, System.nanoTime());
+    Response response = data == null ? null : Response.from(data);
+    // Square cancels with a response when the request had errors.
+    boolean canceled = resultCode == Activity.RESULT_CANCELED;
+    String status = response == null ? Response.STATUS_CANCELLED
+        : response.status(canceled && response.errorCount() == 0);
+
+    Metrics metrics = Square.metrics;
+    metrics.resultReceived(requestCode, latency, status);
+    if (response != null) {
+      for (int i = 0; i < response.errorCount(); i++) metrics.resultError(response.error(i));
+    }
+
+    PendingPayment.complete(requestCode, response, status);
+    return response;
+  }
+
+  /**
+   * Installs metrics that time and count payment requests for the whole process. The default
+   * is {@link Metrics#NONE}.
+   *
+   * @throws NullPointerException if metrics is null
+   */
+  public static void metrics(Metrics metrics) {
+    if (metrics == null) throw new NullPointerException("metrics");
+    Square.metrics = metrics;
+  }
+
+  /**
+   * Creates an intent that requests the given payment through Square.
+   *
+   * @throws IllegalArgumentException if the payment has no amount
+   */
+  /*package*/ static Intent newIntent(Payment payment, String applicationId,
+      boolean compressMetadata) {
     Intent intent = new Intent(Intent.ACTION_DEFAULT);
 
     // The calling app should show up in "recents", not Square.
     intent.addFlags(Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS);
 
-    // Construct URL.
-    Uri.Builder builder = BASE_URL.buildUpon();
-    TerminalParameters parameters = new TerminalParameters().copyFrom(payment);
-    parameters.app_id = applicationId;
-    parameters.appendTo(builder);
-    Uri url = builder.build();
-    intent.setData(url);
+    long start = System.nanoTime();
+    String url = TerminalUrl.of(payment, applicationId, compressMetadata);
+    metrics.requestEncoded(System.nanoTime() - start, url.length());
+    intent.setData(Uri.parse(url));
 
-    activity.startActivityForResult(intent, requestCode);
+    return intent;
   }
 
   /**
@@ -0,0 +1,184 @@
+package com.squareup.terminal;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryCodecTest {
+
+  private static Payment fullPayment() {
+    return new Payment()
+        .amount(123456789, Currency.USD)
+        .defaultEmail("jane@example.com")
+        .defaultPhone("555-1212")
+        .description("caf\u00e9 \u20ac \ud83d\ude00")
+        .metadata("{\"table\":12}")
+        .referenceId("donation-000042")
+        .recipient("my-to-id")
+        .offerReceipt(false);
+  }
+
+  private static ByteBuffer encode(Payment payment) {
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryCodec.encodedLength(payment));
+    BinaryCodec.write(payment, buffer);
+    assertFalse(buffer.hasRemaining());
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer encode(Response response) {
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryCodec.encodedLength(response));
+    BinaryCodec.write(response, buffer);
+    assertFalse(buffer.hasRemaining());
+    buffer.flip();
+    return buffer;
+  }
+
+  @Test
+  public void fullPaymentRoundTrip() throws ParseException {
+    Payment p = BinaryCodec.readPayment(encode(fullPayment()));
+    assertEquals(123456789, p.amount().amount());
+    assertEquals(Currency.USD, p.amount().currency());
+    assertEquals("jane@example.com", p.defaultEmail());
+    assertEquals("555-1212", p.defaultPhone());
+    assertEquals("caf\u00e9 \u20ac \ud83d\ude00", p.description());
+    assertEquals("{\"table\":12}", p.metadata());
+    assertEquals("donation-000042", p.referenceId());
+    assertEquals("my-to-id", p.recipient());
+    assertFalse(p.offerReceipt());
+  }
+
+  @Test
+  public void emptyPaymentRoundTrip() throws ParseException {
+    ByteBuffer buffer = encode(new Payment());
+    assertEquals(3, buffer.remaining());
+    Payment p = BinaryCodec.readPayment(buffer);
+    assertNull(p.amount());
+    assertNull(p.description());
+    assertTrue(p.offerReceipt());
+  }
+
+  @Test
+  public void unpairedSurrogate() throws ParseException {
+    Payment p = BinaryCodec.readPayment(encode(new Payment().description("a\ud83db")));
+    assertEquals("a?b", p.description());
+  }
+
+  @Test
+  public void readsConsecutiveRecordsFromDirectBuffer() throws ParseException {
+    Payment payment = fullPayment();
+    Response response = new Response("8CsZ2gTHfEG1dXyQ", "donation-000042");
+    ByteBuffer buffer = ByteBuffer.allocateDirect(
+        BinaryCodec.encodedLength(payment) + BinaryCodec.encodedLength(response));
+    BinaryCodec.write(payment, buffer);
+    BinaryCodec.write(response, buffer);
+    buffer.flip();
+    assertEquals("my-to-id", BinaryCodec.readPayment(buffer).recipient());
+    assertEquals("8CsZ2gTHfEG1dXyQ", BinaryCodec.readResponse(buffer).paymentId());
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test
+  public void smallerThanQuery() {
+    Payment payment = fullPayment();
+    TerminalParameters parameters = new TerminalParameters().copyFrom(payment);
+    assertTrue(BinaryCodec.encodedLength(payment) < parameters.queryLength());
+  }
+
+  @Test
+  public void successfulResponseRoundTrip() throws ParseException {
+    Response r = BinaryCodec.readResponse(encode(new Response("8CsZ2gTHfEG1dXyQ", "ref")));
+    assertEquals("8CsZ2gTHfEG1dXyQ", r.paymentId());
+    assertEquals("ref", r.referenceId());
+    assertEquals(Collections.<String>emptyList(), r.errors());
+  }
+
+  @Test
+  public void errorResponseRoundTrip() throws ParseException {
+    Response response = new Response(null,
+        Arrays.asList("amount_too_small", "something_new", "to_invalid_recipient"));
+    ByteBuffer buffer = encode(response);
+    // Header, count, known code, unknown marker and string, known code.
+    assertEquals(3 + 1 + 1 + 1 + 1 + 13 + 1, buffer.remaining());
+    Response r = BinaryCodec.readResponse(buffer);
+    assertNull(r.paymentId());
+    assertNull(r.referenceId());
+    assertEquals(response.errors(), r.errors());
+  }
+
+  @Test
+  public void nullErrorRoundTrip() throws ParseException {
+    Response response =
+        new Response(null, Arrays.asList("gremlins", null, "amount_too_small"));
+    ByteBuffer buffer = encode(response);
+    // Header, count, unknown marker and string, null marker, known code.
+    assertEquals(3 + 1 + 1 + 1 + 8 + 1 + 1, buffer.remaining());
+    Response r = BinaryCodec.readResponse(buffer);
+    assertEquals(Arrays.asList("gremlins", null, "amount_too_small"), r.errors());
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test
+  public void presenceBitsAreVarint() throws ParseException {
+    // Offering a receipt sets no bit, so the amount's bit fits in one byte.
+    ByteBuffer buffer = encode(new Payment().amount(1, Currency.USD));
+    assertEquals(2 + 1 + 1 + 1, buffer.remaining());
+    assertEquals(1, buffer.get(2));
+
+    // NO_RECEIPT is the eighth bit, which needs a second byte.
+    buffer = encode(new Payment().offerReceipt(false));
+    assertEquals(2 + 2, buffer.remaining());
+    assertFalse(BinaryCodec.readPayment(buffer).offerReceipt());
+  }
+
+  @Test
+  public void truncated() {
+    ByteBuffer buffer = encode(fullPayment());
+    for (int limit = 0; limit < buffer.capacity(); limit++) {
+      buffer.clear().limit(limit);
+      try {
+        BinaryCodec.readPayment(buffer);
+        fail("limit: " + limit);
+      } catch (ParseException expected) {
+      }
+    }
+  }
+
+  @Test
+  public void badHeader() {
+    assertParseException(new byte[] { 'X', 0x11, 0 });
+    assertParseException(new byte[] { 'S', 0x21, 0 }); // Newer version.
+    assertParseException(new byte[] { 'S', 0x12, 0 }); // Response, not payment.
+  }
+
+  @Test
+  public void invalidValue() {
+    // 141 chars is too long for a description.
+    ByteBuffer buffer = ByteBuffer.allocate(3 + 2 + 141);
+    buffer.put((byte) 'S').put((byte) 0x11).put((byte) 8).put((byte) 0x8d).put((byte) 1);
+    while (buffer.hasRemaining()) buffer.put((byte) 'a');
+    assertParseException(buffer.array());
+  }
+
+  @Test(expected = java.nio.BufferOverflowException.class)
+  public void overflow() {
+    Payment payment = fullPayment();
+    BinaryCodec.write(payment, ByteBuffer.allocate(BinaryCodec.encodedLength(payment) - 1));
+  }
+
+  private static void assertParseException(byte[] bytes) {
+    try {
+      BinaryCodec.readPayment(ByteBuffer.wrap(bytes));
+      fail();
+    } catch (ParseException expected) {
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.squareup.terminal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CountingMetricsTest {
+  @Test
+  public void counts() {
+    CountingMetrics metrics = new CountingMetrics();
+    metrics.requestEncoded(1500, 120);
+    metrics.requestEncoded(2500, 130);
+    metrics.resultReceived(0, 1000000, Response.STATUS_SUCCESSFUL);
+    metrics.resultReceived(0, -1, Response.STATUS_ERROR);
+    metrics.resultError("amount_too_small");
+    metrics.resultError("amount_too_small");
+    metrics.resultError("something_new");
+
+    assertEquals(2, metrics.encodeNanos().count());
+    assertEquals(4000, metrics.encodeNanos().sum());
+    assertEquals(250, metrics.urlLengths().sum());
+    assertEquals(1, metrics.latencyNanos().count());
+    assertEquals(1, metrics.unknownLatencies());
+    assertEquals(1, metrics.statusCount(Response.STATUS_SUCCESSFUL));
+    assertEquals(1, metrics.statusCount(Response.STATUS_ERROR));
+    assertEquals(0, metrics.statusCount(Response.STATUS_CANCELLED));
+    assertEquals(2, metrics.errorCount("amount_too_small"));
+    assertEquals(0, metrics.errorCount("amount_missing"));
+    assertEquals(1, metrics.errorCount("another_new_code"));
+  }
+
+  @Test
+  public void histogramBuckets() {
+    assertEquals(0, CountingMetrics.Histogram.bucket(0));
+    assertEquals(1, CountingMetrics.Histogram.bucket(1));
+    assertEquals(2, CountingMetrics.Histogram.bucket(2));
+    assertEquals(2, CountingMetrics.Histogram.bucket(3));
+    assertEquals(11, CountingMetrics.Histogram.bucket(1024));
+    assertEquals(63, CountingMetrics.Histogram.bucket(Long.MAX_VALUE));
+    assertEquals(1024, CountingMetrics.Histogram.bucketLowerBound(11));
+  }
+
+  @Test
+  public void quantileUpperBound() {
+    CountingMetrics.Histogram histogram = new CountingMetrics().latencyNanos();
+    assertEquals(0, histogram.quantileUpperBound(0.5));
+    for (int i = 0; i < 90; i++) histogram.record(100);
+    for (int i = 0; i < 10; i++) histogram.record(5000);
+    assertEquals(128, histogram.quantileUpperBound(0.5));
+    assertEquals(128, histogram.quantileUpperBound(0.9));
+    assertEquals(8192, histogram.quantileUpperBound(0.99));
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, histogram.quantileUpperBound(1));
+  }
+
+  @Test
+  public void requestTimer() {
+    RequestTimer timer = new RequestTimer();
+    assertEquals(-1, timer.stop(7, 100));
+    timer.start(7, 100);
+    timer.start(8, 150);
+    assertEquals(400, timer.stop(7, 500));
+    assertEquals(-1, timer.stop(7, 600)); // Already stopped.
+
+    // 72 shares a slot with 8 and replaces it.
+    timer.start(72, 200);
+    assertEquals(-1, timer.stop(8, 700));
+    assertEquals(500, timer.stop(72, 700));
+  }
+
+  @Test
+  public void requestTimerRestart() {
+    RequestTimer timer = new RequestTimer();
+    timer.start(7, 100);
+    timer.start(7, 300);
+    assertEquals(50, timer.stop(7, 350));
+    assertEquals(-1, timer.stop(7, 400));
+
+    timer.start(Integer.MAX_VALUE, 100);
+    assertEquals(-1, timer.stop(63, 200)); // Same slot.
+    assertEquals(100, timer.stop(Integer.MAX_VALUE, 200));
+  }
+
+  @Test
+  public void canceledResponse() {
+    CountingMetrics metrics = new CountingMetrics();
+    Square.metrics(metrics);
+    try {
+      assertNull(Square.response(3, 0 /* RESULT_CANCELED */, null));
+      assertEquals(1, metrics.statusCount(Response.STATUS_CANCELLED));
+      assertEquals(1, metrics.unknownLatencies());
+    } finally {
+      Square.metrics(Metrics.NONE);
+    }
+  }
+}
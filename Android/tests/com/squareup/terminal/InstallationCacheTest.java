@@ -0,0 +1,157 @@
+package com.squareup.terminal;
+
+import android.content.Context;
+import android.content.Intent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link InstallationCache}. Registering a receiver requires the Android runtime,
+ * so the cache under test records registrations instead and package changes are simulated by
+ * calling {@link InstallationCache#invalidate()}, like the receiver does.
+ */
+public class InstallationCacheTest {
+  private final TestCache cache = new TestCache();
+
+  private static class TestCache extends InstallationCache {
+    int registrations;
+
+    @Override void registerReceiver(Context context) {
+      registrations++;
+    }
+  }
+
+  /** Returns AVAILABLE, MISSING, AVAILABLE, ... and counts loads. */
+  private static class CountingLoader
+      implements InstallationCache.Loader<Square.InstallationStatus> {
+    int loads;
+
+    public Square.InstallationStatus load() {
+      return loads++ % 2 == 0 ? Square.InstallationStatus.AVAILABLE
+          : Square.InstallationStatus.MISSING;
+    }
+  }
+
+  @Test
+  public void cachesUntilAPackageChangesByDefault() {
+    CountingLoader loader = new CountingLoader();
+    assertEquals(Square.InstallationStatus.AVAILABLE, cache.installationStatus(null, loader, 0));
+    assertEquals(Square.InstallationStatus.AVAILABLE,
+        cache.installationStatus(null, loader, Long.MAX_VALUE - 1));
+    assertEquals(1, loader.loads);
+
+    cache.invalidate();
+    assertEquals(Square.InstallationStatus.MISSING,
+        cache.installationStatus(null, loader, Long.MAX_VALUE - 1));
+    assertEquals(2, loader.loads);
+  }
+
+  @Test
+  public void entriesExpireAfterTtl() {
+    CountingLoader loader = new CountingLoader();
+    cache.ttl(10);
+    cache.installationStatus(null, loader, 100);
+    cache.installationStatus(null, loader, 109);
+    assertEquals(1, loader.loads);
+    assertEquals(Square.InstallationStatus.MISSING, cache.installationStatus(null, loader, 110));
+    assertEquals(2, loader.loads);
+  }
+
+  @Test
+  public void ttlHandlesNanoTimeWraparound() {
+    CountingLoader loader = new CountingLoader();
+    cache.ttl(10);
+    cache.installationStatus(null, loader, Long.MAX_VALUE - 5);
+    cache.installationStatus(null, loader, Long.MIN_VALUE + 3);
+    assertEquals(1, loader.loads);
+    cache.installationStatus(null, loader, Long.MIN_VALUE + 4);
+    assertEquals(2, loader.loads);
+  }
+
+  @Test
+  public void zeroTtlDisablesCaching() {
+    CountingLoader loader = new CountingLoader();
+    cache.ttl(0);
+    cache.installationStatus(null, loader, 100);
+    cache.installationStatus(null, loader, 100);
+    assertEquals(2, loader.loads);
+  }
+
+  @Test
+  public void changingTtlInvalidates() {
+    CountingLoader loader = new CountingLoader();
+    cache.installationStatus(null, loader, 0);
+    cache.ttl(Long.MAX_VALUE);
+    cache.installationStatus(null, loader, 0);
+    assertEquals(2, loader.loads);
+  }
+
+  @Test
+  public void negativeTtl() {
+    try {
+      cache.ttl(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void invalidationDuringLoadMarksEntryStale() {
+    final int[] loads = new int[1];
+    InstallationCache.Loader<Square.InstallationStatus> loader =
+        new InstallationCache.Loader<Square.InstallationStatus>() {
+          public Square.InstallationStatus load() {
+            // A package changed while we were asking the package manager.
+            if (loads[0]++ == 0) cache.invalidate();
+            return Square.InstallationStatus.OUTDATED;
+          }
+        };
+    cache.installationStatus(null, loader, 0);
+    cache.installationStatus(null, loader, 0);
+    cache.installationStatus(null, loader, 0);
+    assertEquals(2, loads[0]);
+  }
+
+  @Test
+  public void invalidationDiscardsEveryEntry() {
+    final int[] loads = new int[1];
+    InstallationCache.Loader<Intent> loader = new InstallationCache.Loader<Intent>() {
+      public Intent load() {
+        loads[0]++;
+        return null;
+      }
+    };
+    CountingLoader statusLoader = new CountingLoader();
+    assertNull(cache.marketIntent(null, loader, 0));
+    cache.installationStatus(null, statusLoader, 0);
+    assertNull(cache.marketIntent(null, loader, 0));
+    assertEquals(1, loads[0]);
+
+    cache.invalidate();
+    cache.marketIntent(null, loader, 0);
+    cache.installationStatus(null, statusLoader, 0);
+    assertEquals(2, loads[0]);
+    assertEquals(2, statusLoader.loads);
+  }
+
+  @Test
+  public void registersReceiverOnceBeforeFirstLoad() {
+    CountingLoader loader = new CountingLoader();
+    assertEquals(0, cache.registrations);
+    cache.installationStatus(null, loader, 0);
+    assertEquals(1, cache.registrations);
+
+    // Later misses, including ones for other entries, don't register again.
+    cache.invalidate();
+    cache.installationStatus(null, loader, 0);
+    cache.marketIntent(null, new InstallationCache.Loader<Intent>() {
+      public Intent load() {
+        return null;
+      }
+    }, 0);
+    assertEquals(1, cache.registrations);
+  }
+}
@@ -0,0 +1,94 @@
+package com.squareup.terminal;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link LazyResponse}. Extras come from a map instead of an Intent, which
+ * requires the Android runtime.
+ */
+public class LazyResponseTest {
+  @Test
+  public void testSuccessfulReadsOnlyWhatItNeeds() {
+    MapResponse r = new MapResponse();
+    r.extras.put(Response.PAYMENT_ID, "paymentId");
+    r.extras.put(Response.REFERENCE_ID, "referenceId");
+    assertEquals("paymentId", r.paymentId());
+    assertEquals("paymentId", r.paymentId());
+    assertEquals(Arrays.asList(Response.PAYMENT_ID), r.reads);
+    assertFalse(r.hasErrors());
+    assertEquals(0, r.errorCount());
+    assertTrue(r.errors().isEmpty());
+    assertEquals(Arrays.asList(Response.PAYMENT_ID, Response.ERRORS), r.reads);
+  }
+
+  @Test
+  public void testMissingExtras() {
+    MapResponse r = new MapResponse();
+    assertNull(r.paymentId());
+    assertNull(r.referenceId());
+    assertNull(r.paymentId());
+    assertFalse(r.hasErrors());
+    assertFalse(r.hasErrors());
+    assertEquals(Arrays.asList(Response.PAYMENT_ID, Response.REFERENCE_ID, Response.ERRORS),
+        r.reads);
+  }
+
+  @Test
+  public void testErrors() {
+    MapResponse r = new MapResponse();
+    r.extras.put(Response.REFERENCE_ID, "referenceId");
+    r.extras.put(Response.ERRORS, new String[] { "amount_missing", "unknown" });
+    assertTrue(r.hasErrors());
+    assertEquals(2, r.errorCount());
+    assertEquals(Arrays.asList("amount_missing", "unknown"), r.errors());
+    assertEquals(ErrorCode.indexOf("amount_missing"), r.errorCode(0));
+    assertEquals(-1, r.errorCode(1));
+    assertEquals(Response.STATUS_ERROR, r.status(false));
+    assertEquals(Arrays.asList(Response.ERRORS), r.reads);
+  }
+
+  @Test
+  public void testMatchesEagerResponse() {
+    MapResponse lazy = new MapResponse();
+    lazy.extras.put(Response.REFERENCE_ID, "reference id");
+    lazy.extras.put(Response.ERRORS, new String[] { "able", "baker" });
+    Response eager = new Response("reference id", Arrays.asList("able", "baker"));
+    assertEquals(eager.toCallbackUrl("http://callback.url.com", false),
+        lazy.toCallbackUrl("http://callback.url.com", false));
+    assertEquals(eager.toCallbackUrl("http://callback.url.com", true),
+        lazy.toCallbackUrl("http://callback.url.com", true));
+    ByteBuffer expected = ByteBuffer.allocate(BinaryCodec.encodedLength(eager));
+    BinaryCodec.write(eager, expected);
+    ByteBuffer actual = ByteBuffer.allocate(BinaryCodec.encodedLength(lazy));
+    BinaryCodec.write(lazy, actual);
+    assertEquals(expected.flip(), actual.flip());
+  }
+
+  /** Reads extras from a map and records which ones were read. */
+  private static class MapResponse extends LazyResponse {
+    final Map<String, Object> extras = new HashMap<String, Object>();
+    final List<String> reads = new ArrayList<String>();
+
+    @Override String stringExtra(String name) {
+      reads.add(name);
+      return (String) extras.get(name);
+    }
+
+    @Override String[] stringArrayExtra(String name) {
+      reads.add(name);
+      return (String[]) extras.get(name);
+    }
+  }
+}
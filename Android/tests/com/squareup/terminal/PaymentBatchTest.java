@@ -0,0 +1,149 @@
+package com.squareup.terminal;
+
+import android.content.Intent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for {@link PaymentBatch}. Intents require the Android runtime, so valid payments
+ * encode to null and invalid ones fail with their reference ID.
+ */
+public class PaymentBatchTest {
+  /** Fails payments whose reference ID starts with "bad". */
+  private static final PaymentBatch.Encoder ENCODER = new PaymentBatch.Encoder() {
+    public Intent encode(Payment payment) {
+      if (payment.referenceId().startsWith("bad")) {
+        throw new IllegalArgumentException(payment.referenceId());
+      }
+      return null;
+    }
+  };
+
+  /** Holds tasks until they're run explicitly. */
+  private static class ManualExecutor implements Executor {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    public synchronized void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    synchronized void runInReverse() {
+      for (int i = tasks.size() - 1; i >= 0; i--) tasks.get(i).run();
+    }
+  }
+
+  private static List<Payment> payments(String... referenceIds) {
+    List<Payment> payments = new ArrayList<Payment>();
+    for (String referenceId : referenceIds) payments.add(new Payment().referenceId(referenceId));
+    return payments;
+  }
+
+  @Test
+  public void resultsAreInPaymentOrder() throws Exception {
+    ManualExecutor executor = new ManualExecutor();
+    PaymentBatch batch =
+        new PaymentBatch(payments("bad0", "ok1", "bad2", "bad3"), executor, ENCODER);
+    assertEquals(4, batch.size());
+    executor.runInReverse();
+    assertTrue(batch.isDone());
+    assertEquals("bad0", batch.error(0).getMessage());
+    assertNull(batch.error(1));
+    assertEquals("bad2", batch.error(2).getMessage());
+    assertEquals("bad3", batch.error(3).getMessage());
+  }
+
+  @Test
+  public void invalidPayment() throws Exception {
+    ManualExecutor executor = new ManualExecutor();
+    List<Payment> payments = payments("ok0", "bad1");
+    payments.add(null);
+    PaymentBatch batch = new PaymentBatch(payments, executor, ENCODER);
+    executor.runInReverse();
+
+    // An invalid payment doesn't affect the rest of the batch.
+    assertNull(batch.error(0));
+    assertNull(batch.intent(0));
+    RuntimeException error = batch.error(1);
+    assertSame(IllegalArgumentException.class, error.getClass());
+    assertEquals("bad1", error.getMessage());
+    assertNull(batch.intent(1));
+    assertSame(NullPointerException.class, batch.error(2).getClass());
+  }
+
+  @Test
+  public void errorsAreRethrown() throws Exception {
+    PaymentBatch batch = new PaymentBatch(payments("ok0"), new ManualExecutor() {
+      @Override public synchronized void execute(Runnable task) {
+        task.run();
+      }
+    }, new PaymentBatch.Encoder() {
+      public Intent encode(Payment payment) {
+        throw new OutOfMemoryError();
+      }
+    });
+    try {
+      batch.error(0);
+      fail();
+    } catch (OutOfMemoryError expected) {
+    }
+  }
+
+  @Test
+  public void waitsForPaymentsThatArentReady() throws Exception {
+    ManualExecutor executor = new ManualExecutor();
+    final PaymentBatch batch = new PaymentBatch(payments("ok0", "bad1"), executor, ENCODER);
+    assertFalse(batch.isDone());
+    assertFalse(batch.isDone(1));
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final RuntimeException[] result = new RuntimeException[1];
+    Thread waiter = new Thread() {
+      @Override public void run() {
+        started.countDown();
+        try {
+          result[0] = batch.error(1);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    waiter.start();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    waiter.join(50);
+    assertTrue(waiter.isAlive());
+
+    executor.runInReverse();
+    waiter.join(5000);
+    assertFalse(waiter.isAlive());
+    assertTrue(batch.isDone(1));
+    assertEquals("bad1", result[0].getMessage());
+  }
+
+  @Test
+  public void preparesEveryPayment() throws Exception {
+    final List<String> encoded = new ArrayList<String>();
+    ManualExecutor executor = new ManualExecutor();
+    new PaymentBatch(payments("a", "b", "c"), executor, new PaymentBatch.Encoder() {
+      public Intent encode(Payment payment) {
+        encoded.add(payment.referenceId());
+        return null;
+      }
+    });
+    assertEquals(3, executor.tasks.size());
+    assertTrue(encoded.isEmpty());
+    executor.runInReverse();
+    assertEquals(Arrays.asList("c", "b", "a"), encoded);
+  }
+}
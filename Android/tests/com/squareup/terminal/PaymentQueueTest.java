@@ -0,0 +1,207 @@
+package com.squareup.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class PaymentQueueTest {
+  private File directory;
+  private PaymentQueue queue;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("PaymentQueueTest", "");
+    directory.delete();
+    queue = new PaymentQueue(directory);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    queue.close();
+    for (File file : directory.listFiles()) file.delete();
+    directory.delete();
+  }
+
+  private PaymentQueue reopen() throws Exception {
+    queue.close();
+    return queue = new PaymentQueue(directory);
+  }
+
+  private static Payment payment(int cents) {
+    return new Payment()
+        .amount(cents, Currency.USD)
+        .description("caf\u00e9 & \"more\"")
+        .referenceId("r" + cents)
+        .offerReceipt(false);
+  }
+
+  @Test
+  public void fifo() {
+    assertNull(queue.peek());
+    queue.add(payment(1));
+    queue.add(payment(2));
+    assertEquals(2, queue.size());
+    assertEquals("r1", queue.peek().referenceId());
+    assertEquals("r1", queue.remove().referenceId());
+    assertEquals("r2", queue.remove().referenceId());
+    assertNull(queue.peek());
+  }
+
+  @Test
+  public void copiesPayment() {
+    Payment payment = payment(1);
+    queue.add(payment);
+    payment.description("changed");
+    assertEquals("caf\u00e9 & \"more\"", queue.peek().description());
+  }
+
+  @Test
+  public void survivesReopen() throws Exception {
+    queue.add(payment(1));
+    queue.add(payment(2));
+    queue.add(payment(3));
+    queue.remove();
+
+    Payment payment = reopen().peek();
+    assertEquals(2, queue.size());
+    assertEquals(2, payment.amount().amount());
+    assertEquals(Currency.USD, payment.amount().currency());
+    assertEquals("caf\u00e9 & \"more\"", payment.description());
+    assertEquals("r2", payment.referenceId());
+    assertEquals(false, payment.offerReceipt());
+  }
+
+  @Test
+  public void discardsTornRecord() throws Exception {
+    queue.add(payment(1));
+    queue.add(payment(2));
+    queue.flush();
+
+    // Simulate a crash halfway through writing the second record.
+    RandomAccessFile log = new RandomAccessFile(new File(directory, "payments.log"), "rw");
+    try {
+      log.setLength(log.length() - 3);
+    } finally {
+      log.close();
+    }
+
+    reopen();
+    assertEquals(1, queue.size());
+    assertEquals("r1", queue.peek().referenceId());
+
+    // New records follow the surviving one.
+    queue.add(payment(3));
+    reopen();
+    assertEquals(2, queue.size());
+    queue.remove();
+    assertEquals("r3", queue.peek().referenceId());
+  }
+
+  @Test
+  public void logShorterThanHeadIsEmpty() throws Exception {
+    queue.add(payment(1));
+    queue.flush();
+    long firstRecordEnd = new File(directory, "payments.log").length();
+    queue.add(payment(2));
+    queue.add(payment(3));
+    queue.remove();
+    queue.remove();
+    queue.flush();
+
+    // Lose the records after the first, which was already removed.
+    RandomAccessFile log = new RandomAccessFile(new File(directory, "payments.log"), "rw");
+    try {
+      log.setLength(firstRecordEnd);
+    } finally {
+      log.close();
+    }
+
+    // Don't replay the removed payment.
+    reopen();
+    assertEquals(0, queue.size());
+    assertNull(queue.peek());
+    assertEquals(0, new File(directory, "payments.log").length());
+
+    queue.add(payment(4));
+    reopen();
+    assertEquals(1, queue.size());
+    assertEquals("r4", queue.peek().referenceId());
+  }
+
+  @Test
+  public void tornIndexWriteKeepsPreviousHead() throws Exception {
+    queue.add(payment(1));
+    queue.add(payment(2));
+    queue.add(payment(3));
+    queue.remove();
+    queue.flush();
+    queue.remove();
+    queue.flush();
+
+    // Simulate a crash halfway through writing the second head, which went to the first slot.
+    corruptIndex(0);
+
+    // The payment is requested again, like it would be after a crash before the write.
+    reopen();
+    assertEquals(2, queue.size());
+    assertEquals("r2", queue.peek().referenceId());
+  }
+
+  @Test
+  public void corruptIndexFailsClosed() throws Exception {
+    queue.add(payment(1));
+    queue.add(payment(2));
+    queue.remove();
+    queue.flush();
+    queue.close();
+
+    corruptIndex(0);
+    corruptIndex(20);
+    try {
+      queue = new PaymentQueue(directory);
+      fail();
+    } catch (IOException expected) {
+    }
+    // Leave an empty queue for tearDown() to close.
+    for (File file : directory.listFiles()) file.delete();
+    queue = new PaymentQueue(directory);
+  }
+
+  private void corruptIndex(long position) throws IOException {
+    RandomAccessFile index = new RandomAccessFile(new File(directory, "payments.idx"), "rw");
+    try {
+      index.seek(position + 8);
+      index.writeLong(-1);
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void compactsWhenEmpty() throws Exception {
+    for (int i = 0; i < 10; i++) queue.add(payment(i));
+    for (int i = 0; i < 10; i++) queue.remove();
+    queue.flush();
+    assertEquals(0, new File(directory, "payments.log").length());
+
+    queue.add(payment(42));
+    reopen();
+    assertEquals("r42", queue.peek().referenceId());
+  }
+
+  @Test
+  public void rejectsPaymentWithoutAmount() {
+    try {
+      queue.add(new Payment());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.squareup.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PendingPaymentTest {
+  @Test
+  public void completes() throws Exception {
+    PendingPayment payment = PendingPayment.register();
+    int requestCode = payment.requestCode();
+    assertTrue(requestCode >= PendingPayment.MIN_REQUEST_CODE);
+    assertTrue(requestCode <= PendingPayment.MAX_REQUEST_CODE);
+    assertFalse(payment.isDone());
+    assertNull(payment.status());
+    try {
+      payment.get(1, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (TimeoutException expected) {
+    }
+
+    final List<PendingPayment> results = new ArrayList<PendingPayment>();
+    PendingPayment.Listener listener = new PendingPayment.Listener() {
+      public void onResult(PendingPayment payment) {
+        results.add(payment);
+      }
+    };
+    payment.listener(listener);
+
+    Response response = new Response("p1", "r1");
+    assertTrue(PendingPayment.complete(requestCode, response, Response.STATUS_SUCCESSFUL));
+    assertTrue(payment.isDone());
+    assertSame(response, payment.get());
+    assertEquals(Response.STATUS_SUCCESSFUL, payment.status());
+    assertEquals(1, results.size());
+
+    // Late listeners run right away.
+    payment.listener(listener);
+    assertEquals(2, results.size());
+
+    // Completing again does nothing.
+    assertFalse(PendingPayment.complete(requestCode, response, Response.STATUS_ERROR));
+    assertEquals(Response.STATUS_SUCCESSFUL, payment.status());
+  }
+
+  @Test
+  public void ignoresOtherRequestCodes() {
+    assertFalse(PendingPayment.complete(0, null, Response.STATUS_CANCELLED));
+    assertFalse(PendingPayment.complete(PendingPayment.MAX_REQUEST_CODE + 1, null,
+        Response.STATUS_CANCELLED));
+  }
+
+  @Test
+  public void canceledThroughSquareResponse() throws Exception {
+    PendingPayment payment = PendingPayment.register();
+    assertNull(Square.response(payment.requestCode(), 0 /* RESULT_CANCELED */, null));
+    assertTrue(payment.isDone());
+    assertNull(payment.get());
+    assertEquals(Response.STATUS_CANCELLED, payment.status());
+    assertFalse(payment.isCancelled());
+    assertFalse(payment.cancel(true));
+  }
+
+  @Test
+  public void tooManyOutstanding() {
+    int codes = PendingPayment.MAX_REQUEST_CODE - PendingPayment.MIN_REQUEST_CODE + 1;
+    List<PendingPayment> payments = new ArrayList<PendingPayment>();
+    try {
+      for (int i = 0; i < codes; i++) payments.add(PendingPayment.register());
+      try {
+        PendingPayment.register();
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+
+      // Freeing a code makes it available again.
+      PendingPayment.unregister(payments.remove(0));
+      payments.add(PendingPayment.register());
+    } finally {
+      for (PendingPayment payment : payments) PendingPayment.unregister(payment);
+    }
+  }
+}
@@ -0,0 +1,225 @@
+package com.squareup.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReconciliationIndexTest {
+  private File directory;
+  private ReconciliationIndex index;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("ReconciliationIndexTest", "");
+    directory.delete();
+    index = new ReconciliationIndex(directory);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    index.close();
+    for (File file : directory.listFiles()) file.delete();
+    directory.delete();
+  }
+
+  private File log() {
+    File[] logs = directory.listFiles();
+    File log = null;
+    for (File file : logs) {
+      if (file.getName().endsWith(".log")) {
+        assertNull("More than one log", log);
+        log = file;
+      }
+    }
+    return log;
+  }
+
+  @Test
+  public void putAndGet() throws IOException {
+    assertNull(index.get("r1"));
+    index.put(new Response("p1", "r1"));
+    index.put(new Response("r2", Arrays.asList("amount_too_small", "new_code")));
+    index.put(new Response("r3", Collections.<String>emptyList()), true);
+
+    ReconciliationIndex.Entry entry = index.get("r1");
+    assertEquals("p1", entry.paymentId());
+    assertEquals(Response.STATUS_SUCCESSFUL, entry.status());
+
+    entry = index.get("r2");
+    assertNull(entry.paymentId());
+    assertEquals(Response.STATUS_ERROR, entry.status());
+    assertEquals(Arrays.asList("amount_too_small", "new_code"), entry.errors());
+
+    assertEquals(Response.STATUS_CANCELLED, index.get("r3").status());
+    assertNull(index.get("r4"));
+    assertEquals(3, index.size());
+  }
+
+  @Test
+  public void callbackStatus() throws Exception {
+    index.put(Response.fromCallbackUrl("square_status=cancelled&square_reference_id=r1"));
+    index.put(Response.fromCallbackUrl(
+        "square_status=error&square_reference_id=r2&square_errors=amount_too_small"));
+    index.put(Response.fromCallbackUrl(
+        "square_status=successful&square_reference_id=r3&square_payment_id=p3"));
+    assertEquals(Response.STATUS_CANCELLED, index.get("r1").status());
+    assertEquals(Response.STATUS_ERROR, index.get("r2").status());
+    assertEquals(Response.STATUS_SUCCESSFUL, index.get("r3").status());
+    assertEquals("p3", index.get("r3").paymentId());
+  }
+
+  @Test
+  public void replace() throws IOException {
+    index.put(new Response("r1", Arrays.asList("to_invalid_recipient")));
+    index.put(new Response("p1", "r1"));
+    assertEquals(1, index.size());
+    assertEquals("p1", index.get("r1").paymentId());
+  }
+
+  @Test
+  public void growsAndSurvivesReopen() throws IOException {
+    for (int i = 0; i < 5000; i++) index.put(new Response("p" + i, "r" + i));
+    index.sync();
+    index.close();
+
+    index = new ReconciliationIndex(directory);
+    assertEquals(5000, index.size());
+    for (int i = 0; i < 5000; i++) assertEquals("p" + i, index.get("r" + i).paymentId());
+    assertNull(index.get("r5000"));
+  }
+
+  @Test
+  public void compact() throws IOException {
+    for (int i = 0; i < 100; i++) index.put(new Response("p" + i, "r" + (i % 10)));
+    long before = log().length();
+    index.compact();
+    assertTrue(log().length() * 5 < before);
+    for (int i = 90; i < 100; i++) assertEquals("p" + i, index.get("r" + (i % 10)).paymentId());
+
+    // Appends go to the compacted log.
+    index.put(new Response("p100", "r100"));
+    assertEquals(11, index.size());
+    assertEquals("p100", index.get("r100").paymentId());
+  }
+
+  @Test
+  public void compactsAutomatically() throws IOException {
+    // Roughly 2MB of replaced responses.
+    StringBuilder paymentId = new StringBuilder();
+    for (int i = 0; i < 1000; i++) paymentId.append('p');
+    for (int i = 0; i < 2000; i++) index.put(new Response(paymentId.toString(), "r"));
+    assertTrue(log().length() < 1 << 20);
+    assertEquals(paymentId.toString(), index.get("r").paymentId());
+  }
+
+  @Test
+  public void discardsPartialRecord() throws IOException {
+    index.put(new Response("p1", "r1"));
+    index.sync();
+    index.close();
+
+    // Simulate a crash after appending to the log but before updating the table.
+    java.io.RandomAccessFile log = new java.io.RandomAccessFile(log(), "rw");
+    try {
+      log.setLength(log.length() + 7);
+    } finally {
+      log.close();
+    }
+
+    index = new ReconciliationIndex(directory);
+    index.put(new Response("p2", "r2"));
+    assertEquals("p1", index.get("r1").paymentId());
+    assertEquals("p2", index.get("r2").paymentId());
+  }
+
+  @Test
+  public void rebuildsTableWhenLogIsShort() throws IOException {
+    // Enough responses that the rebuilt table has to grow.
+    for (int i = 0; i < 600; i++) index.put(new Response("p", "x" + i));
+    index.put(new Response("r1", Arrays.asList("amount_too_small")));
+    index.put(new Response("p2", "r2"));
+    index.put(new Response("p1", "r1"));
+    index.sync();
+    long survivingLength = log().length();
+    index.put(new Response("p3", "r3"));
+    index.put(new Response("p2-again", "r2"));
+    index.sync();
+    index.close();
+
+    // Simulate losing the end of the log, including part of a record, but not the table.
+    java.io.RandomAccessFile log = new java.io.RandomAccessFile(log(), "rw");
+    try {
+      log.setLength(survivingLength + 5);
+    } finally {
+      log.close();
+    }
+
+    index = new ReconciliationIndex(directory);
+    assertTrue(index.rebuilt());
+    assertEquals(602, index.size());
+    assertEquals("p", index.get("x599").paymentId());
+    assertEquals("p1", index.get("r1").paymentId());
+    assertEquals("p2", index.get("r2").paymentId());
+    assertNull(index.get("r3"));
+    assertEquals(survivingLength, log().length());
+
+    index.put(new Response("p4", "r4"));
+    index.sync();
+    index.close();
+    index = new ReconciliationIndex(directory);
+    assertFalse(index.rebuilt());
+    assertEquals(603, index.size());
+    assertEquals("p4", index.get("r4").paymentId());
+    assertEquals("p1", index.get("r1").paymentId());
+  }
+
+  @Test
+  public void readOnly() throws IOException {
+    index.put(new Response("p1", "r1"));
+    ReconciliationIndex reader = new ReconciliationIndex(directory, true);
+    try {
+      assertEquals("p1", reader.get("r1").paymentId());
+
+      // The reader sees inserts through the shared mapping, and reopens after the writer
+      // grows and compacts the index.
+      index.put(new Response("p2", "r2"));
+      assertEquals("p2", reader.get("r2").paymentId());
+      for (int i = 0; i < 2000; i++) index.put(new Response("p" + i, "r" + i));
+      index.compact();
+      assertEquals(2000, reader.size());
+      assertEquals("p1999", reader.get("r1999").paymentId());
+
+      try {
+        reader.put(new Response("p3", "r3"));
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void readOnlyRequiresIndex() throws IOException {
+    try {
+      new ReconciliationIndex(new File(directory, "missing"), true);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void referenceIdRequired() throws IOException {
+    index.put(new Response("p1", (String) null));
+  }
+}
@@ -2,10 +2,14 @@ package com.squareup.terminal;
 
 import org.junit.Test;
 
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -30,9 +34,118 @@ public class ResponseTest {
     Response r = new Response("referenceId", errors);
     assertEquals("referenceId", r.referenceId());
     assertEquals(errors, r.errors());
-    assertEquals("http://callback.url.com?square_status=error&square_reference_id=referenceId&square_errors=able, " +
-        "baker, charlie", r.toCallbackUrl("http://callback.url.com", false));
+    assertEquals("http://callback.url.com?square_status=error&square_reference_id=referenceId&square_errors=able%2C%20" +
+        "baker%2C%20charlie", r.toCallbackUrl("http://callback.url.com", false));
     assertEquals("http://callback.url.com?square_status=cancelled&square_reference_id=referenceId",
         r.toCallbackUrl("http://callback.url.com", true));
   }
+
+  @Test
+  public void testCallbackUrlEscaping() {
+    Response r = new Response("payment/id", "a&b=c d");
+    assertEquals("http://callback.url.com/?x=1&square_status=successful"
+        + "&square_reference_id=a%26b%3Dc%20d&square_payment_id=payment%2Fid",
+        r.toCallbackUrl("http://callback.url.com/?x=1", false));
+
+    r = new Response(null, Arrays.asList("caf\u00e9"));
+    assertEquals("http://callback.url.com?square_status=error&square_errors=caf%C3%A9",
+        r.toCallbackUrl("http://callback.url.com", false));
+  }
+
+  @Test
+  public void testNullCallbackUrl() {
+    assertNull(new Response("paymentId", "referenceId").toCallbackUrl(null, false));
+  }
+
+  @Test
+  public void testKnownAndUnknownErrors() {
+    List<String> errors = Arrays.asList("amount_too_small", "gremlins", "to_invalid_recipient",
+        null, "amount_too_small");
+    Response r = new Response("referenceId", errors);
+    assertEquals(errors, r.errors());
+    assertEquals(errors.hashCode(), r.errors().hashCode());
+    assertEquals("gremlins", r.errors().get(1));
+    assertNull(r.errors().get(3));
+  }
+
+  @Test
+  public void testErrorsCopied() {
+    List<String> errors = new ArrayList<String>(Arrays.asList("app_id_invalid"));
+    Response r = new Response("referenceId", errors);
+    errors.add("app_id_missing");
+    assertEquals(Arrays.asList("app_id_invalid"), r.errors());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testErrorsUnmodifiable() {
+    new Response("referenceId", Arrays.asList("app_id_invalid")).errors().add("app_id_missing");
+  }
+
+  @Test
+  public void testNullErrors() {
+    assertTrue(new Response("referenceId", (List<String>) null).errors().isEmpty());
+  }
+
+  @Test
+  public void testCallbackUrlParses() throws ParseException {
+    Response r = new Response("reference id", Arrays.asList("able", "baker"));
+    Callback c = Callback.parse(r.toCallbackUrl("http://callback.url.com?a=b", false));
+    assertEquals(Response.STATUS_ERROR, c.status());
+    assertEquals(r.referenceId(), c.referenceId());
+    assertEquals(r.errors(), c.errors());
+
+    r = new Response("payment id", "reference id");
+    c = Callback.parse(r.toCallbackUrl("http://callback.url.com", false));
+    assertEquals(Response.STATUS_SUCCESSFUL, c.status());
+    assertEquals(r.paymentId(), c.paymentId());
+    assertTrue(c.errors().isEmpty());
+  }
+
+  @Test
+  public void testFromCallbackUrl() throws ParseException {
+    Response r = Response.fromCallbackUrl(new Response("payment id", "reference id")
+        .toCallbackUrl("https://example.com/done?order=7&square_status=bogus", false));
+    assertEquals(Response.STATUS_SUCCESSFUL, r.status());
+    assertEquals("payment id", r.paymentId());
+    assertEquals("reference id", r.referenceId());
+    assertFalse(r.hasErrors());
+
+    r = Response.fromCallbackUrl(new Response("reference id", (List<String>) null)
+        .toCallbackUrl("https://example.com/done", true));
+    assertEquals(Response.STATUS_CANCELLED, r.status());
+    assertNull(r.paymentId());
+    assertEquals("reference id", r.referenceId());
+  }
+
+  @Test
+  public void testFromCallbackUrlErrors() throws ParseException {
+    List<String> errors = Arrays.asList("amount_too_small", "new_code", "to_invalid_recipient");
+    Response r = Response.fromCallbackUrl(new Response("referenceId", errors)
+        .toCallbackUrl("https://example.com/done", false));
+    assertEquals(Response.STATUS_ERROR, r.status());
+    assertEquals(errors, r.errors());
+    assertEquals(ErrorCode.indexOf("amount_too_small"), r.errorCode(0));
+    assertEquals(-1, r.errorCode(1));
+    assertEquals(ErrorCode.indexOf("to_invalid_recipient"), r.errorCode(2));
+  }
+
+  @Test
+  public void testFromCallbackUrlQuery() throws ParseException {
+    Response r = Response.fromCallbackUrl(
+        "square_status=%65rror&square_errors=amount%5Ftoo%5Fsmall, x%2c%20y#z");
+    assertEquals(Response.STATUS_ERROR, r.status());
+    assertEquals(Arrays.asList("amount_too_small", "x", "y"), r.errors());
+    assertEquals(ErrorCode.indexOf("amount_too_small"), r.errorCode(0));
+    assertNull(r.referenceId());
+  }
+
+  @Test(expected = ParseException.class)
+  public void testFromCallbackUrlMissingStatus() throws ParseException {
+    Response.fromCallbackUrl("https://example.com/done?square_payment_id=p");
+  }
+
+  @Test
+  public void testStatusIsNullUnlessParsed() {
+    assertNull(new Response("paymentId", "referenceId").status());
+  }
 }